@@ -0,0 +1,1019 @@
+package com.jtmelton.tpl;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multimap;
+import com.jtmelton.tpl.cli.Options;
+import com.jtmelton.tpl.domain.ClassNode;
+import com.jtmelton.tpl.domain.JarNode;
+import com.jtmelton.tpl.graph.GraphBackend;
+import com.jtmelton.tpl.graph.InMemoryGraphBackend;
+import com.jtmelton.tpl.graph.ModelSnapshot;
+import com.jtmelton.tpl.graph.Neo4jGraphBackend;
+import com.jtmelton.tpl.metrics.Counter;
+import com.jtmelton.tpl.metrics.Histogram;
+import com.jtmelton.tpl.metrics.Metrics;
+import com.jtmelton.tpl.metrics.Progress;
+import com.jtmelton.tpl.metrics.Timer;
+import com.jtmelton.tpl.report.IReporter;
+import com.jtmelton.tpl.results.ChainSink;
+import com.jtmelton.tpl.results.OwningJarResolver;
+import com.jtmelton.tpl.results.QueryResult;
+import com.jtmelton.tpl.results.ResultsProcessor;
+import com.jtmelton.tpl.results.SearchCache;
+import com.jtmelton.tpl.results.StreamingQueryResult;
+import com.jtmelton.tpl.utils.BulkImportUtil;
+import com.jtmelton.tpl.utils.ClassReferenceReader;
+import com.jtmelton.tpl.utils.FileHashUtil;
+import com.jtmelton.tpl.utils.Filters;
+import com.jtmelton.tpl.utils.GraphPipeline;
+import com.jtmelton.tpl.utils.JavassistUtil;
+import com.jtmelton.tpl.utils.MappedJarReader;
+import com.jtmelton.tpl.utils.QueryUtil;
+import com.jtmelton.tpl.utils.SearchScheduler;
+import com.jtmelton.tpl.utils.VerifyingReferenceReader;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.util.concurrent.TimeUnit.HOURS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+public class ThirdPartyLibraryAnalyzer {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ThirdPartyLibraryAnalyzer.class);
+
+  private static final Timer WALK_TIMER = Metrics.timer("walk");
+
+  private static final Counter WALKED_FILES = Metrics.counter("walk.files");
+
+  private static final Timer UNUSED_JAR_TIMER = Metrics.timer("search.unusedJar");
+
+  private static final Timer SWEEP_TIMER = Metrics.timer("search.unusedJarsSweep");
+
+  private final String jarsDirectory;
+
+  private final String classesDirectory;
+
+  private final String dbDirectory;
+
+  // ******* set of custom class names *******
+  private final Set<String> customClassNames = new HashSet<>();
+
+  // ******* set of external class names *******
+  private final ConcurrentMap<String, ClassNode> externalClassNodes = new ConcurrentHashMap<>();
+
+  // ******* MAP OF {class -> classes referenced by this class} *******
+  private final Multimap<String, String> classToUsedClassesMap = HashMultimap.create();
+
+  private final Collection<Path> jars = new ArrayList<>();
+
+  private final int threads;
+
+  private final int writeBatchSize;
+
+  private final ClassReferenceReader classReader;
+
+  private final String graphBackendType;
+
+  private GraphDatabaseService graphDb;
+
+  private GraphBackend backend;
+
+  // Owning jars and cached results are shared by every search run in this process
+  private OwningJarResolver owningJarResolver;
+
+  private SearchCache searchCache;
+
+  private boolean searchCacheOpened;
+
+  // Runs the traversals of every search term and search type
+  private final SearchScheduler scheduler;
+
+  private long startTime;
+
+  public ThirdPartyLibraryAnalyzer(Options options) {
+    this.jarsDirectory = options.getJarsDirectory();
+    this.classesDirectory = options.getClassesDirectory();
+    this.dbDirectory = options.getDbDirectory();
+    this.threads = options.getThreads();
+    this.writeBatchSize = options.getWriteBatchSize();
+    this.classReader = ClassReferenceReader.forType(options.getClassReader());
+    this.graphBackendType = options.getGraphBackend();
+    this.scheduler = new SearchScheduler(options.isSingleThreadSearch() ? 1 : options.getSearchThreads(),
+            options.getSearchHeapReserve());
+  }
+
+  private void dbSetup() {
+    GraphDatabaseFactory factory = new GraphDatabaseFactory();
+    graphDb = factory.newEmbeddedDatabase(new File(dbDirectory));
+    Runtime.getRuntime().addShutdownHook(new Thread(graphDb::shutdown));
+  }
+
+  // Closes the DB without waiting for the JVM to exit. Anything run afterwards opens it again
+  public synchronized void shutdown() {
+    if(graphDb != null) {
+      graphDb.shutdown();
+      graphDb = null;
+      backend = null;
+      owningJarResolver = null;
+    }
+  }
+
+  // Searches go through the backend, which is only created once the DB is fully built
+  private synchronized GraphBackend backend() {
+    if(graphDb == null) {
+      dbSetup();
+    }
+
+    if(backend == null) {
+      if(GraphBackend.MEMORY.equals(graphBackendType)) {
+        LOG.info("Loading graph into memory");
+        backend = new InMemoryGraphBackend(graphDb, scheduler);
+      } else {
+        backend = new Neo4jGraphBackend(graphDb, scheduler);
+      }
+    }
+
+    return backend;
+  }
+
+  private synchronized OwningJarResolver owningJarResolver() {
+    if(owningJarResolver == null) {
+      owningJarResolver = new OwningJarResolver(backend());
+    }
+
+    return owningJarResolver;
+  }
+
+  public void buildDependencyGraph(Options options) throws IOException, InterruptedException {
+    startTime = System.nanoTime();
+
+    if(options.isBulkImport()) {
+      // Fail before scanning rather than after
+      BulkImportUtil.checkImportDirectory(new File(dbDirectory));
+    } else {
+      dbSetup();
+    }
+
+    // Class files and jars are scanned on a work stealing pool sized by -threads
+    ForkJoinPool scanPool = new ForkJoinPool(threads);
+    int jarFiles;
+
+    try {
+      if(options.getLoadSnapshot() != null) {
+        jarFiles = buildFromSnapshot(options, scanPool);
+      } else {
+        jarFiles = buildFromFiles(options, scanPool);
+      }
+    } finally {
+      scanPool.shutdown();
+    }
+
+    SearchCache.newBuildId(new File(dbDirectory));
+
+    long elapsedTime = System.nanoTime() - startTime;
+    LOG.info("DB Construction time {}", formatElapsedTime(elapsedTime));
+    LOG.info("Created relationships for {} user classes, {} external classes, " +
+            "and {} jars", customClassNames.size(), externalClassNodes.size(), jarFiles);
+  }
+
+  // Returns the number of jar files found
+  private int buildFromFiles(Options options, ForkJoinPool scanPool) throws IOException, InterruptedException {
+    Predicate<Path> filter = o -> true;
+    if(options.isExcludeTestDirs()) {
+      filter = Filters.filterTestDirs();
+    }
+
+    Collection<Path> customClasses = findPathsByExt(new File(classesDirectory), ".class", filter);
+
+    LOG.info("Built class file paths, analyzing {} class files", customClasses.size());
+    Collection<ClassNode> classNodes = JavassistUtil.analyzeUserClassFiles(customClasses, customClassNames,
+            classToUsedClassesMap, classReader, scanPool);
+    LOG.info("# of user classes found: {}", customClassNames.size());
+
+    jars.addAll(findArchives(new File(jarsDirectory), options));
+    Collection<JarNode> jarNodes;
+
+    if(options.isBulkImport()) {
+      LOG.info("Analyzing {} jar files", jars.size());
+      jarNodes = JavassistUtil.analyzeJarFiles(jars, externalClassNodes, classToUsedClassesMap,
+              classReader, scanPool);
+      LOG.info("# of external class files found: {}", externalClassNodes.size());
+      LOG.info("{} jar files contain {} distinct jars", jars.size(), jarNodes.size());
+
+      LOG.info("Bulk importing graph into {}", dbDirectory);
+      BulkImportUtil.importGraph(new File(dbDirectory), classNodes, externalClassNodes.values(), jarNodes,
+              this::findDependencies);
+      dbSetup();
+    } else {
+      GraphPipeline pipeline = new GraphPipeline(graphDb, threads, writeBatchSize);
+      jarNodes = new ArrayList<>();
+      Multimap<String, String> jarReferences = HashMultimap.create();
+
+      // The pipeline reads user references while it runs, so jar references are kept apart until it is done
+      if(options.getSaveSnapshot() != null) {
+        pipeline.retainModel(jarNodes, jarReferences);
+      }
+
+      // Jars are written as they are parsed, so their references never all sit in classToUsedClassesMap
+      LOG.info("Analyzing and writing {} jar files", jars.size());
+      int jarCount = pipeline.write(classNodes, classToUsedClassesMap,
+              JavassistUtil.groupJarsByHash(jars, scanPool), externalClassNodes, classReader, scanPool);
+      LOG.info("# of external class files found: {}", externalClassNodes.size());
+      LOG.info("{} jar files contain {} distinct jars", jars.size(), jarCount);
+
+      classToUsedClassesMap.putAll(jarReferences);
+    }
+
+    if(classReader instanceof VerifyingReferenceReader) {
+      LOG.info("Class reader verification found {} mismatches",
+              ((VerifyingReferenceReader) classReader).getMismatches());
+    }
+
+    if(options.getSaveSnapshot() != null) {
+      long snapshotStart = System.nanoTime();
+      ModelSnapshot.write(new File(options.getSaveSnapshot()), classNodes, externalClassNodes.values(), jarNodes,
+              classToUsedClassesMap);
+      LOG.info("Saved class model snapshot to {} in {} ms", options.getSaveSnapshot(),
+              NANOSECONDS.toMillis(System.nanoTime() - snapshotStart));
+    }
+
+    return jars.size();
+  }
+
+  // Writes the same graph as the build that saved the snapshot, without reading any class file or
+  // jar. Returns the number of jar files the snapshot was taken from
+  private int buildFromSnapshot(Options options, ForkJoinPool pool) throws IOException, InterruptedException {
+    long loadStart = System.nanoTime();
+    ModelSnapshot snapshot = ModelSnapshot.load(new File(options.getLoadSnapshot()));
+
+    Collection<ClassNode> classNodes = new ArrayList<>();
+    Collection<JarNode> jarNodes = new ArrayList<>();
+    snapshot.restore(customClassNames, classNodes, externalClassNodes, classToUsedClassesMap, jarNodes);
+
+    LOG.info("Loaded {} user classes, {} external classes, {} dependencies and {} jars from {} in {} ms",
+            customClassNames.size(), externalClassNodes.size(), snapshot.getDependencyCount(),
+            snapshot.getJarCount(), options.getLoadSnapshot(), NANOSECONDS.toMillis(System.nanoTime() - loadStart));
+
+    if(options.isBulkImport()) {
+      LOG.info("Bulk importing graph into {}", dbDirectory);
+      BulkImportUtil.importGraph(new File(dbDirectory), classNodes, externalClassNodes.values(), jarNodes,
+              this::findDependencies);
+      dbSetup();
+    } else {
+      new GraphPipeline(graphDb, threads, writeBatchSize).write(classNodes, classToUsedClassesMap, jarNodes,
+              classToUsedClassesMap, externalClassNodes, pool);
+    }
+
+    return jarNodes.stream().mapToInt(j -> j.getPaths().size()).sum();
+  }
+
+  // Brings an existing DB in line with the jars and classes on disk. Jars are matched to
+  // jar nodes by content hash so only added or changed jars are scanned and written
+  public void updateDependencyGraph(Options options) throws IOException {
+    startTime = System.nanoTime();
+
+    dbSetup();
+
+    Predicate<Path> filter = o -> true;
+    if(options.isExcludeTestDirs()) {
+      filter = Filters.filterTestDirs();
+    }
+
+    Collection<Path> customClasses = findPathsByExt(new File(classesDirectory), ".class", filter);
+    jars.addAll(findArchives(new File(jarsDirectory), options));
+
+    List<JarNode> movedJars = new ArrayList<>();
+    List<Long> removedJarIds = new ArrayList<>();
+    Map<String, List<Path>> newJars = matchJars(movedJars, removedJarIds);
+
+    ForkJoinPool scanPool = new ForkJoinPool(threads);
+
+    Collection<ClassNode> classNodes;
+    Collection<JarNode> jarNodes;
+
+    try {
+      LOG.info("Analyzing {} class files", customClasses.size());
+      classNodes = JavassistUtil.analyzeUserClassFiles(customClasses, customClassNames,
+              classToUsedClassesMap, classReader, scanPool);
+
+      LOG.info("Analyzing {} new or changed jar files", newJars.size());
+      jarNodes = JavassistUtil.analyzeJarFiles(newJars, externalClassNodes, classToUsedClassesMap,
+              classReader, scanPool);
+    } finally {
+      scanPool.shutdown();
+    }
+
+    Map<String, ClassNode> graphClasses = new HashMap<>();
+    QueryUtil.getClassIds(graphDb, "Class").forEach((name, id) -> graphClasses.put(name, storedClassNode(name, id)));
+
+    // Classes of a new jar reuse the node of a same named class, so dependencies on them are kept
+    List<ClassNode> createdClasses = new ArrayList<>();
+    List<ClassNode> existingClasses = new ArrayList<>();
+
+    for(ClassNode classNode : externalClassNodes.values()) {
+      ClassNode stored = graphClasses.get(classNode.getName());
+
+      if(stored == null) {
+        createdClasses.add(classNode);
+      } else {
+        classNode.setId(stored.getId());
+        existingClasses.add(classNode);
+      }
+    }
+
+    List<JarNode> allJars = jarNodes.stream()
+            .flatMap(j -> j.withNestedJars().stream())
+            .collect(Collectors.toList());
+
+    LOG.info("Writing {} new classes and {} jars to db", createdClasses.size(), allJars.size());
+    Lists.partition(createdClasses, writeBatchSize).forEach(b -> QueryUtil.writeClassNodes(graphDb, b, false));
+    createdClasses.forEach(c -> graphClasses.put(c.getName(), c));
+
+    Lists.partition(allJars, writeBatchSize).forEach(b -> QueryUtil.writeJarNodes(graphDb, b));
+    allJars.forEach(j -> Lists.partition(new ArrayList<>(j.getClassNodes()), writeBatchSize)
+            .forEach(b -> QueryUtil.writeClassToJarRels(graphDb, j, b)));
+    Lists.partition(allJars, writeBatchSize).forEach(b -> QueryUtil.writeNestedJarRels(graphDb, b));
+
+    QueryUtil.updateJarNodes(graphDb, movedJars);
+
+    Set<Long> sharedWithRemoved = new HashSet<>();
+
+    if(!removedJarIds.isEmpty()) {
+      Set<Long> nestedJarIds = new HashSet<>();
+      Lists.partition(new ArrayList<>(removedJarIds), writeBatchSize)
+              .forEach(b -> nestedJarIds.addAll(QueryUtil.getNestedJarIds(graphDb, b)));
+      removedJarIds.addAll(nestedJarIds);
+
+      LOG.info("Removing {} jars from db", removedJarIds.size());
+
+      List<Long> removedJarClasses = new ArrayList<>();
+      Lists.partition(removedJarIds, writeBatchSize)
+              .forEach(b -> removedJarClasses.addAll(QueryUtil.getClassIdsOfJars(graphDb, b)));
+
+      Lists.partition(removedJarIds, writeBatchSize).forEach(b -> QueryUtil.deleteNodes(graphDb, b));
+
+      Set<String> orphans = new HashSet<>();
+      Lists.partition(removedJarClasses, writeBatchSize)
+              .forEach(b -> orphans.addAll(QueryUtil.deleteOrphanClasses(graphDb, b)));
+      orphans.forEach(graphClasses::remove);
+
+      Set<Long> remaining = graphClasses.values().stream().map(ClassNode::getId).collect(Collectors.toSet());
+      removedJarClasses.stream().filter(remaining::contains).forEach(sharedWithRemoved::add);
+
+      LOG.info("Removed {} classes no longer found in any jar", orphans.size());
+    }
+
+    rescanOwners(sharedWithRemoved, allJars, graphClasses);
+    updateExternalClassRelationships(createdClasses, existingClasses, sharedWithRemoved, allJars, graphClasses);
+    updateUserClasses(classNodes, graphClasses);
+
+    SearchCache.newBuildId(new File(dbDirectory));
+
+    long elapsedTime = System.nanoTime() - startTime;
+    LOG.info("DB update time {}", formatElapsedTime(elapsedTime));
+  }
+
+  // Groups the jars on disk by content hash and matches each group to the jar node with that hash.
+  // Groups without a node are returned as new jars, nodes without a group were removed. The names
+  // and paths of nested jars come from their container, so a moved container is scanned again
+  private Map<String, List<Path>> matchJars(List<JarNode> movedJars, List<Long> removedJarIds) throws IOException {
+    List<Map<String, Object>> storedJars = QueryUtil.getAllJarStates(graphDb);
+    Map<String, Map<String, Object>> storedByPath = new HashMap<>();
+    Map<String, Map<String, Object>> storedByHash = new HashMap<>();
+
+    for(Map<String, Object> stored : storedJars) {
+      QueryUtil.getJarPaths(stored).forEach(p -> storedByPath.put(p, stored));
+
+      if(stored.get("hash") != null) {
+        storedByHash.putIfAbsent((String) stored.get("hash"), stored);
+      }
+    }
+
+    Map<String, List<Path>> jarsByHash = new LinkedHashMap<>();
+
+    for(Path jar : jars) {
+      // Hashing is skipped when the file looks untouched since the last build
+      Map<String, Object> stored = storedByPath.get(jar.toFile().getPath());
+      String hash;
+
+      if(stored != null && stored.get("hash") != null
+              && Files.size(jar) == longValue(stored.get("size"))
+              && Files.getLastModifiedTime(jar).toMillis() == longValue(stored.get("mtime"))) {
+        hash = (String) stored.get("hash");
+      } else {
+        hash = FileHashUtil.sha256(jar);
+      }
+
+      jarsByHash.computeIfAbsent(hash, h -> new ArrayList<>()).add(jar);
+    }
+
+    Map<String, List<Path>> newJars = new LinkedHashMap<>();
+    Set<Object> claimed = new HashSet<>();
+
+    for(Map.Entry<String, List<Path>> entry : jarsByHash.entrySet()) {
+      Map<String, Object> stored = storedByHash.get(entry.getKey());
+
+      if(stored == null) {
+        newJars.put(entry.getKey(), entry.getValue());
+        continue;
+      }
+
+      Path jar = entry.getValue().get(0);
+      JarNode jarNode = new JarNode();
+      jarNode.setId(longValue(stored.get("id")));
+      jarNode.setName(jar.toFile().getPath());
+      entry.getValue().forEach(p -> jarNode.addPath(p.toFile().getPath()));
+      jarNode.setSize(Files.size(jar));
+      jarNode.setLastModified(Files.getLastModifiedTime(jar).toMillis());
+
+      boolean moved = !jarNode.getName().equals(stored.get("name"))
+              || !jarNode.getPaths().equals(QueryUtil.getJarPaths(stored))
+              || jarNode.getSize() != longValue(stored.get("size"))
+              || jarNode.getLastModified() != longValue(stored.get("mtime"));
+
+      if(moved && longValue(stored.get("nestedJars")) > 0) {
+        newJars.put(entry.getKey(), entry.getValue());
+        continue;
+      }
+
+      claimed.add(stored.get("id"));
+
+      if(moved) {
+        movedJars.add(jarNode);
+      }
+    }
+
+    storedJars.stream()
+            .filter(s -> !claimed.contains(s.get("id")))
+            .forEach(s -> removedJarIds.add(longValue(s.get("id"))));
+
+    LOG.info("{} jar files contain {} distinct jars, {} unchanged, {} new or changed, {} removed", jars.size(),
+            jarsByHash.size(), jarsByHash.size() - newJars.size(), newJars.size(), removedJarIds.size());
+
+    return newJars;
+  }
+
+  // References are kept by class name for every jar a class is in, and unchanged jars aren't scanned.
+  // So the references of a class a removed jar shared with a jar that stays are read again from
+  // every jar that still owns it
+  private void rescanOwners(Set<Long> classIds, Collection<JarNode> newJars, Map<String, ClassNode> graphClasses)
+          throws IOException {
+    if(classIds.isEmpty()) {
+      return;
+    }
+
+    Set<Long> containerIds = new HashSet<>();
+    Lists.partition(new ArrayList<>(classIds), writeBatchSize)
+            .forEach(b -> containerIds.addAll(QueryUtil.getOwningContainerIds(graphDb, b)));
+
+    // New jars were scanned already
+    newJars.forEach(j -> containerIds.remove(j.getId()));
+
+    Map<String, List<Path>> owners = new LinkedHashMap<>();
+
+    for(Map<String, Object> stored : QueryUtil.getAllJarStates(graphDb)) {
+      if(containerIds.contains(longValue(stored.get("id")))) {
+        List<Path> paths = QueryUtil.getJarPaths(stored).stream().map(Paths::get).collect(Collectors.toList());
+        owners.put(stored.get("hash") == null ? paths.get(0).toString() : (String) stored.get("hash"), paths);
+      }
+    }
+
+    LOG.info("Reading {} unchanged jars again for {} classes they shared with removed jars",
+            owners.size(), classIds.size());
+
+    Multimap<String, String> references = HashMultimap.create();
+    ForkJoinPool scanPool = new ForkJoinPool(threads);
+
+    try {
+      JavassistUtil.analyzeJarFiles(owners, new ConcurrentHashMap<>(), references, classReader, scanPool);
+    } finally {
+      scanPool.shutdown();
+    }
+
+    graphClasses.values().stream()
+            .filter(c -> classIds.contains(c.getId()))
+            .forEach(c -> classToUsedClassesMap.putAll(c.getName(), references.get(c.getName())));
+  }
+
+  private void updateExternalClassRelationships(List<ClassNode> createdClasses, List<ClassNode> existingClasses,
+                                                Set<Long> sharedWithRemoved, Collection<JarNode> jarNodes,
+                                                Map<String, ClassNode> graphClasses) {
+    List<Long> newJarIds = jarNodes.stream().map(JarNode::getId).collect(Collectors.toList());
+
+    // A class still owned by an unchanged jar keeps its relationships and gains the new ones, unless
+    // a removed jar had it too. Any other existing class was only in removed jars. Both are rebuilt
+    Set<Long> sharedClasses = new HashSet<>();
+    Lists.partition(existingClasses.stream().map(ClassNode::getId).collect(Collectors.toList()), writeBatchSize)
+            .forEach(b -> sharedClasses.addAll(QueryUtil.findClassesOwnedByOtherJars(graphDb, b, newJarIds)));
+
+    List<ClassNode> mergedClasses = new ArrayList<>();
+    List<ClassNode> rebuiltClasses = new ArrayList<>();
+
+    for(ClassNode classNode : existingClasses) {
+      if(sharedClasses.contains(classNode.getId()) && !sharedWithRemoved.contains(classNode.getId())) {
+        mergedClasses.add(classNode);
+      } else {
+        rebuiltClasses.add(classNode);
+      }
+    }
+
+    // Classes a removed jar shared only with unchanged jars are rebuilt from what those jars reference
+    Set<Long> existingIds = existingClasses.stream().map(ClassNode::getId).collect(Collectors.toSet());
+    graphClasses.values().stream()
+            .filter(c -> sharedWithRemoved.contains(c.getId()) && !existingIds.contains(c.getId()))
+            .forEach(rebuiltClasses::add);
+
+    Lists.partition(rebuiltClasses.stream().map(ClassNode::getId).collect(Collectors.toList()), writeBatchSize)
+            .forEach(b -> QueryUtil.deleteOutgoingDependencies(graphDb, b));
+
+    rebuiltClasses.addAll(createdClasses);
+
+    LOG.info("Writing dependency relationships for {} external classes",
+            mergedClasses.size() + rebuiltClasses.size());
+
+    Lists.partition(classRelationships(rebuiltClasses, graphClasses), writeBatchSize)
+            .forEach(b -> QueryUtil.writeClassToClassRels(graphDb, b, false));
+    Lists.partition(classRelationships(mergedClasses, graphClasses), writeBatchSize)
+            .forEach(b -> QueryUtil.mergeClassToClassRels(graphDb, b, false));
+  }
+
+  private void updateUserClasses(Collection<ClassNode> classNodes, Map<String, ClassNode> graphClasses) {
+    Map<String, Long> storedUserClasses = QueryUtil.getClassIds(graphDb, "UserClass");
+
+    List<Long> removedUserClasses = storedUserClasses.entrySet().stream()
+            .filter(e -> !customClassNames.contains(e.getKey()))
+            .map(Map.Entry::getValue)
+            .collect(Collectors.toList());
+
+    List<ClassNode> createdUserClasses = new ArrayList<>();
+
+    for(ClassNode classNode : classNodes) {
+      Long id = storedUserClasses.get(classNode.getName());
+
+      if(id == null) {
+        createdUserClasses.add(classNode);
+      } else {
+        classNode.setId(id);
+      }
+    }
+
+    LOG.info("{} user classes added, {} removed", createdUserClasses.size(), removedUserClasses.size());
+
+    Lists.partition(removedUserClasses, writeBatchSize).forEach(b -> QueryUtil.deleteNodes(graphDb, b));
+    Lists.partition(createdUserClasses, writeBatchSize).forEach(b -> QueryUtil.writeClassNodes(graphDb, b, true));
+
+    Set<List<Long>> storedRelationships = QueryUtil.getUserClassDependencies(graphDb);
+    Set<List<Long>> wanted = new HashSet<>();
+    List<ClassNode[]> createdRelationships = new ArrayList<>();
+
+    List<ClassNode[]> relationships = classRelationships(classNodes, graphClasses);
+
+    // References are keyed by class name, so a user class that is also found in a jar picks up the
+    // jar class' dependencies as well. Those are read back from the graph since unchanged jars aren't scanned
+    Map<Long, ClassNode> jarClassesById = new HashMap<>();
+    Multimap<Long, ClassNode> userClassesByJarClass = HashMultimap.create();
+
+    for(ClassNode classNode : classNodes) {
+      ClassNode jarClass = graphClasses.get(classNode.getName());
+
+      if(jarClass != null) {
+        userClassesByJarClass.put(jarClass.getId(), classNode);
+      }
+    }
+
+    graphClasses.values().forEach(c -> jarClassesById.put(c.getId(), c));
+
+    Lists.partition(new ArrayList<>(userClassesByJarClass.keySet()), writeBatchSize)
+            .forEach(b -> QueryUtil.getClassDependencies(graphDb, b).forEach(d -> {
+              for(ClassNode userClass : userClassesByJarClass.get(d.get(0))) {
+                relationships.add(new ClassNode[] { userClass, jarClassesById.get(d.get(1)) });
+              }
+            }));
+
+    for(ClassNode[] relationship : relationships) {
+      List<Long> key = Arrays.asList(relationship[0].getId(), relationship[1].getId());
+
+      if(wanted.add(key) && !storedRelationships.contains(key)) {
+        createdRelationships.add(relationship);
+      }
+    }
+
+    List<List<Long>> removedRelationships = storedRelationships.stream()
+            .filter(r -> !wanted.contains(r))
+            .collect(Collectors.toList());
+
+    LOG.info("{} user class dependency relationships added, {} removed",
+            createdRelationships.size(), removedRelationships.size());
+
+    Lists.partition(removedRelationships, writeBatchSize)
+            .forEach(b -> QueryUtil.deleteClassToClassRels(graphDb, b));
+    Lists.partition(createdRelationships, writeBatchSize)
+            .forEach(b -> QueryUtil.writeClassToClassRels(graphDb, b, true));
+  }
+
+  private List<ClassNode[]> classRelationships(Collection<ClassNode> classNodes, Map<String, ClassNode> graphClasses) {
+    List<ClassNode[]> relationships = new ArrayList<>();
+
+    for(ClassNode classNode : classNodes) {
+      for(ClassNode dependency : findDependencies(classNode, graphClasses)) {
+        relationships.add(new ClassNode[] { classNode, dependency });
+      }
+    }
+
+    return relationships;
+  }
+
+  private static ClassNode storedClassNode(String name, Long id) {
+    ClassNode classNode = new ClassNode();
+    classNode.setId(id);
+    classNode.setName(name);
+    classNode.setCustom(false);
+    return classNode;
+  }
+
+  private static long longValue(Object value) {
+    return value == null ? -1 : ((Number) value).longValue();
+  }
+
+  public void reportUnusedJars(Options options) throws InterruptedException {
+    GraphBackend backend = backend();
+
+    List<Map<String, Object>> jars = backend.getAllJarPaths();
+
+    Filters.PatternFilter<Map<String, Object>> include = Filters.searchJarInclude(options.getSearchJarInclusions());
+    Filters.PatternFilter<Map<String, Object>> exclude = Filters.searchJarExclude(options.getSearchJarExclusions());
+
+    List<Map<String, Object>> filteredJars = jars.stream()
+            .filter(include)
+            .filter(exclude)
+            .collect(Collectors.toList());
+
+    Stream.of(include, exclude).filter(f -> !f.isEmpty()).forEach(f -> LOG.info("{}", f));
+
+    Collection<String> unusedJars = new ArrayList<>();
+
+    // Copies of the same jar are checked once and reported at every path that passed the filters
+    Map<String, UniqueJar> uniqueJars = new LinkedHashMap<>();
+
+    for(Map<String, Object> entry : filteredJars) {
+      uniqueJars.computeIfAbsent(QueryUtil.getJarKey(entry), k -> new UniqueJar(entry))
+              .paths.add((String) entry.get("name"));
+    }
+
+    if(options.isUnusedSweep()) {
+      reportUnusedJarsBySweep(backend, uniqueJars.values(), unusedJars, options);
+      return;
+    }
+
+    ExecutorService jarPool = Executors.newFixedThreadPool(threads);
+    Progress progress = Progress.start("Unused jar searches", uniqueJars.size());
+
+    for(UniqueJar jar : uniqueJars.values()) {
+      jarPool.submit(() -> {
+        LOG.debug("Searching for uses of {}", jar.row.get("name"));
+
+        long start = UNUSED_JAR_TIMER.start();
+        boolean used = backend.isJarUsed(jar.row, options);
+        UNUSED_JAR_TIMER.stop(start);
+        progress.increment();
+
+        if(!used) {
+          synchronized (unusedJars) {
+            unusedJars.addAll(jar.paths);
+          }
+        }
+      });
+    }
+
+    jarPool.shutdown();
+    jarPool.awaitTermination(24, HOURS);
+    progress.close();
+
+    writeJarList(options.getOutputDir(), "unusedJars.txt", unusedJars);
+  }
+
+  private void reportUnusedJarsBySweep(GraphBackend backend, Collection<UniqueJar> jars,
+                                       Collection<String> unusedJars, Options options) {
+    LOG.info("Sweeping dependencies of all user classes");
+
+    long sweepStart = SWEEP_TIMER.start();
+    Map<Long, List<String>> witnesses = backend.findUsedJars();
+    SWEEP_TIMER.stop(sweepStart);
+    LOG.info("Found {} used jars in {} ms", witnesses.size(),
+            NANOSECONDS.toMillis(System.nanoTime() - sweepStart));
+
+    Collection<String> usedJars = new ArrayList<>();
+
+    for(UniqueJar jar : jars) {
+      List<String> witness = witnesses.get(((Number) jar.row.get("id")).longValue());
+
+      if(witness == null) {
+        unusedJars.addAll(jar.paths);
+      } else {
+        // The last name on the path is the jar's own name, report every copy instead
+        String chain = String.join(" -> ", witness.subList(0, witness.size() - 1));
+        jar.paths.forEach(path -> usedJars.add(path + ": " + chain));
+      }
+    }
+
+    writeJarList(options.getOutputDir(), "unusedJars.txt", unusedJars);
+    writeJarList(options.getOutputDir(), "usedJars.txt", usedJars);
+  }
+
+  private void writeJarList(String outputDir, String fileName, Collection<String> lines) {
+    LOG.info("Writing results to {}", fileName);
+
+    File outputDirFile = new File(outputDir);
+    outputDirFile.mkdirs();
+
+    File output = Paths.get(outputDir, fileName).toFile();
+    try(PrintWriter writer = new PrintWriter(output)) {
+      lines.forEach(writer::println);
+    } catch(FileNotFoundException fnfe) {
+      LOG.error("Failed to write results to file.", fnfe);
+    }
+  }
+
+  public void reportDependencies(Collection<String> searchTerms, Collection<IReporter> reporters,
+                                 String outputDir, Options options) throws InterruptedException {
+    startTime = System.nanoTime();
+
+    ResultsProcessor processor = new ResultsProcessor(this::owningJarResolver);
+    reporters.forEach(processor::registerReporter);
+
+    searchAll(processor, SearchCache.DEPENDENCIES, searchTerms, options, searchTerm -> {
+      LOG.info("Searching for dependencies of {}", searchTerm);
+      return r -> backend().findDependencies(r, options);
+    });
+
+    processor.generateReports(outputDir);
+
+    long elapsedTime = System.nanoTime() - startTime;
+    LOG.info("Report generation time {}", formatElapsedTime(elapsedTime));
+  }
+
+  public void reportAffectedClasses(Collection<String> searchTerms, Collection<IReporter> reporters,
+                                    String outputDir, Options options) throws InterruptedException {
+    startTime = System.nanoTime();
+
+    ResultsProcessor processor = new ResultsProcessor(this::owningJarResolver);
+    reporters.forEach(processor::registerReporter);
+
+    searchAll(processor, SearchCache.AFFECTED_CLASSES, searchTerms, options, searchTerm -> {
+      LOG.info("Searching for classes affected by dependency {}", searchTerm);
+      return r -> backend().findAffectedUserClasses(r, options);
+    });
+
+    processor.generateReports(outputDir);
+
+    long elapsedTime = System.nanoTime() - startTime;
+    LOG.info("Report generation time {}", formatElapsedTime(elapsedTime));
+  }
+
+  // Batch searches for different terms run at the same time, sharing the scheduler's threads.
+  // Results are still reported in the order the terms were given. Streamed searches report while
+  // they run, so those go one term at a time
+  private void searchAll(ResultsProcessor processor, String searchType, Collection<String> searchTerms,
+                         Options options, Function<String, ResultsProcessor.Search> searches)
+          throws InterruptedException {
+    SearchCache cache = searchCache(options);
+    Function<String, ResultsProcessor.Search> timedSearches = timed(searchType, searches);
+
+    if(options.isStreamResults()) {
+      for(String searchTerm : searchTerms) {
+        search(processor, cache, searchType, searchTerm, options, () -> timedSearches.apply(searchTerm), null);
+      }
+
+      return;
+    }
+
+    ExecutorService termPool = Executors.newFixedThreadPool(scheduler.getParallelism());
+    List<Future<QueryResult>> pending = new ArrayList<>();
+
+    for(String searchTerm : searchTerms) {
+      if(cache != null && cache.contains(cache.key(searchType, searchTerm, options))) {
+        pending.add(null);
+        continue;
+      }
+
+      ResultsProcessor.Search search = timedSearches.apply(searchTerm);
+      pending.add(termPool.submit(() -> {
+        QueryResult results = new QueryResult(searchTerm);
+        search.run(results);
+        return results;
+      }));
+    }
+
+    termPool.shutdown();
+
+    try {
+      Iterator<Future<QueryResult>> futures = pending.iterator();
+
+      for(String searchTerm : searchTerms) {
+        Future<QueryResult> future = futures.next();
+
+        if(future == null) {
+          // An entry that turns out to be unreadable is searched for here instead
+          search(processor, cache, searchType, searchTerm, options, () -> timedSearches.apply(searchTerm), null);
+          continue;
+        }
+
+        try {
+          search(processor, cache, searchType, searchTerm, options, null, future.get());
+        } catch(ExecutionException ee) {
+          LOG.error("Search for {} failed", searchTerm, ee.getCause());
+        }
+      }
+    } finally {
+      termPool.shutdownNow();
+    }
+  }
+
+  // Times each search under search.<searchType> and records how many chains it found
+  private static Function<String, ResultsProcessor.Search> timed(String searchType,
+                                                                 Function<String, ResultsProcessor.Search> searches) {
+    Timer timer = Metrics.timer("search." + searchType);
+    Histogram chains = Metrics.histogram("search." + searchType + ".chains");
+
+    return searchTerm -> {
+      ResultsProcessor.Search search = searches.apply(searchTerm);
+
+      return results -> {
+        long start = timer.start();
+
+        try {
+          search.run(results);
+        } finally {
+          timer.stop(start);
+        }
+
+        chains.record(results.getChainCount());
+      };
+    };
+  }
+
+  // Reports a cached result when there is one. Otherwise reports the given results, or builds and
+  // runs the search when there are none, recording what is reported so the next run with the same
+  // search can skip the graph
+  private void search(ResultsProcessor processor, SearchCache cache, String searchType, String searchTerm,
+                      Options options, Supplier<ResultsProcessor.Search> search, QueryResult found)
+          throws InterruptedException {
+    String key = null;
+    SearchCache.Recorder recorder = null;
+
+    if(cache != null) {
+      key = cache.key(searchType, searchTerm, options);
+
+      if(found == null && processor.replay(cache, key, searchTerm, options.isStreamResults())) {
+        LOG.info("Reported cached results for {}", searchTerm);
+        return;
+      }
+
+      recorder = cache.record(key);
+      processor.registerReporter(recorder);
+    }
+
+    ChainSink results = found;
+    boolean finished = false;
+
+    try {
+      if(options.isStreamResults()) {
+        StreamingQueryResult streamed = new StreamingQueryResult(searchTerm);
+        results = streamed;
+        processor.processStream(streamed, search.get());
+      } else {
+        QueryResult collected = found;
+
+        if(collected == null) {
+          collected = new QueryResult(searchTerm);
+          search.get().run(collected);
+        }
+
+        results = collected;
+        LOG.info("Processing results for {} import chains", collected.getClassChains().size());
+        processor.process(collected);
+      }
+
+      finished = true;
+    } finally {
+      if(recorder != null) {
+        processor.removeReporter(recorder);
+
+        if(finished && results.isComplete()) {
+          recorder.commit();
+        } else {
+          LOG.info("Not caching incomplete results for {}", searchTerm);
+          recorder.discard();
+        }
+      }
+    }
+  }
+
+  private SearchCache searchCache(Options options) {
+    if(searchCacheOpened || options.getSearchCacheDir() == null) {
+      return searchCache;
+    }
+
+    searchCacheOpened = true;
+
+    try {
+      searchCache = SearchCache.open(new File(options.getSearchCacheDir()),
+              SearchCache.buildId(new File(dbDirectory)), options.getSearchCacheSize() * 1024L * 1024L);
+    } catch(IOException ioe) {
+      LOG.warn("Failed to open search cache, searching without it", ioe);
+    }
+
+    return searchCache;
+  }
+
+  // Only classes found in a jar are written to the graph, so only those are dependencies
+  private Collection<ClassNode> findDependencies(ClassNode classNode) {
+    return findDependencies(classNode, externalClassNodes);
+  }
+
+  private Collection<ClassNode> findDependencies(ClassNode classNode, Map<String, ClassNode> classNodes) {
+    Collection<ClassNode> dependencies = new ArrayList<>();
+
+    for (String className : classToUsedClassesMap.get(classNode.getName())) {
+      if (className.equals(classNode.getName()) || !classNodes.containsKey(className)) {
+        continue;
+      }
+
+      dependencies.add(classNodes.get(className));
+    }
+
+    return dependencies;
+  }
+
+  private Collection<Path> findPathsByExt(File dir, String ext, Predicate<Path> filter) throws IOException {
+    long start = WALK_TIMER.start();
+
+    Collection<Path> paths = Files.walk(Paths.get(dir.getAbsolutePath()))
+            .filter(p -> p.toAbsolutePath().toFile().getAbsolutePath().endsWith(ext))
+            .filter(filter)
+            .collect(Collectors.toList());
+
+    WALK_TIMER.stop(start);
+    WALKED_FILES.add(paths.size());
+
+    return paths;
+  }
+
+  // Jars, wars and ears. Archives nested in these are found when they are analyzed
+  private Collection<Path> findArchives(File dir, Options options) throws IOException {
+    Filters.PatternFilter<Path> depExclude = Filters.depExclude(options.getDepExclusions());
+    long start = WALK_TIMER.start();
+
+    Collection<Path> paths = Files.walk(Paths.get(dir.getAbsolutePath()))
+            .filter(p -> MappedJarReader.isArchive(p.toAbsolutePath().toFile().getAbsolutePath()))
+            .filter(depExclude)
+            .collect(Collectors.toList());
+
+    WALK_TIMER.stop(start);
+    WALKED_FILES.add(paths.size());
+
+    if(!depExclude.isEmpty()) {
+      LOG.info("{}", depExclude);
+    }
+
+    return paths;
+  }
+
+  private String formatElapsedTime(long nanoTime) {
+    long hs = NANOSECONDS.toHours(nanoTime);
+    long min = NANOSECONDS.toMinutes(nanoTime) - HOURS.toMinutes(NANOSECONDS.toHours(nanoTime));
+    long sec = NANOSECONDS.toSeconds(nanoTime) - MINUTES.toSeconds(NANOSECONDS.toMinutes(nanoTime));
+
+    return String.format("%02d hs, %02d min, %02d sec", hs, min, sec);
+  }
+
+  // A jar checked once for all of its copies. The row is the first copy's, paths has every copy that
+  // passed the search jar filters
+  private static class UniqueJar {
+    private final Map<String, Object> row;
+
+    private final List<String> paths = new ArrayList<>();
+
+    private UniqueJar(Map<String, Object> row) {
+      this.row = row;
+    }
+  }
+}
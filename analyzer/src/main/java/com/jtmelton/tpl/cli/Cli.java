@@ -0,0 +1,340 @@
+package com.jtmelton.tpl.cli;
+
+import com.jtmelton.tpl.ThirdPartyLibraryAnalyzer;
+import com.jtmelton.tpl.graph.GraphBackend;
+import com.jtmelton.tpl.metrics.Metrics;
+import com.jtmelton.tpl.metrics.Progress;
+import com.jtmelton.tpl.report.IReporter;
+import com.jtmelton.tpl.report.JsonReporter;
+import com.jtmelton.tpl.report.StdOutReporter;
+import com.jtmelton.tpl.report.VisualizationReporter;
+import com.jtmelton.tpl.utils.ClassReferenceReader;
+import com.sampullara.cli.Argument;
+import com.sampullara.cli.Args;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+
+public class Cli {
+
+  private static final Logger LOG = LoggerFactory.getLogger(Cli.class);
+
+  @Argument(value = "jarsDirectory",
+      description = "Directory containing 3rd/4th party library jars for analysis. Required unless " +
+              "-loadSnapshot is given")
+  private static String jarsDirectory = null;
+
+  @Argument(value = "userClassNames",
+          description = "Comma delimited user class name search terms for finding dependencies")
+  private static String[] classNames = null;
+
+  @Argument(value = "classesDirectory",
+      description = "Directory containing java classes (class files) for analysis. Required unless " +
+              "-loadSnapshot is given")
+  private static String classesDirectory = null;
+
+  @Argument(value = "dbDirectory",
+      required = true,
+      description = "Directory containing graph database")
+  private static String dbDirectory = null;
+
+  @Argument(value = "jarNames",
+      description = "Comma delimited Jar name search terms for finding affected user classes")
+  private static String[] jarNames = null;
+
+  @Argument(value = "searchDepth",
+      description = "How deep to search graph DB for Jar->user class. Defaults to 5")
+  private static String searchDepth = "5";
+
+  @Argument(value = "outputDir",
+      description = "Dir to write dependency relationships report to")
+  private static String outputDir = "output";
+
+  @Argument(value = "searchOnly",
+      description = "Search existing DB without building/updating it. Can be combined with -searchUnusedOnly")
+  private static boolean searchOnly = false;
+
+  @Argument(value = "searchUnusedOnly",
+      description = "Search for jars that are not potentially unused. Doesn't build/update the DB. Runs after " +
+              "any -jarNames or -userClassNames searches in the same invocation")
+  private static boolean searchUnusedOnly = false;
+
+  @Argument(value = "unusedSweep",
+      description = "With -searchUnusedOnly, find every used jar in one sweep from the user classes instead of " +
+              "one search per jar. Also writes usedJars.txt with the shortest path to each used jar")
+  private static boolean unusedSweep = false;
+
+  @Argument(value = "searchJarExclusions",
+      description = "Comma delimited regex for excluding jars from search unused or used searches. " +
+              "Inclusions filter first, then exclusions filter the returned subset")
+  private static String[] searchJarExclusions = new String[]{};
+
+  @Argument(value = "searchJarInclusions",
+      description = "Comma delimited regex for which specific jars should be checked unused or used searches. " +
+              "Inclusions filter first, then exclusions filter the returned subset")
+  private static String[] searchJarInclusions = new String[]{};
+
+  @Argument(value ="threads",
+      description = "Number of threads to use for class/jar scanning and graph construction. Defaults to 5")
+  private static Integer threads = 5;
+
+  @Argument(value ="writeBatchSize",
+      description = "Number of nodes or relationships written per transaction when building the DB. Defaults to 5000")
+  private static Integer writeBatchSize = 5000;
+
+  @Argument(value = "bulkImport",
+      description = "Build the DB offline with the batch inserter instead of transactions. dbDirectory must be empty")
+  private static boolean bulkImport = false;
+
+  @Argument(value = "incremental",
+      description = "Update an existing DB instead of rebuilding it. Only new or changed jars are analyzed")
+  private static boolean incremental = false;
+
+  @Argument(value ="singleThreadSearch",
+      description = "Use only one thread for search. Helps on memory usage. Same as -searchThreads 1")
+  private static boolean singleThreadSearch = false;
+
+  @Argument(value = "searchThreads",
+      description = "Threads shared by the searches of every search term. Default is 2")
+  private static Integer searchThreads = 2;
+
+  @Argument(value = "searchHeapReserve",
+      description = "Percent of the heap that has to be free before another search traversal is started " +
+              "while one is already running. Default is 25")
+  private static Integer searchHeapReserve = 25;
+
+  @Argument(value = "searchTimeout",
+      description = "Time budget in minutes per jar or user class searched. Searches keep every chain up to " +
+              "the depth they reached when it runs out. Default is 60 min")
+  private static Integer searchTimeout = 60;
+
+  @Argument(value = "streamResults",
+      description = "Report chains as searches find them instead of holding all of them in memory first")
+  private static boolean streamResults = false;
+
+  @Argument(value = "searchCacheDir",
+      description = "Directory to cache search results in. Repeat searches against the same DB build are " +
+              "reported from the cache without searching the graph. Disabled by default")
+  private static String searchCacheDir = null;
+
+  @Argument(value = "searchCacheSize",
+      description = "Size limit of the search cache in MB. Least recently used results are evicted " +
+              "beyond it. Defaults to 1024")
+  private static Integer searchCacheSize = 1024;
+
+  @Argument(value = "excludeTestDirs",
+      description = "Excludes test dirs from relationship analysis")
+  private static boolean excludeTestDirs = false;
+
+  @Argument(value = "depExclusions",
+      description = "Comma delimited regex for excluding jar dependencies from analysis")
+  private static String[] depExclusions = new String[]{};
+
+  @Argument(value = "stdoutReporter",
+      description = "Enable stdout reporter. Has memory impact if you searches eat up a lot of memory")
+  private static boolean stdoutReporter = false;
+
+  @Argument(value = "filterResults",
+      description = "Enable filtering on results so only one dependency chain from user class to jar is present per jar")
+  private static boolean filterResults = false;
+
+  @Argument(value = "exactMatch",
+          description = "Enables exact matching for searches. They are contains searches by default")
+  private static boolean exactMatch = false;
+
+  @Argument(value = "classReader",
+          description = "Class file reader used for analysis. constantPool reads references straight from the " +
+                  "class bytes, javassist builds a CtClass per class and verify runs both and logs any " +
+                  "difference. Defaults to constantPool")
+  private static String classReader = ClassReferenceReader.CONSTANT_POOL;
+
+  @Argument(value = "graphBackend",
+          description = "Engine used for searches. neo4j traverses the DB directly, memory loads the " +
+                  "graph from the DB into compact in memory arrays and searches those. Defaults to neo4j")
+  private static String graphBackend = GraphBackend.NEO4J;
+
+  @Argument(value = "metricsFile",
+          description = "File to write counters, timers and histograms of every phase of the run to once it " +
+                  "is done. Disabled by default, the metrics can always be read over JMX while running")
+  private static String metricsFile = null;
+
+  @Argument(value = "metricsFormat",
+          description = "Format of metricsFile, json or prometheus. Defaults to json")
+  private static String metricsFormat = Metrics.JSON;
+
+  @Argument(value = "progressInterval",
+          description = "Seconds between progress summaries of long phases, with throughput and ETA. " +
+                  "0 only logs when each phase finishes. Defaults to 10")
+  private static Integer progressInterval = 10;
+
+  @Argument(value = "saveSnapshot",
+          description = "File to save the classes, jars and references read while building the DB to, so a " +
+                  "later build can use -loadSnapshot instead of reading them again")
+  private static String saveSnapshot = null;
+
+  @Argument(value = "loadSnapshot",
+          description = "Build the DB from a file written by -saveSnapshot instead of reading classesDirectory " +
+                  "and jarsDirectory")
+  private static String loadSnapshot = null;
+
+  public static void main(String[] args) {
+    new Cli().parseArgs(args);
+
+    if(loadSnapshot == null && (jarsDirectory == null || classesDirectory == null)) {
+      LOG.error("-jarsDirectory and -classesDirectory are required unless -loadSnapshot is given");
+      return;
+    }
+
+    if(loadSnapshot != null && incremental) {
+      LOG.error("-loadSnapshot builds a new DB and can't be combined with -incremental");
+      return;
+    }
+
+    if(!Arrays.asList(ClassReferenceReader.CONSTANT_POOL, ClassReferenceReader.JAVASSIST,
+            ClassReferenceReader.VERIFY).contains(classReader)) {
+      LOG.error("Unknown class reader {}. Use constantPool, javassist or verify.", classReader);
+      return;
+    }
+
+    if(!Arrays.asList(GraphBackend.NEO4J, GraphBackend.MEMORY).contains(graphBackend)) {
+      LOG.error("Unknown graph backend {}. Use neo4j or memory.", graphBackend);
+      return;
+    }
+
+    if(!Arrays.asList(Metrics.JSON, Metrics.PROMETHEUS).contains(metricsFormat)) {
+      LOG.error("Unknown metrics format {}. Use json or prometheus.", metricsFormat);
+      return;
+    }
+
+    if(progressInterval < 0) {
+      LOG.error("-progressInterval can't be negative");
+      return;
+    }
+
+    if(writeBatchSize < 1) {
+      LOG.error("-writeBatchSize must be at least 1");
+      return;
+    }
+
+    if(searchCacheSize < 1) {
+      LOG.error("-searchCacheSize must be at least 1");
+      return;
+    }
+
+    if(searchThreads < 1) {
+      LOG.error("-searchThreads must be at least 1");
+      return;
+    }
+
+    if(searchHeapReserve < 0 || searchHeapReserve > 99) {
+      LOG.error("-searchHeapReserve must be between 0 and 99");
+      return;
+    }
+
+    Options options = new Options();
+    options.setJarsDirectory(jarsDirectory);
+    options.setClassesDirectory(classesDirectory);
+    options.setDbDirectory(dbDirectory);
+    options.setThreads(threads);
+    options.setWriteBatchSize(writeBatchSize);
+    options.setBulkImport(bulkImport);
+    options.setIncremental(incremental);
+    options.setOutputDir(outputDir);
+    options.setExactMatch(exactMatch);
+    options.setSearchDepth(searchDepth);
+    options.setSingleThreadSearch(singleThreadSearch);
+    options.setSearchTimeout(searchTimeout);
+    options.setExcludeTestDirs(excludeTestDirs);
+    options.setFilterResults(filterResults);
+    options.setClassReader(classReader);
+    options.setGraphBackend(graphBackend);
+    options.setUnusedSweep(unusedSweep);
+    options.setStreamResults(streamResults);
+    options.setSearchCacheDir(searchCacheDir);
+    options.setSearchCacheSize(searchCacheSize);
+    options.setSearchThreads(searchThreads);
+    options.setSearchHeapReserve(searchHeapReserve);
+    options.setSaveSnapshot(saveSnapshot);
+    options.setLoadSnapshot(loadSnapshot);
+    Arrays.asList(depExclusions).forEach(options::addDepExclusion);
+    Arrays.asList(searchJarExclusions).forEach(options::addSearchJarExclusion);
+    Arrays.asList(searchJarInclusions).forEach(options::addSearchJarInclusion);
+
+    Metrics.registerMBean();
+    Progress.setInterval(progressInterval);
+
+    ThirdPartyLibraryAnalyzer analyzer = new ThirdPartyLibraryAnalyzer(options);
+
+    try {
+      if(!searchOnly && !searchUnusedOnly) {
+        File[] dbFiles = new File(dbDirectory).listFiles();
+
+        if(incremental && dbFiles != null && dbFiles.length > 0) {
+          analyzer.updateDependencyGraph(options);
+        } else {
+          analyzer.buildDependencyGraph(options);
+        }
+      }
+
+      // Every search type asked for runs against the same opened graph and loaded catalogs
+      if(jarNames != null) {
+        Collection<IReporter> reporters = new ArrayList<>();
+
+        try {
+          reporters.add(new JsonReporter(outputDir));
+          reporters.add(new VisualizationReporter(outputDir));
+        } catch(IOException ioe) {
+          LOG.warn("Failed to register reporters", ioe);
+        }
+
+        if(stdoutReporter) {
+          reporters.add(new StdOutReporter());
+        }
+
+        Collection<String> jarNamesList = Arrays.asList(jarNames);
+        analyzer.reportAffectedClasses(jarNamesList, reporters, outputDir, options);
+      }
+
+      if(classNames != null) {
+        // Kept apart from the affected class reports when both searches run
+        String dependencyOutputDir = jarNames != null ? Paths.get(outputDir, "dependencies").toString() : outputDir;
+
+        Collection<IReporter> reporters = new ArrayList<>();
+        reporters.add(new JsonReporter(dependencyOutputDir));
+
+        Collection<String> classNamesList = Arrays.asList(classNames);
+        analyzer.reportDependencies(classNamesList, reporters, dependencyOutputDir, options);
+      }
+
+      if(jarNames == null && classNames == null && searchOnly && !searchUnusedOnly) {
+        LOG.warn("Missing args -jarNames, -userClassNames or -searchUnusedOnly");
+      }
+
+      if(searchUnusedOnly) {
+        analyzer.reportUnusedJars(options);
+      }
+    } catch(InterruptedException ie) {
+      LOG.error("Process interrupted while waiting for threads to complete", ie);
+    } catch (IOException ioe) {
+      LOG.error("Error accessing file system", ioe);
+    }
+
+    if(metricsFile != null) {
+      try {
+        Metrics.write(new File(metricsFile), metricsFormat);
+      } catch(IOException ioe) {
+        LOG.warn("Failed to write metrics to {}", metricsFile, ioe);
+      }
+    }
+  }
+
+  private void parseArgs(String[] args) {
+    Args.parse(this, args);
+  }
+}
@@ -1,5 +1,8 @@
 package com.jtmelton.tpl.cli;
 
+import com.jtmelton.tpl.graph.GraphBackend;
+import com.jtmelton.tpl.utils.ClassReferenceReader;
+
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -18,16 +21,42 @@ public class Options {
 
   private int searchTimeout;
 
+  private int writeBatchSize = 5000;
+
   private String searchDepth = "1";
 
   private boolean excludeTestDirs = true;
 
   private boolean filterResults = false;
 
+  private boolean bulkImport = false;
+
+  private boolean incremental = false;
+
+  private boolean unusedSweep = false;
+
+  private boolean streamResults = false;
+
   private boolean exactMatch = false;
 
+  private String searchCacheDir = null;
+
+  private int searchCacheSize = 1024;
+
+  private int searchThreads = 2;
+
+  private int searchHeapReserve = 25;
+
+  private String saveSnapshot = null;
+
+  private String loadSnapshot = null;
+
   private String outputDir = "";
 
+  private String classReader = ClassReferenceReader.CONSTANT_POOL;
+
+  private String graphBackend = GraphBackend.NEO4J;
+
   private Collection<String> depExclusions = new ArrayList<>();
 
   private Collection<String> searchJarExclusions = new ArrayList<>();
@@ -145,4 +174,108 @@ public class Options {
   public void setSearchDepth(String searchDepth) {
     this.searchDepth = searchDepth;
   }
+
+  public String getClassReader() {
+    return classReader;
+  }
+
+  public void setClassReader(String classReader) {
+    this.classReader = classReader;
+  }
+
+  public boolean isUnusedSweep() {
+    return unusedSweep;
+  }
+
+  public void setUnusedSweep(boolean unusedSweep) {
+    this.unusedSweep = unusedSweep;
+  }
+
+  public boolean isStreamResults() {
+    return streamResults;
+  }
+
+  public void setStreamResults(boolean streamResults) {
+    this.streamResults = streamResults;
+  }
+
+  public String getGraphBackend() {
+    return graphBackend;
+  }
+
+  public void setGraphBackend(String graphBackend) {
+    this.graphBackend = graphBackend;
+  }
+
+  public int getWriteBatchSize() {
+    return writeBatchSize;
+  }
+
+  public void setWriteBatchSize(int writeBatchSize) {
+    this.writeBatchSize = writeBatchSize;
+  }
+
+  public boolean isBulkImport() {
+    return bulkImport;
+  }
+
+  public void setBulkImport(boolean bulkImport) {
+    this.bulkImport = bulkImport;
+  }
+
+  public boolean isIncremental() {
+    return incremental;
+  }
+
+  public void setIncremental(boolean incremental) {
+    this.incremental = incremental;
+  }
+
+  public String getSearchCacheDir() {
+    return searchCacheDir;
+  }
+
+  public void setSearchCacheDir(String searchCacheDir) {
+    this.searchCacheDir = searchCacheDir;
+  }
+
+  public int getSearchCacheSize() {
+    return searchCacheSize;
+  }
+
+  public void setSearchCacheSize(int searchCacheSize) {
+    this.searchCacheSize = searchCacheSize;
+  }
+
+  public int getSearchThreads() {
+    return searchThreads;
+  }
+
+  public void setSearchThreads(int searchThreads) {
+    this.searchThreads = searchThreads;
+  }
+
+  public int getSearchHeapReserve() {
+    return searchHeapReserve;
+  }
+
+  public void setSearchHeapReserve(int searchHeapReserve) {
+    this.searchHeapReserve = searchHeapReserve;
+  }
+
+  public String getSaveSnapshot() {
+    return saveSnapshot;
+  }
+
+  public void setSaveSnapshot(String saveSnapshot) {
+    this.saveSnapshot = saveSnapshot;
+  }
+
+  public String getLoadSnapshot() {
+    return loadSnapshot;
+  }
+
+  public void setLoadSnapshot(String loadSnapshot) {
+    this.loadSnapshot = loadSnapshot;
+  }
 }
@@ -0,0 +1,103 @@
+package com.jtmelton.tpl.domain;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+public class JarNode {
+
+  private Long id;
+
+  private String name;
+
+  private String hash;
+
+  private long size;
+
+  private long lastModified;
+
+  private List<String> paths = new ArrayList<>();
+
+  private Collection<ClassNode> classNodes = new ArrayList<>();
+
+  private List<JarNode> nestedJars = new ArrayList<>();
+
+  public JarNode() { }
+
+  public Long getId() {
+    return id;
+  }
+
+  public void setId(Long id) {
+    this.id = id;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public void setName(String name) {
+    this.name = name;
+  }
+
+  public String getHash() {
+    return hash;
+  }
+
+  public void setHash(String hash) {
+    this.hash = hash;
+  }
+
+  public long getSize() {
+    return size;
+  }
+
+  public void setSize(long size) {
+    this.size = size;
+  }
+
+  public long getLastModified() {
+    return lastModified;
+  }
+
+  public void setLastModified(long lastModified) {
+    this.lastModified = lastModified;
+  }
+
+  public void addPath(String path) {
+    paths.add(path);
+  }
+
+  public List<String> getPaths() {
+    return Collections.unmodifiableList(paths);
+  }
+
+  public void addClassFile(ClassNode classNode) {
+    classNodes.add(classNode);
+  }
+
+  public Collection<ClassNode> getClassNodes() {
+    return Collections.unmodifiableCollection(classNodes);
+  }
+
+  public void addNestedJar(JarNode jarNode) {
+    nestedJars.add(jarNode);
+  }
+
+  public List<JarNode> getNestedJars() {
+    return Collections.unmodifiableList(nestedJars);
+  }
+
+  // This jar followed by every jar nested in it at any depth, containers before their contents
+  public List<JarNode> withNestedJars() {
+    List<JarNode> jars = new ArrayList<>();
+    jars.add(this);
+
+    for(JarNode nestedJar : nestedJars) {
+      jars.addAll(nestedJar.withNestedJars());
+    }
+
+    return jars;
+  }
+}
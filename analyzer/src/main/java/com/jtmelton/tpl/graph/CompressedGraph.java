@@ -0,0 +1,342 @@
+package com.jtmelton.tpl.graph;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Read only copy of the dependency graph in int indexed CSR arrays. Nodes are indexed in Neo4j
+ * id order, names are interned into one string table, and both relationship types are kept in
+ * both directions so searches can walk either way without touching the store. Neighbours are
+ * kept in name then id order, the order LevelTraversal walks the store in.
+ */
+public class CompressedGraph {
+
+  public static final byte JAR = 0;
+
+  public static final byte CLASS = 1;
+
+  public static final byte USER_CLASS = 2;
+
+  private static final Label JAR_LABEL = Label.label("Jar");
+
+  private static final Label USER_CLASS_LABEL = Label.label("UserClass");
+
+  private static final RelationshipType CLASSES = RelationshipType.withName("classes");
+
+  private static final RelationshipType CLASSES_DEPENDED_ON = RelationshipType.withName("classesDependedOn");
+
+  private final long[] ids;
+
+  private final byte[] kinds;
+
+  private final int[] names;
+
+  private final String[] strings;
+
+  // Only set for jars
+  private final String[] hashes;
+
+  private final String[][] paths;
+
+  private Adjacency dependencies;
+
+  private Adjacency dependents;
+
+  private Adjacency owningJars;
+
+  private Adjacency jarClasses;
+
+  private CompressedGraph(long[] ids, byte[] kinds, int[] names, String[] strings,
+                          String[] hashes, String[][] paths) {
+    this.ids = ids;
+    this.kinds = kinds;
+    this.names = names;
+    this.strings = strings;
+    this.hashes = hashes;
+    this.paths = paths;
+  }
+
+  public static CompressedGraph load(GraphDatabaseService graphDb) {
+    try(Transaction tx = graphDb.beginTx()) {
+      CompressedGraph graph = loadNodes(graphDb);
+      graph.loadRelationships(graphDb);
+      tx.success();
+      return graph;
+    }
+  }
+
+  private static CompressedGraph loadNodes(GraphDatabaseService graphDb) {
+    int capacity = 1024;
+    long[] ids = new long[capacity];
+    byte[] kinds = new byte[capacity];
+    int[] names = new int[capacity];
+    String[] hashes = new String[capacity];
+    String[][] paths = new String[capacity][];
+
+    Map<String, Integer> stringIndex = new HashMap<>();
+    String[] strings = new String[capacity];
+    int count = 0;
+
+    for(Node node : graphDb.getAllNodes()) {
+      if(count == ids.length) {
+        capacity = ids.length * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        kinds = Arrays.copyOf(kinds, capacity);
+        names = Arrays.copyOf(names, capacity);
+        hashes = Arrays.copyOf(hashes, capacity);
+        paths = Arrays.copyOf(paths, capacity);
+      }
+
+      String name = (String) node.getProperty("name", "");
+      Integer nameIndex = stringIndex.get(name);
+      if(nameIndex == null) {
+        nameIndex = stringIndex.size();
+        stringIndex.put(name, nameIndex);
+
+        if(nameIndex == strings.length) {
+          strings = Arrays.copyOf(strings, strings.length * 2);
+        }
+        strings[nameIndex] = name;
+      }
+
+      ids[count] = node.getId();
+      names[count] = nameIndex;
+
+      if(node.hasLabel(JAR_LABEL)) {
+        kinds[count] = JAR;
+        hashes[count] = (String) node.getProperty("hash", null);
+        paths[count] = (String[]) node.getProperty("paths", new String[] { name });
+      } else if(node.hasLabel(USER_CLASS_LABEL)) {
+        kinds[count] = USER_CLASS;
+      } else {
+        kinds[count] = CLASS;
+      }
+
+      count++;
+    }
+
+    CompressedGraph graph = new CompressedGraph(Arrays.copyOf(ids, count), Arrays.copyOf(kinds, count),
+            Arrays.copyOf(names, count), Arrays.copyOf(strings, stringIndex.size()),
+            Arrays.copyOf(hashes, count), Arrays.copyOf(paths, count));
+
+    graph.sortById();
+
+    return graph;
+  }
+
+  // getAllNodes walks the store in id order already, this only guards against that changing
+  private void sortById() {
+    for(int i = 1;i < ids.length;i++) {
+      if(ids[i - 1] > ids[i]) {
+        Integer[] order = new Integer[ids.length];
+        for(int j = 0;j < order.length;j++) {
+          order[j] = j;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(ids[a], ids[b]));
+
+        long[] sortedIds = ids.clone();
+        byte[] sortedKinds = kinds.clone();
+        int[] sortedNames = names.clone();
+        String[] sortedHashes = hashes.clone();
+        String[][] sortedPaths = paths.clone();
+
+        for(int j = 0;j < order.length;j++) {
+          ids[j] = sortedIds[order[j]];
+          kinds[j] = sortedKinds[order[j]];
+          names[j] = sortedNames[order[j]];
+          hashes[j] = sortedHashes[order[j]];
+          paths[j] = sortedPaths[order[j]];
+        }
+        return;
+      }
+    }
+  }
+
+  // Two passes over the relationships, one to size the arrays and one to fill them
+  private void loadRelationships(GraphDatabaseService graphDb) {
+    int nodeCount = ids.length;
+    int[] dependencyCounts = new int[nodeCount];
+    int[] dependentCounts = new int[nodeCount];
+    int[] owningJarCounts = new int[nodeCount];
+    int[] jarClassCounts = new int[nodeCount];
+
+    for(Relationship relationship : graphDb.getAllRelationships()) {
+      int start = indexOf(relationship.getStartNodeId());
+      int end = indexOf(relationship.getEndNodeId());
+
+      if(relationship.isType(CLASSES_DEPENDED_ON)) {
+        dependencyCounts[start]++;
+        dependentCounts[end]++;
+      } else if(relationship.isType(CLASSES)) {
+        owningJarCounts[start]++;
+        jarClassCounts[end]++;
+      }
+    }
+
+    dependencies = new Adjacency(dependencyCounts);
+    dependents = new Adjacency(dependentCounts);
+    owningJars = new Adjacency(owningJarCounts);
+    jarClasses = new Adjacency(jarClassCounts);
+
+    for(Relationship relationship : graphDb.getAllRelationships()) {
+      int start = indexOf(relationship.getStartNodeId());
+      int end = indexOf(relationship.getEndNodeId());
+
+      if(relationship.isType(CLASSES_DEPENDED_ON)) {
+        dependencies.add(start, end);
+        dependents.add(end, start);
+      } else if(relationship.isType(CLASSES)) {
+        owningJars.add(start, end);
+        jarClasses.add(end, start);
+      }
+    }
+
+    int[] ranks = ranks();
+    dependencies.sort(ranks);
+    dependents.sort(ranks);
+    owningJars.sort(ranks);
+    jarClasses.sort(ranks);
+  }
+
+  // Position of every node in name order. Nodes are in id order already, so a stable sort breaks ties by id
+  private int[] ranks() {
+    Integer[] order = new Integer[ids.length];
+    for(int i = 0;i < order.length;i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, (a, b) -> getName(a).compareTo(getName(b)));
+
+    int[] ranks = new int[ids.length];
+    for(int i = 0;i < order.length;i++) {
+      ranks[order[i]] = i;
+    }
+
+    return ranks;
+  }
+
+  public int size() {
+    return ids.length;
+  }
+
+  public int indexOf(long id) {
+    return Arrays.binarySearch(ids, id);
+  }
+
+  public long getId(int node) {
+    return ids[node];
+  }
+
+  public byte getKind(int node) {
+    return kinds[node];
+  }
+
+  public String getName(int node) {
+    return strings[names[node]];
+  }
+
+  public String getHash(int node) {
+    return hashes[node];
+  }
+
+  public List<String> getPaths(int node) {
+    return Arrays.asList(paths[node]);
+  }
+
+  public Adjacency getDependencies() {
+    return dependencies;
+  }
+
+  public Adjacency getDependents() {
+    return dependents;
+  }
+
+  public Adjacency getOwningJars() {
+    return owningJars;
+  }
+
+  public Adjacency getJarClasses() {
+    return jarClasses;
+  }
+
+  public long getRelationshipCount() {
+    return dependencies.targets.length + owningJars.targets.length;
+  }
+
+  /*
+   * Neighbours of node i are targets[offsets[i]] up to targets[offsets[i + 1]], which also
+   * gives every relationship a stable int index for traversals that track visited edges.
+   */
+  public static class Adjacency {
+
+    private final int[] offsets;
+
+    private final int[] targets;
+
+    private final int[] cursors;
+
+    private Adjacency(int[] counts) {
+      offsets = new int[counts.length + 1];
+      for(int i = 0;i < counts.length;i++) {
+        offsets[i + 1] = offsets[i] + counts[i];
+      }
+
+      targets = new int[offsets[counts.length]];
+      cursors = Arrays.copyOf(offsets, counts.length);
+    }
+
+    private void add(int node, int target) {
+      targets[cursors[node]++] = target;
+    }
+
+    private void sort(int[] ranks) {
+      long[] keys = new long[0];
+
+      for(int node = 0;node < cursors.length;node++) {
+        int length = offsets[node + 1] - offsets[node];
+        if(length < 2) {
+          continue;
+        }
+
+        if(keys.length < length) {
+          keys = new long[length];
+        }
+
+        for(int i = 0;i < length;i++) {
+          int target = targets[offsets[node] + i];
+          keys[i] = (long) ranks[target] << 32 | target;
+        }
+
+        Arrays.sort(keys, 0, length);
+
+        for(int i = 0;i < length;i++) {
+          targets[offsets[node] + i] = (int) keys[i];
+        }
+      }
+    }
+
+    public int start(int node) {
+      return offsets[node];
+    }
+
+    public int end(int node) {
+      return offsets[node + 1];
+    }
+
+    public int target(int edge) {
+      return targets[edge];
+    }
+
+    public int edgeCount() {
+      return targets.length;
+    }
+  }
+}
@@ -0,0 +1,37 @@
+package com.jtmelton.tpl.graph;
+
+import com.jtmelton.tpl.cli.Options;
+import com.jtmelton.tpl.results.ChainSink;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * Query operations run against a dependency graph that has already been built. Jar and class
+ * maps use the same keys the Cypher queries return (id, name, hash and paths) so both
+ * implementations feed the same result handling.
+ */
+public interface GraphBackend {
+
+  String NEO4J = "neo4j";
+
+  String MEMORY = "memory";
+
+  // Searches for the term of the given results and adds the chains found to them
+  void findDependencies(ChainSink results, Options options) throws InterruptedException;
+
+  void findAffectedUserClasses(ChainSink results, Options options) throws InterruptedException;
+
+  // One entry per path a jar was found at
+  List<Map<String, Object>> getAllJarPaths();
+
+  boolean isJarUsed(Map<String, Object> jar, Options options);
+
+  // Ids of every used jar mapped to the names on the shortest path from a user class to it
+  Map<Long, List<String>> findUsedJars();
+
+  // Paths of the jars owning each class, classes without an owning jar may be left out
+  Map<Long, Set<String>> findOwningJarNames(Collection<Long> ids);
+}
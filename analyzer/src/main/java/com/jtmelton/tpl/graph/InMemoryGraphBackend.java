@@ -0,0 +1,627 @@
+package com.jtmelton.tpl.graph;
+
+import com.jtmelton.tpl.cli.Options;
+import com.jtmelton.tpl.graph.CompressedGraph.Adjacency;
+import com.jtmelton.tpl.metrics.Progress;
+import com.jtmelton.tpl.results.ChainCollector;
+import com.jtmelton.tpl.results.ChainSink;
+import com.jtmelton.tpl.results.ClassChain;
+import com.jtmelton.tpl.utils.QueryUtil;
+import com.jtmelton.tpl.utils.SearchScheduler;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/*
+ * Runs searches against a CompressedGraph loaded from the Neo4j store. Searches work the same way
+ * LevelTraversal does in the store, so they return the same chains, honour the same time budget
+ * and keep the same chains when it runs out.
+ */
+public class InMemoryGraphBackend implements GraphBackend {
+
+  private static final Logger LOG = LoggerFactory.getLogger(InMemoryGraphBackend.class);
+
+  private final CompressedGraph graph;
+
+  private final ThreadLocal<Traversal> traversals;
+
+  private final SearchScheduler scheduler;
+
+  // Built once and shared by every search run through this backend
+  private List<Map<String, Object>> jarPaths;
+
+  private List<Map<String, Object>> userClasses;
+
+  public InMemoryGraphBackend(GraphDatabaseService graphDb, SearchScheduler scheduler) {
+    this.scheduler = scheduler;
+
+    long start = System.nanoTime();
+    graph = CompressedGraph.load(graphDb);
+    traversals = ThreadLocal.withInitial(() -> new Traversal(graph.size()));
+
+    LOG.info("Loaded {} nodes and {} relationships into memory in {} ms", graph.size(),
+            graph.getRelationshipCount(), NANOSECONDS.toMillis(System.nanoTime() - start));
+  }
+
+  @Override
+  public void findDependencies(ChainSink results, Options options) throws InterruptedException {
+    int depth = Integer.parseInt(options.getSearchDepth());
+
+    List<Map<String, Object>> classes = QueryUtil.selectUserClasses(getAllUserClasses(), results.getSearchTerm(), options);
+
+    runSearches(classes, clazz -> {
+      Traversal traversal = traversals.get();
+      ChainCollector chains = QueryUtil.dependencyChains(results, options);
+      boolean success = traversal.search(graph.indexOf((Long) clazz.get("id")), false, depth,
+              options.getSearchTimeout(), options.isFilterResults(), chains);
+      chains.finish();
+
+      if(!success) {
+        QueryUtil.timedOut(results, clazz, traversal.depthReached, chains);
+      }
+    });
+  }
+
+  @Override
+  public void findAffectedUserClasses(ChainSink results, Options options) throws InterruptedException {
+    int depth = Integer.parseInt(options.getSearchDepth());
+
+    List<Map<String, Object>> jars = QueryUtil.selectJars(getAllJarPaths(), results, results.getSearchTerm(), options);
+
+    try(Progress progress = Progress.start("Search queries for " + results.getSearchTerm(), jars.size())) {
+      runSearches(jars, jar -> {
+        Traversal traversal = traversals.get();
+        ChainCollector chains = QueryUtil.affectedClassChains(results, jar, options);
+        boolean success = traversal.search(graph.indexOf((Long) jar.get("id")), true, depth,
+                options.getSearchTimeout(), options.isFilterResults(), chains);
+        chains.finish();
+
+        if(!success) {
+          QueryUtil.timedOut(results, jar, traversal.depthReached, chains);
+        }
+
+        progress.increment();
+      });
+    }
+  }
+
+  @Override
+  public synchronized List<Map<String, Object>> getAllJarPaths() {
+    if(jarPaths != null) {
+      return jarPaths;
+    }
+
+    List<Map<String, Object>> jars = new ArrayList<>();
+
+    for(int node = 0;node < graph.size();node++) {
+      if(graph.getKind(node) == CompressedGraph.JAR) {
+        Map<String, Object> jar = nodeMap(node);
+        jar.put("hash", graph.getHash(node));
+        // Same shape as the paths property Neo4j returns
+        jar.put("paths", graph.getPaths(node).toArray(new String[0]));
+        jars.add(jar);
+      }
+    }
+
+    jarPaths = Collections.unmodifiableList(QueryUtil.toJarPaths(jars));
+
+    return jarPaths;
+  }
+
+  @Override
+  public boolean isJarUsed(Map<String, Object> jar, Options options) {
+    Traversal traversal = startFromJar(graph.indexOf((Long) jar.get("id")));
+    Adjacency dependents = graph.getDependents();
+
+    for(int level = 1;level <= QueryUtil.UNUSED_SEARCH_DEPTH && !traversal.levelDone();level++) {
+      int levelEnd = traversal.tail;
+
+      while(traversal.head < levelEnd) {
+        int node = traversal.queue[traversal.head++];
+
+        for(int edge = dependents.start(node);edge < dependents.end(node);edge++) {
+          int dependent = dependents.target(edge);
+
+          if(graph.getKind(dependent) == CompressedGraph.USER_CLASS) {
+            return true;
+          }
+
+          if(traversal.visit(dependent, node)) {
+            traversal.enqueue(dependent);
+          }
+        }
+      }
+    }
+
+    return false;
+  }
+
+  @Override
+  public Map<Long, List<String>> findUsedJars() {
+    Map<Long, List<String>> usedJars = new HashMap<>();
+    Traversal traversal = traversals.get();
+    traversal.reset();
+
+    for(int node = 0;node < graph.size();node++) {
+      if(graph.getKind(node) == CompressedGraph.USER_CLASS) {
+        traversal.visit(node, -1);
+        traversal.enqueue(node);
+      }
+    }
+
+    Adjacency dependencies = graph.getDependencies();
+    Adjacency owningJars = graph.getOwningJars();
+
+    for(int level = 1;level <= QueryUtil.UNUSED_SEARCH_DEPTH && !traversal.levelDone();level++) {
+      int levelEnd = traversal.tail;
+
+      while(traversal.head < levelEnd) {
+        int node = traversal.queue[traversal.head++];
+
+        for(int edge = dependencies.start(node);edge < dependencies.end(node);edge++) {
+          int dependency = dependencies.target(edge);
+
+          if(!traversal.visit(dependency, node)) {
+            continue;
+          }
+
+          traversal.enqueue(dependency);
+
+          for(int jarEdge = owningJars.start(dependency);jarEdge < owningJars.end(dependency);jarEdge++) {
+            int jar = owningJars.target(jarEdge);
+
+            if(traversal.visit(jar, dependency)) {
+              usedJars.put(graph.getId(jar), traversal.chainTo(jar).getNames());
+            }
+          }
+        }
+      }
+    }
+
+    return usedJars;
+  }
+
+  @Override
+  public Map<Long, Set<String>> findOwningJarNames(Collection<Long> ids) {
+    Map<Long, Set<String>> jarNames = new HashMap<>();
+    Adjacency owningJars = graph.getOwningJars();
+
+    for(long id : ids) {
+      int node = graph.indexOf(id);
+
+      if(node < 0 || owningJars.start(node) == owningJars.end(node)) {
+        continue;
+      }
+
+      Set<String> names = new HashSet<>();
+      for(int edge = owningJars.start(node);edge < owningJars.end(node);edge++) {
+        names.addAll(graph.getPaths(owningJars.target(edge)));
+      }
+
+      jarNames.put(id, names);
+    }
+
+    return jarNames;
+  }
+
+  private synchronized List<Map<String, Object>> getAllUserClasses() {
+    if(userClasses != null) {
+      return userClasses;
+    }
+
+    List<Map<String, Object>> classes = new ArrayList<>();
+
+    for(int node = 0;node < graph.size();node++) {
+      if(graph.getKind(node) == CompressedGraph.USER_CLASS) {
+        classes.add(nodeMap(node));
+      }
+    }
+
+    userClasses = Collections.unmodifiableList(classes);
+
+    return userClasses;
+  }
+
+  // Seeds a traversal with every class of the jar at depth 0
+  private Traversal startFromJar(int jar) {
+    Traversal traversal = traversals.get();
+    traversal.reset();
+    traversal.visit(jar, -1);
+
+    Adjacency jarClasses = graph.getJarClasses();
+    for(int edge = jarClasses.start(jar);edge < jarClasses.end(jar);edge++) {
+      int jarClass = jarClasses.target(edge);
+
+      if(traversal.visit(jarClass, jar)) {
+        traversal.enqueue(jarClass);
+      }
+    }
+
+    return traversal;
+  }
+
+  private void runSearches(List<Map<String, Object>> searches,
+                           Consumer<Map<String, Object>> search) throws InterruptedException {
+    scheduler.runAll(searches, entry -> () -> {
+      search.accept(entry);
+      return null;
+    });
+  }
+
+  // Names come from the graph's string table, so chains share them without a NameDictionary
+  private ClassChain toChain(int[] path, int length) {
+    long[] ids = new long[length];
+    String[] names = new String[length];
+
+    for(int i = 0;i < length;i++) {
+      ids[i] = graph.getId(path[i]);
+      names[i] = graph.getName(path[i]);
+    }
+
+    return new ClassChain(ids, names);
+  }
+
+  private Map<String, Object> nodeMap(int node) {
+    Map<String, Object> map = new HashMap<>();
+    map.put("id", graph.getId(node));
+    map.put("name", graph.getName(node));
+    return map;
+  }
+
+  private static boolean contains(int[] values, int length, int value) {
+    for(int i = 0;i < length;i++) {
+      if(values[i] == value) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /*
+   * Per thread search state sized to the graph. Visited and hop marks are generation stamps so
+   * starting a new search doesn't have to clear the arrays.
+   *
+   * search() is LevelTraversal on the compressed graph: a breadth first sweep, then with every
+   * path asked for, iterative deepening that only steps to nodes that can still end a chain at
+   * the current depth, all within the same time budget and with the same fallback once it runs out.
+   */
+  private class Traversal {
+
+    private final int[] stamps;
+
+    private final int[] parents;
+
+    private final int[] queue;
+
+    // Fewest hops from a node the sweep reached to an end, only valid where hopStamps is current
+    private final int[] hops;
+
+    private final int[] hopStamps;
+
+    // Nodes a chain can finish at, found by the sweep
+    private final int[] ends;
+
+    private int endCount;
+
+    // Last nodes of the chains reported at the depth being enumerated
+    private final Set<Integer> endsAtDepth = new HashSet<>();
+
+    private int generation;
+
+    private int head;
+
+    private int tail;
+
+    private boolean fromJar;
+
+    private int maxDepth;
+
+    private long deadline;
+
+    private int checks;
+
+    private boolean timedOut;
+
+    // The deepest level every chain was found for
+    private int depthReached;
+
+    private Traversal(int size) {
+      stamps = new int[size];
+      parents = new int[size];
+      queue = new int[size];
+      hops = new int[size];
+      hopStamps = new int[size];
+      ends = new int[size];
+    }
+
+    private void reset() {
+      if(generation == Integer.MAX_VALUE) {
+        Arrays.fill(stamps, 0);
+        Arrays.fill(hopStamps, 0);
+        generation = 0;
+      }
+
+      generation++;
+      head = 0;
+      tail = 0;
+    }
+
+    private boolean visit(int node, int parent) {
+      if(stamps[node] == generation) {
+        return false;
+      }
+
+      stamps[node] = generation;
+      parents[node] = parent;
+      return true;
+    }
+
+    private void enqueue(int node) {
+      queue[tail++] = node;
+    }
+
+    private boolean levelDone() {
+      return head == tail;
+    }
+
+    // Chains from a jar run through one of its classes and its dependents to a user class, chains
+    // from a user class through the classes it depends on to an owning jar. Returns false if the
+    // time budget ran out before maxDepth
+    private boolean search(int start, boolean fromJar, int maxDepth, int timeoutMinutes, boolean shortestOnly,
+                           Consumer<ClassChain> chains) {
+      this.fromJar = fromJar;
+      this.maxDepth = maxDepth;
+      this.deadline = System.nanoTime() + MINUTES.toNanos(timeoutMinutes);
+      this.checks = 0;
+      this.timedOut = false;
+      this.endCount = 0;
+
+      if(fromJar) {
+        startFromJar(start);
+      } else {
+        reset();
+        visit(start, -1);
+        enqueue(start);
+      }
+
+      int[] roots = Arrays.copyOf(queue, tail);
+
+      if(shortestOnly) {
+        sweep(chains);
+        return !timedOut;
+      }
+
+      // The shortest chains are only kept in case the budget runs out before every path is enumerated
+      List<ClassChain> shortest = new ArrayList<>();
+      sweep(shortest::add);
+
+      if(timedOut) {
+        shortest.forEach(chains);
+        return false;
+      }
+
+      depthReached = 0;
+      hopsToEnd();
+
+      if(!timedOut) {
+        enumerate(start, roots, chains);
+      }
+
+      if(timedOut) {
+        // Every chain up to depthReached was enumerated. Past that the sweep's chains are all there is,
+        // except to ends the unfinished depth already reported a chain for
+        for(ClassChain chain : shortest) {
+          int depth = chain.size() - 2;
+          boolean reported = depth == depthReached + 1
+                  && endsAtDepth.contains(graph.indexOf(chain.getId(chain.size() - 1)));
+
+          if(depth > depthReached && !reported) {
+            chains.accept(chain);
+          }
+        }
+      }
+
+      return !timedOut;
+    }
+
+    // Breadth first from the roots already queued. The first chain found to each end is reported
+    private void sweep(Consumer<ClassChain> chains) {
+      Adjacency next = fromJar ? graph.getDependents() : graph.getDependencies();
+      Adjacency owningJars = graph.getOwningJars();
+
+      for(int level = 1;level <= maxDepth && !levelDone();level++) {
+        int levelEnd = tail;
+
+        while(head < levelEnd) {
+          if(expired()) {
+            return;
+          }
+
+          int node = queue[head++];
+
+          for(int edge = next.start(node);edge < next.end(node);edge++) {
+            int other = next.target(edge);
+
+            if(!visit(other, node)) {
+              continue;
+            }
+
+            if(fromJar && graph.getKind(other) == CompressedGraph.USER_CLASS) {
+              ends[endCount++] = other;
+              chains.accept(chainTo(other));
+              continue;
+            }
+
+            if(!fromJar && owningJars.start(other) < owningJars.end(other)) {
+              ends[endCount++] = other;
+
+              // Jars are never reached through dependencies, so they can share the visited marks
+              for(int jarEdge = owningJars.start(other);jarEdge < owningJars.end(other);jarEdge++) {
+                int jar = owningJars.target(jarEdge);
+
+                if(visit(jar, other)) {
+                  chains.accept(chainTo(jar));
+                }
+              }
+            }
+
+            enqueue(other);
+          }
+        }
+
+        depthReached = level;
+      }
+
+      depthReached = maxDepth;
+    }
+
+    // Walks back from every end through the nodes of the sweep, giving the fewest hops from each
+    // of them to an end. The sweep's queue is done with, so it is reused
+    private void hopsToEnd() {
+      Adjacency previous = fromJar ? graph.getDependencies() : graph.getDependents();
+      head = 0;
+      tail = 0;
+
+      for(int i = 0;i < endCount;i++) {
+        hopStamps[ends[i]] = generation;
+        hops[ends[i]] = 0;
+        enqueue(ends[i]);
+      }
+
+      for(int hop = 1;hop <= maxDepth && !levelDone();hop++) {
+        int levelEnd = tail;
+
+        while(head < levelEnd) {
+          if(expired()) {
+            return;
+          }
+
+          int node = queue[head++];
+
+          for(int edge = previous.start(node);edge < previous.end(node);edge++) {
+            int other = previous.target(edge);
+
+            if(stamps[other] == generation && hopStamps[other] != generation) {
+              hopStamps[other] = generation;
+              hops[other] = hop;
+              enqueue(other);
+            }
+          }
+        }
+      }
+    }
+
+    // Reports every chain one depth at a time, so a search that runs out of time has every chain
+    // shorter than the depth it was on
+    private void enumerate(int start, int[] roots, Consumer<ClassChain> chains) {
+      int offset = fromJar ? 1 : 0;
+      int[] path = new int[maxDepth + 2];
+      int[] edges = new int[maxDepth];
+      path[0] = start;
+
+      for(int depth = 1;depth <= maxDepth;depth++) {
+        endsAtDepth.clear();
+
+        for(int root : roots) {
+          if(hopStamps[root] != generation) {
+            continue;
+          }
+
+          path[offset] = root;
+
+          if(!trails(path, edges, offset, 0, depth, chains)) {
+            return;
+          }
+        }
+
+        depthReached = depth;
+      }
+    }
+
+    private boolean trails(int[] path, int[] edges, int offset, int length, int depth,
+                           Consumer<ClassChain> chains) {
+      if(expired()) {
+        return false;
+      }
+
+      int node = path[offset + length];
+
+      if(length == depth) {
+        if(fromJar) {
+          endsAtDepth.add(node);
+          chains.accept(toChain(path, offset + length + 1));
+        } else {
+          Adjacency owningJars = graph.getOwningJars();
+
+          for(int jarEdge = owningJars.start(node);jarEdge < owningJars.end(node);jarEdge++) {
+            path[offset + length + 1] = owningJars.target(jarEdge);
+            endsAtDepth.add(owningJars.target(jarEdge));
+            chains.accept(toChain(path, offset + length + 2));
+          }
+        }
+
+        return true;
+      }
+
+      Adjacency next = fromJar ? graph.getDependents() : graph.getDependencies();
+
+      for(int edge = next.start(node);edge < next.end(node);edge++) {
+        if(contains(edges, length, edge)) {
+          continue;
+        }
+
+        int other = next.target(edge);
+
+        if(hopStamps[other] != generation) {
+          continue;
+        }
+
+        // Chains end at the first user class, and every step has to leave room to reach an end
+        int hopsLeft = hops[other];
+        if(length + 1 + hopsLeft > depth || (fromJar && hopsLeft == 0 && length + 1 < depth)) {
+          continue;
+        }
+
+        path[offset + length + 1] = other;
+        edges[length] = edge;
+
+        if(!trails(path, edges, offset, length + 1, depth, chains)) {
+          return false;
+        }
+      }
+
+      return true;
+    }
+
+    // The clock is only read every so often, a step here costs far less than one in the store
+    private boolean expired() {
+      if(!timedOut && (checks++ & 1023) == 0 && System.nanoTime() - deadline > 0) {
+        timedOut = true;
+      }
+
+      return timedOut;
+    }
+
+    // Follows parents back to where the search started, then flips the chain to start there
+    private ClassChain chainTo(int node) {
+      int length = 0;
+      for(int current = node;current != -1;current = parents[current]) {
+        length++;
+      }
+
+      int[] path = new int[length];
+      for(int current = node;current != -1;current = parents[current]) {
+        path[--length] = current;
+      }
+
+      return toChain(path, path.length);
+    }
+  }
+}
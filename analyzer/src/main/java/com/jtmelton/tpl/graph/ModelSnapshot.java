@@ -0,0 +1,439 @@
+package com.jtmelton.tpl.graph;
+
+import com.google.common.collect.Multimap;
+import com.jtmelton.tpl.domain.ClassNode;
+import com.jtmelton.tpl.domain.JarNode;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * The class model read from the class files and jars, saved so a later run can build or query
+ * the graph without reading them again. Classes are numbered user classes first, every name,
+ * hash and path is stored once in a string table, and numbers are varints, with the sorted
+ * dependencies and classes of each jar stored as gaps from the one before.
+ *
+ *   magic, version
+ *   string count, then each string as its UTF-8 length and bytes
+ *   user class count, external class count, dependency count
+ *   the name of each class
+ *   for each class, its dependency count and dependencies
+ *   jar count, jar class count
+ *   for each jar, containers before the jars nested in them: name, hash, size, last modified,
+ *   container, path count and paths, class count and classes
+ *
+ * Only dependencies on classes found in a jar are kept, the same ones the graph gets.
+ */
+public class ModelSnapshot {
+
+  private static final int MAGIC = 0x54504c53;
+
+  private static final int VERSION = 1;
+
+  private final String[] strings;
+
+  private final int userClassCount;
+
+  private final int[] classNames;
+
+  private final int[] dependencyOffsets;
+
+  private final int[] dependencies;
+
+  private final int[] jarNames;
+
+  // -1 where there is no hash or container
+  private final int[] jarHashes;
+
+  private final long[] jarSizes;
+
+  private final long[] jarModified;
+
+  private final int[] jarContainers;
+
+  private final int[][] jarPaths;
+
+  private final int[] jarClassOffsets;
+
+  private final int[] jarClasses;
+
+  private ModelSnapshot(ByteBuffer buffer) throws IOException {
+    if(buffer.remaining() < 8 || buffer.getInt() != MAGIC) {
+      throw new IOException("Not a class model snapshot");
+    }
+
+    int version = buffer.getInt();
+    if(version != VERSION) {
+      throw new IOException("Unsupported snapshot version " + version);
+    }
+
+    strings = new String[readInt(buffer)];
+    byte[] bytes = new byte[256];
+
+    for(int i = 0;i < strings.length;i++) {
+      int length = readInt(buffer);
+      if(length > bytes.length) {
+        bytes = new byte[Math.max(length, bytes.length * 2)];
+      }
+
+      buffer.get(bytes, 0, length);
+      strings[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    userClassCount = readInt(buffer);
+    int classCount = userClassCount + readInt(buffer);
+
+    classNames = new int[classCount];
+    dependencyOffsets = new int[classCount + 1];
+    dependencies = new int[readInt(buffer)];
+
+    for(int i = 0;i < classCount;i++) {
+      classNames[i] = readInt(buffer);
+    }
+
+    for(int i = 0;i < classCount;i++) {
+      dependencyOffsets[i + 1] = readGaps(buffer, dependencies, dependencyOffsets[i]);
+    }
+
+    int jarCount = readInt(buffer);
+
+    jarNames = new int[jarCount];
+    jarHashes = new int[jarCount];
+    jarSizes = new long[jarCount];
+    jarModified = new long[jarCount];
+    jarContainers = new int[jarCount];
+    jarPaths = new int[jarCount][];
+    jarClassOffsets = new int[jarCount + 1];
+    jarClasses = new int[readInt(buffer)];
+
+    for(int i = 0;i < jarCount;i++) {
+      jarNames[i] = readInt(buffer);
+      jarHashes[i] = readInt(buffer) - 1;
+      jarSizes[i] = readLong(buffer);
+      jarModified[i] = readLong(buffer);
+      jarContainers[i] = readInt(buffer) - 1;
+
+      jarPaths[i] = new int[readInt(buffer)];
+      for(int j = 0;j < jarPaths[i].length;j++) {
+        jarPaths[i][j] = readInt(buffer);
+      }
+
+      jarClassOffsets[i + 1] = readGaps(buffer, jarClasses, jarClassOffsets[i]);
+    }
+  }
+
+  // Maps the file rather than reading it, so only the pages decoded are ever read from disk
+  public static ModelSnapshot load(File file) throws IOException {
+    try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      if(channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("Snapshot " + file + " is too large to map");
+      }
+
+      return new ModelSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    } catch(RuntimeException re) {
+      // A truncated file runs off the end of the buffer
+      throw new IOException("Corrupt snapshot " + file, re);
+    }
+  }
+
+  // References are keyed by class name. Written to a temporary file first, so a failed write
+  // never leaves a partial snapshot behind
+  public static void write(File file, Collection<ClassNode> userClasses, Collection<ClassNode> externalClasses,
+                           Collection<JarNode> jarNodes, Multimap<String, String> references) throws IOException {
+    List<ClassNode> classes = new ArrayList<>(userClasses);
+    classes.addAll(externalClasses);
+
+    Map<String, Integer> externalIndexes = new HashMap<>();
+    for(int i = userClasses.size();i < classes.size();i++) {
+      externalIndexes.put(classes.get(i).getName(), i);
+    }
+
+    List<JarNode> jars = new ArrayList<>();
+    List<Integer> containers = new ArrayList<>();
+    jarNodes.forEach(jar -> addJar(jar, -1, jars, containers));
+
+    StringTable table = new StringTable();
+    classes.forEach(c -> table.add(c.getName()));
+
+    int[][] classDependencies = new int[classes.size()][];
+    long dependencyCount = 0;
+
+    for(int i = 0;i < classes.size();i++) {
+      String name = classes.get(i).getName();
+
+      classDependencies[i] = references.get(name).stream()
+              .filter(r -> !r.equals(name))
+              .map(externalIndexes::get)
+              .filter(index -> index != null)
+              .mapToInt(Integer::intValue)
+              .sorted()
+              .toArray();
+      dependencyCount += classDependencies[i].length;
+    }
+
+    int[][] classesOfJars = new int[jars.size()][];
+    long jarClassCount = 0;
+
+    for(int i = 0;i < jars.size();i++) {
+      JarNode jar = jars.get(i);
+      table.add(jar.getName());
+      table.add(jar.getHash());
+      jar.getPaths().forEach(table::add);
+
+      classesOfJars[i] = jar.getClassNodes().stream()
+              .map(c -> externalIndexes.get(c.getName()))
+              .filter(index -> index != null)
+              .mapToInt(Integer::intValue)
+              .sorted()
+              .toArray();
+      jarClassCount += classesOfJars[i].length;
+    }
+
+    if(dependencyCount > Integer.MAX_VALUE || jarClassCount > Integer.MAX_VALUE) {
+      throw new IOException("Class model is too large for a snapshot");
+    }
+
+    File parent = file.getAbsoluteFile().getParentFile();
+    parent.mkdirs();
+    File temp = File.createTempFile(file.getName(), ".tmp", parent);
+
+    try {
+      try(OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp.toPath()), 1 << 16)) {
+        out.write(ByteBuffer.allocate(8).putInt(MAGIC).putInt(VERSION).array());
+
+        writeLong(out, table.strings.size());
+        for(String string : table.strings) {
+          byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+          writeLong(out, bytes.length);
+          out.write(bytes);
+        }
+
+        writeLong(out, userClasses.size());
+        writeLong(out, externalClasses.size());
+        writeLong(out, dependencyCount);
+
+        for(ClassNode classNode : classes) {
+          writeLong(out, table.indexOf(classNode.getName()));
+        }
+
+        for(int[] classDependency : classDependencies) {
+          writeGaps(out, classDependency);
+        }
+
+        writeLong(out, jars.size());
+        writeLong(out, jarClassCount);
+
+        for(int i = 0;i < jars.size();i++) {
+          JarNode jar = jars.get(i);
+
+          writeLong(out, table.indexOf(jar.getName()));
+          writeLong(out, jar.getHash() == null ? 0 : table.indexOf(jar.getHash()) + 1);
+          writeLong(out, jar.getSize());
+          writeLong(out, jar.getLastModified());
+          writeLong(out, containers.get(i) + 1);
+
+          writeLong(out, jar.getPaths().size());
+          for(String path : jar.getPaths()) {
+            writeLong(out, table.indexOf(path));
+          }
+
+          writeGaps(out, classesOfJars[i]);
+        }
+      }
+
+      Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+              StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp.toPath());
+    }
+  }
+
+  // Fills in the model the way scanning the class files and jars does
+  public void restore(Set<String> customClassNames, Collection<ClassNode> userClassNodes,
+                      Map<String, ClassNode> externalClassNodes, Multimap<String, String> references,
+                      Collection<JarNode> jarNodes) {
+    ClassNode[] classNodes = new ClassNode[classNames.length];
+
+    for(int i = 0;i < classNames.length;i++) {
+      ClassNode classNode = new ClassNode();
+      classNode.setName(getClassName(i));
+      classNode.setCustom(isUserClass(i));
+      classNodes[i] = classNode;
+
+      if(classNode.isCustom()) {
+        customClassNames.add(classNode.getName());
+        userClassNodes.add(classNode);
+      } else {
+        externalClassNodes.put(classNode.getName(), classNode);
+      }
+    }
+
+    for(int i = 0;i < classNames.length;i++) {
+      for(int edge = dependencyOffsets[i];edge < dependencyOffsets[i + 1];edge++) {
+        references.put(classNodes[i].getName(), classNodes[dependencies[edge]].getName());
+      }
+    }
+
+    JarNode[] jars = new JarNode[jarNames.length];
+
+    for(int i = 0;i < jars.length;i++) {
+      JarNode jarNode = new JarNode();
+      jarNode.setName(strings[jarNames[i]]);
+      jarNode.setHash(jarHashes[i] < 0 ? null : strings[jarHashes[i]]);
+      jarNode.setSize(jarSizes[i]);
+      jarNode.setLastModified(jarModified[i]);
+
+      for(int path : jarPaths[i]) {
+        jarNode.addPath(strings[path]);
+      }
+
+      for(int edge = jarClassOffsets[i];edge < jarClassOffsets[i + 1];edge++) {
+        jarNode.addClassFile(classNodes[jarClasses[edge]]);
+      }
+
+      jars[i] = jarNode;
+
+      if(jarContainers[i] < 0) {
+        jarNodes.add(jarNode);
+      } else {
+        jars[jarContainers[i]].addNestedJar(jarNode);
+      }
+    }
+  }
+
+  public int getClassCount() {
+    return classNames.length;
+  }
+
+  public int getUserClassCount() {
+    return userClassCount;
+  }
+
+  // User classes come first
+  public boolean isUserClass(int classIndex) {
+    return classIndex < userClassCount;
+  }
+
+  public String getClassName(int classIndex) {
+    return strings[classNames[classIndex]];
+  }
+
+  // Indexes of the external classes the class depends on, in order
+  public int[] getDependencies(int classIndex) {
+    return Arrays.copyOfRange(dependencies, dependencyOffsets[classIndex], dependencyOffsets[classIndex + 1]);
+  }
+
+  public long getDependencyCount() {
+    return dependencies.length;
+  }
+
+  // Containers come before the jars nested in them
+  public int getJarCount() {
+    return jarNames.length;
+  }
+
+  public String getJarName(int jarIndex) {
+    return strings[jarNames[jarIndex]];
+  }
+
+  // Index of the jar this one is nested in, -1 for jars found on disk
+  public int getJarContainer(int jarIndex) {
+    return jarContainers[jarIndex];
+  }
+
+  public int[] getJarClasses(int jarIndex) {
+    return Arrays.copyOfRange(jarClasses, jarClassOffsets[jarIndex], jarClassOffsets[jarIndex + 1]);
+  }
+
+  private static void addJar(JarNode jar, int container, List<JarNode> jars, List<Integer> containers) {
+    int index = jars.size();
+    jars.add(jar);
+    containers.add(container);
+
+    jar.getNestedJars().forEach(nested -> addJar(nested, index, jars, containers));
+  }
+
+  private static void writeGaps(OutputStream out, int[] sorted) throws IOException {
+    writeLong(out, sorted.length);
+
+    int previous = 0;
+    for(int value : sorted) {
+      writeLong(out, value - previous);
+      previous = value;
+    }
+  }
+
+  // Fills values from start, returns the index after the last one read
+  private static int readGaps(ByteBuffer buffer, int[] values, int start) {
+    int count = readInt(buffer);
+    int value = 0;
+
+    for(int i = start;i < start + count;i++) {
+      value += readInt(buffer);
+      values[i] = value;
+    }
+
+    return start + count;
+  }
+
+  // Seven bits at a time, low bits first, the high bit set on every byte but the last
+  private static void writeLong(OutputStream out, long value) throws IOException {
+    while((value & ~0x7FL) != 0) {
+      out.write((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+
+    out.write((int) value);
+  }
+
+  private static long readLong(ByteBuffer buffer) {
+    long value = 0;
+
+    for(int shift = 0;;shift += 7) {
+      byte b = buffer.get();
+      value |= (long) (b & 0x7F) << shift;
+
+      if(b >= 0) {
+        return value;
+      }
+    }
+  }
+
+  private static int readInt(ByteBuffer buffer) {
+    return (int) readLong(buffer);
+  }
+
+  // Each distinct string once, numbered in the order first added
+  private static class StringTable {
+
+    private final Map<String, Integer> indexes = new HashMap<>();
+
+    private final List<String> strings = new ArrayList<>();
+
+    private void add(String string) {
+      if(string != null && !indexes.containsKey(string)) {
+        indexes.put(string, strings.size());
+        strings.add(string);
+      }
+    }
+
+    private int indexOf(String string) {
+      return indexes.get(string);
+    }
+  }
+}
@@ -0,0 +1,72 @@
+package com.jtmelton.tpl.graph;
+
+import com.jtmelton.tpl.cli.Options;
+import com.jtmelton.tpl.results.ChainSink;
+import com.jtmelton.tpl.utils.QueryUtil;
+import com.jtmelton.tpl.utils.SearchScheduler;
+import org.neo4j.graphdb.GraphDatabaseService;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class Neo4jGraphBackend implements GraphBackend {
+
+  private final GraphDatabaseService graphDb;
+
+  private final SearchScheduler scheduler;
+
+  // Read once and shared by every search run through this backend
+  private List<Map<String, Object>> jarPaths;
+
+  private List<Map<String, Object>> userClasses;
+
+  public Neo4jGraphBackend(GraphDatabaseService graphDb, SearchScheduler scheduler) {
+    this.graphDb = graphDb;
+    this.scheduler = scheduler;
+  }
+
+  @Override
+  public void findDependencies(ChainSink results, Options options) throws InterruptedException {
+    QueryUtil.findDependencies(graphDb, getAllUserClasses(), results, scheduler, options);
+  }
+
+  @Override
+  public void findAffectedUserClasses(ChainSink results, Options options) throws InterruptedException {
+    QueryUtil.findAffectedUserClasses(graphDb, getAllJarPaths(), results, scheduler, options);
+  }
+
+  @Override
+  public synchronized List<Map<String, Object>> getAllJarPaths() {
+    if(jarPaths == null) {
+      jarPaths = Collections.unmodifiableList(QueryUtil.getAllJarPaths(graphDb));
+    }
+
+    return jarPaths;
+  }
+
+  private synchronized List<Map<String, Object>> getAllUserClasses() {
+    if(userClasses == null) {
+      userClasses = Collections.unmodifiableList(QueryUtil.getAllUserClasses(graphDb));
+    }
+
+    return userClasses;
+  }
+
+  @Override
+  public boolean isJarUsed(Map<String, Object> jar, Options options) {
+    return QueryUtil.isJarUsed(graphDb, (Long) jar.get("id"), options.getSearchTimeout());
+  }
+
+  @Override
+  public Map<Long, List<String>> findUsedJars() {
+    return QueryUtil.findUsedJars(graphDb);
+  }
+
+  @Override
+  public Map<Long, Set<String>> findOwningJarNames(Collection<Long> ids) {
+    return QueryUtil.findOwningJarNames(graphDb, ids);
+  }
+}
@@ -0,0 +1,37 @@
+package com.jtmelton.tpl.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+public class Counter {
+
+  private final LongAdder count = new LongAdder();
+
+  private final Span span = new Span();
+
+  Counter() { }
+
+  public void increment() {
+    add(1);
+  }
+
+  public void add(long amount) {
+    long now = System.nanoTime();
+    count.add(amount);
+    span.mark(now, now);
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  Map<String, Number> values() {
+    long total = getCount();
+
+    Map<String, Number> values = new LinkedHashMap<>();
+    values.put("count", total);
+    values.put("perSecond", span.rate(total));
+    return values;
+  }
+}
@@ -0,0 +1,119 @@
+package com.jtmelton.tpl.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Distribution of non negative values in log linear buckets, four to each power of two, so a
+ * quantile is off by at most a quarter of its value. Recording is an add to two striped counters
+ * and never blocks.
+ */
+public class Histogram {
+
+  static final double[] QUANTILES = { 0.5, 0.95, 0.99 };
+
+  private static final int SUB_BUCKETS = 4;
+
+  private static final int BUCKETS = SUB_BUCKETS * 62;
+
+  private final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+  private final LongAdder count = new LongAdder();
+
+  private final LongAdder sum = new LongAdder();
+
+  private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+  Histogram() {
+    for(int i = 0;i < BUCKETS;i++) {
+      buckets[i] = new LongAdder();
+    }
+  }
+
+  public void record(long value) {
+    value = Math.max(0, value);
+
+    buckets[bucket(value)].increment();
+    count.increment();
+    sum.add(value);
+    max.accumulate(value);
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  public long getSum() {
+    return sum.sum();
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  // Upper bound of the bucket holding the value at the given quantile, never above the maximum
+  public long quantile(double quantile) {
+    long total = getCount();
+    if(total == 0) {
+      return 0;
+    }
+
+    long rank = Math.max(1, (long) Math.ceil(quantile * total));
+    long seen = 0;
+
+    for(int i = 0;i < BUCKETS;i++) {
+      seen += buckets[i].sum();
+
+      if(seen >= rank) {
+        return Math.min(upperBound(i), getMax());
+      }
+    }
+
+    return getMax();
+  }
+
+  Map<String, Number> values() {
+    long total = getCount();
+
+    Map<String, Number> values = new LinkedHashMap<>();
+    values.put("count", total);
+    values.put("sum", getSum());
+    values.put("mean", total == 0 ? 0 : getSum() / (double) total);
+
+    for(double quantile : QUANTILES) {
+      values.put(quantileName(quantile), quantile(quantile));
+    }
+
+    values.put("max", getMax());
+    return values;
+  }
+
+  static String quantileName(double quantile) {
+    return "p" + Math.round(quantile * 100);
+  }
+
+  // Values below four get a bucket each, larger ones go by their top three bits
+  private static int bucket(long value) {
+    if(value < SUB_BUCKETS) {
+      return (int) value;
+    }
+
+    int highest = 63 - Long.numberOfLeadingZeros(value);
+    int sub = (int) (value >>> (highest - 2)) & (SUB_BUCKETS - 1);
+
+    return SUB_BUCKETS * (highest - 1) + sub;
+  }
+
+  private static long upperBound(int bucket) {
+    if(bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+
+    int highest = bucket / SUB_BUCKETS + 1;
+    int sub = bucket % SUB_BUCKETS;
+
+    return ((long) (SUB_BUCKETS + sub + 1) << (highest - 2)) - 1;
+  }
+}
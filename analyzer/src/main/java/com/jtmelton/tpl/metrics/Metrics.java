@@ -0,0 +1,197 @@
+package com.jtmelton.tpl.metrics;
+
+import com.google.gson.stream.JsonWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Counters, timers and histograms of every phase of a run, from walking the directories through
+ * parsing, writing the graph and searching to each reporter callback. Metrics are created on
+ * first use and live for the whole run, callers keep them in static fields so updating one is a
+ * few striped adds.
+ *
+ * While a run is going they can be read over JMX under com.jtmelton.tpl:type=Metrics, and once
+ * it is done written to a file as JSON or Prometheus text.
+ */
+public class Metrics {
+
+  private static final Logger LOG = LoggerFactory.getLogger(Metrics.class);
+
+  public static final String JSON = "json";
+
+  public static final String PROMETHEUS = "prometheus";
+
+  static final String OBJECT_NAME = "com.jtmelton.tpl:type=Metrics";
+
+  private static final String PROMETHEUS_PREFIX = "tpla_";
+
+  private static final long STARTED = System.nanoTime();
+
+  private static final ConcurrentMap<String, Counter> COUNTERS = new ConcurrentSkipListMap<>();
+
+  private static final ConcurrentMap<String, Timer> TIMERS = new ConcurrentSkipListMap<>();
+
+  private static final ConcurrentMap<String, Histogram> HISTOGRAMS = new ConcurrentSkipListMap<>();
+
+  private Metrics() { }
+
+  public static Counter counter(String name) {
+    return COUNTERS.computeIfAbsent(name, k -> new Counter());
+  }
+
+  public static Timer timer(String name) {
+    return TIMERS.computeIfAbsent(name, k -> new Timer());
+  }
+
+  public static Histogram histogram(String name) {
+    return HISTOGRAMS.computeIfAbsent(name, k -> new Histogram());
+  }
+
+  // Every metric flattened to name.value, like parse.class.p99Millis
+  public static Map<String, Number> snapshot() {
+    Map<String, Number> snapshot = new LinkedHashMap<>();
+    snapshot.put("uptimeSeconds", uptimeSeconds());
+
+    COUNTERS.forEach((name, counter) -> flatten(snapshot, name, counter.values()));
+    TIMERS.forEach((name, timer) -> flatten(snapshot, name, timer.values()));
+    HISTOGRAMS.forEach((name, histogram) -> flatten(snapshot, name, histogram.values()));
+
+    return snapshot;
+  }
+
+  public static void registerMBean() {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+    try {
+      ObjectName name = new ObjectName(OBJECT_NAME);
+
+      if(!server.isRegistered(name)) {
+        server.registerMBean(new MetricsMBean(), name);
+      }
+    } catch(JMException jme) {
+      LOG.warn("Failed to register metrics MBean", jme);
+    }
+  }
+
+  public static void write(File file, String format) throws IOException {
+    File parent = file.getAbsoluteFile().getParentFile();
+    if(parent != null) {
+      parent.mkdirs();
+    }
+
+    try(Writer writer = new FileWriter(file)) {
+      if(PROMETHEUS.equals(format)) {
+        writePrometheus(new PrintWriter(writer));
+      } else {
+        writeJson(writer);
+      }
+    }
+
+    LOG.info("Wrote metrics to {}", file);
+  }
+
+  private static void writeJson(Writer out) throws IOException {
+    JsonWriter writer = new JsonWriter(out);
+    writer.setIndent("  ");
+    writer.beginObject();
+    writer.name("uptimeSeconds").value(uptimeSeconds());
+
+    writer.name("counters").beginObject();
+    for(Map.Entry<String, Counter> counter : COUNTERS.entrySet()) {
+      writeValues(writer, counter.getKey(), counter.getValue().values());
+    }
+    writer.endObject();
+
+    writer.name("timers").beginObject();
+    for(Map.Entry<String, Timer> timer : TIMERS.entrySet()) {
+      writeValues(writer, timer.getKey(), timer.getValue().values());
+    }
+    writer.endObject();
+
+    writer.name("histograms").beginObject();
+    for(Map.Entry<String, Histogram> histogram : HISTOGRAMS.entrySet()) {
+      writeValues(writer, histogram.getKey(), histogram.getValue().values());
+    }
+    writer.endObject();
+
+    writer.endObject();
+    writer.flush();
+  }
+
+  private static void writeValues(JsonWriter writer, String name, Map<String, Number> values) throws IOException {
+    writer.name(name).beginObject();
+
+    for(Map.Entry<String, Number> value : values.entrySet()) {
+      writer.name(value.getKey()).value(value.getValue());
+    }
+
+    writer.endObject();
+  }
+
+  // Counters as totals, timers as summaries in seconds and histograms as summaries
+  private static void writePrometheus(PrintWriter writer) {
+    writer.println("# TYPE " + PROMETHEUS_PREFIX + "uptime_seconds gauge");
+    writer.println(PROMETHEUS_PREFIX + "uptime_seconds " + format(uptimeSeconds()));
+
+    for(Map.Entry<String, Counter> counter : COUNTERS.entrySet()) {
+      String name = prometheusName(counter.getKey()) + "_total";
+      writer.println("# TYPE " + name + " counter");
+      writer.println(name + " " + counter.getValue().getCount());
+    }
+
+    double nanosPerSecond = TimeUnit.SECONDS.toNanos(1);
+
+    for(Map.Entry<String, Timer> timer : TIMERS.entrySet()) {
+      writeSummary(writer, prometheusName(timer.getKey()) + "_seconds", timer.getValue().getNanos(), nanosPerSecond);
+    }
+
+    for(Map.Entry<String, Histogram> histogram : HISTOGRAMS.entrySet()) {
+      writeSummary(writer, prometheusName(histogram.getKey()), histogram.getValue(), 1);
+    }
+
+    writer.flush();
+  }
+
+  private static void writeSummary(PrintWriter writer, String name, Histogram histogram, double divisor) {
+    writer.println("# TYPE " + name + " summary");
+
+    for(double quantile : Histogram.QUANTILES) {
+      writer.println(name + "{quantile=\"" + quantile + "\"} " + format(histogram.quantile(quantile) / divisor));
+    }
+
+    writer.println(name + "_sum " + format(histogram.getSum() / divisor));
+    writer.println(name + "_count " + histogram.getCount());
+  }
+
+  private static String prometheusName(String name) {
+    return PROMETHEUS_PREFIX + name.replaceAll("[^a-zA-Z0-9_]", "_");
+  }
+
+  private static String format(double value) {
+    return String.format(Locale.ROOT, "%.6f", value);
+  }
+
+  private static void flatten(Map<String, Number> snapshot, String name, Map<String, Number> values) {
+    values.forEach((key, value) -> snapshot.put(name + "." + key, value));
+  }
+
+  private static double uptimeSeconds() {
+    return (System.nanoTime() - STARTED) / (double) TimeUnit.SECONDS.toNanos(1);
+  }
+}
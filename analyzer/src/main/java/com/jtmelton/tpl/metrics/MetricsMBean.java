@@ -0,0 +1,73 @@
+package com.jtmelton.tpl.metrics;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ReflectionException;
+import java.util.Map;
+
+/*
+ * Read only view of the metrics for JConsole and the like. Metrics are created as the run goes,
+ * so the attributes are worked out again each time they are listed.
+ */
+class MetricsMBean implements DynamicMBean {
+
+  @Override
+  public Object getAttribute(String attribute) throws AttributeNotFoundException {
+    Number value = Metrics.snapshot().get(attribute);
+
+    if(value == null) {
+      throw new AttributeNotFoundException(attribute);
+    }
+
+    return value;
+  }
+
+  @Override
+  public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+    throw new AttributeNotFoundException("Metrics are read only");
+  }
+
+  @Override
+  public AttributeList getAttributes(String[] attributes) {
+    Map<String, Number> snapshot = Metrics.snapshot();
+    AttributeList list = new AttributeList();
+
+    for(String attribute : attributes) {
+      if(snapshot.containsKey(attribute)) {
+        list.add(new Attribute(attribute, snapshot.get(attribute)));
+      }
+    }
+
+    return list;
+  }
+
+  @Override
+  public AttributeList setAttributes(AttributeList attributes) {
+    return new AttributeList();
+  }
+
+  @Override
+  public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+    throw new ReflectionException(new NoSuchMethodException(actionName));
+  }
+
+  @Override
+  public MBeanInfo getMBeanInfo() {
+    Map<String, Number> snapshot = Metrics.snapshot();
+    MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[snapshot.size()];
+
+    int i = 0;
+    for(Map.Entry<String, Number> value : snapshot.entrySet()) {
+      attributes[i++] = new MBeanAttributeInfo(value.getKey(), value.getValue().getClass().getName(),
+              value.getKey(), true, false, false);
+    }
+
+    return new MBeanInfo(Metrics.class.getName(), "Analyzer run metrics", attributes, null,
+            new MBeanOperationInfo[0], null);
+  }
+}
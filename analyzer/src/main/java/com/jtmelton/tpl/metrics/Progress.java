@@ -0,0 +1,135 @@
+package com.jtmelton.tpl.metrics;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Progress of a phase with many items, like the jars written or searched. Workers only add to a
+ * striped counter, and a single background thread logs every phase still running once per
+ * interval with its throughput and, when the total is known, how long is left:
+ *
+ *   Writing jars: 1200 of 5000 (24%), 310.2/s, ETA 00:00:12
+ *
+ * Closing a phase logs one last line with its count and time.
+ */
+public class Progress implements AutoCloseable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(Progress.class);
+
+  private static final long DEFAULT_INTERVAL_SECONDS = 10;
+
+  private static final Set<Progress> ACTIVE = ConcurrentHashMap.newKeySet();
+
+  private static long intervalSeconds = DEFAULT_INTERVAL_SECONDS;
+
+  // Only running while a phase is
+  private static ScheduledExecutorService reporter;
+
+  private final String phase;
+
+  private final long total;
+
+  private final long started = System.nanoTime();
+
+  private final LongAdder done = new LongAdder();
+
+  private Progress(String phase, long total) {
+    this.phase = phase;
+    this.total = total;
+  }
+
+  // A phase of a known number of items
+  public static Progress start(String phase, long total) {
+    Progress progress = new Progress(phase, total);
+    register(progress);
+    return progress;
+  }
+
+  // A phase without a known total, logged without an ETA
+  public static Progress start(String phase) {
+    return start(phase, -1);
+  }
+
+  // Seconds between summaries, 0 logs only the last line of each phase. Applies to phases started after
+  public static synchronized void setInterval(long seconds) {
+    intervalSeconds = seconds;
+  }
+
+  public void increment() {
+    done.increment();
+  }
+
+  public void add(long items) {
+    done.add(items);
+  }
+
+  public long getCount() {
+    return done.sum();
+  }
+
+  @Override
+  public void close() {
+    unregister(this);
+
+    long count = getCount();
+    long nanos = System.nanoTime() - started;
+
+    LOG.info("{}: {}{} in {}, {}/s", phase, count, total < 0 ? "" : " of " + total, duration(nanos),
+            rate(count, nanos));
+  }
+
+  private void log() {
+    long count = getCount();
+    long nanos = System.nanoTime() - started;
+
+    if(total < 0) {
+      LOG.info("{}: {}, {}/s", phase, count, rate(count, nanos));
+      return;
+    }
+
+    String eta = count == 0 ? "unknown" : duration((long) ((double) nanos / count * Math.max(0, total - count)));
+
+    LOG.info("{}: {} of {} ({}%), {}/s, ETA {}", phase, count, total, total == 0 ? 100 : count * 100 / total,
+            rate(count, nanos), eta);
+  }
+
+  private static synchronized void register(Progress progress) {
+    ACTIVE.add(progress);
+
+    if(reporter == null && intervalSeconds > 0) {
+      reporter = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+              .setNameFormat("progress")
+              .setDaemon(true)
+              .build());
+      reporter.scheduleAtFixedRate(() -> ACTIVE.forEach(Progress::log), intervalSeconds, intervalSeconds,
+              TimeUnit.SECONDS);
+    }
+  }
+
+  private static synchronized void unregister(Progress progress) {
+    ACTIVE.remove(progress);
+
+    if(ACTIVE.isEmpty() && reporter != null) {
+      reporter.shutdownNow();
+      reporter = null;
+    }
+  }
+
+  private static String rate(long count, long nanos) {
+    return String.format(Locale.ROOT, "%.1f", nanos <= 0 ? 0 : count / (nanos / (double) TimeUnit.SECONDS.toNanos(1)));
+  }
+
+  private static String duration(long nanos) {
+    long seconds = TimeUnit.NANOSECONDS.toSeconds(nanos);
+    return String.format("%02d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+  }
+}
@@ -0,0 +1,32 @@
+package com.jtmelton.tpl.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/*
+ * Time from the first to the last update of a metric. Rates are worked out over this rather
+ * than the whole run, so a phase that ran for a minute of an hour long run still shows its own
+ * throughput.
+ */
+class Span {
+
+  private final LongAccumulator first = new LongAccumulator(Math::min, Long.MAX_VALUE);
+
+  private final LongAccumulator last = new LongAccumulator(Math::max, Long.MIN_VALUE);
+
+  void mark(long start, long end) {
+    first.accumulate(start);
+    last.accumulate(end);
+  }
+
+  // Per second over the span, zero until two updates at different times
+  double rate(long count) {
+    long nanos = last.get() - first.get();
+
+    if(count == 0 || nanos <= 0) {
+      return 0;
+    }
+
+    return count / (nanos / (double) TimeUnit.SECONDS.toNanos(1));
+  }
+}
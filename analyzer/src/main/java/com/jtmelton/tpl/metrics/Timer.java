@@ -0,0 +1,63 @@
+package com.jtmelton.tpl.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Durations of an operation, timed as
+ *
+ *   long start = timer.start();
+ *   ...
+ *   timer.stop(start);
+ *
+ * so nothing is allocated per operation. Its rate is operations per second between the start
+ * of the first and the end of the last.
+ */
+public class Timer {
+
+  private final Histogram nanos = new Histogram();
+
+  private final Span span = new Span();
+
+  Timer() { }
+
+  public long start() {
+    return System.nanoTime();
+  }
+
+  public void stop(long start) {
+    long end = System.nanoTime();
+    nanos.record(end - start);
+    span.mark(start, end);
+  }
+
+  public long getCount() {
+    return nanos.getCount();
+  }
+
+  Histogram getNanos() {
+    return nanos;
+  }
+
+  Map<String, Number> values() {
+    long total = getCount();
+
+    Map<String, Number> values = new LinkedHashMap<>();
+    values.put("count", total);
+    values.put("perSecond", span.rate(total));
+    values.put("totalMillis", millis(nanos.getSum()));
+    values.put("meanMillis", total == 0 ? 0 : millis(nanos.getSum()) / total);
+
+    for(double quantile : Histogram.QUANTILES) {
+      values.put(Histogram.quantileName(quantile) + "Millis", millis(nanos.quantile(quantile)));
+    }
+
+    values.put("maxMillis", millis(nanos.getMax()));
+    return values;
+  }
+
+  private static double millis(long nanos) {
+    return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+  }
+}
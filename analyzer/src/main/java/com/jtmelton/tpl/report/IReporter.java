@@ -6,6 +6,9 @@ import java.util.Collection;
 public interface IReporter {
   void preProcess(String searchTerm, Collection<String> jars) throws IOException;
   void endProcess() throws IOException;
+  // Streamed results only know their jars after the last chain, so they come at the end
+  void streamStart(String searchTerm) throws IOException;
+  void streamEnd(Collection<String> jars) throws IOException;
   void chainEntryStart() throws IOException;
   void chainEntryEnd() throws IOException;
   void addChainEntryUserClass(String className) throws IOException;
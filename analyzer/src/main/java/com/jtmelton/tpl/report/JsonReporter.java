@@ -43,6 +43,30 @@ public class JsonReporter implements IReporter {
       writer.beginArray();
   }
 
+  @Override
+  public void streamStart(String searchTerm) throws IOException {
+    writer.beginObject();
+
+    writer.name("chains");
+
+    writer.beginArray();
+  }
+
+  @Override
+  public void streamEnd(Collection<String> jars) throws IOException {
+    writer.endArray();
+
+    writer.name("jars");
+
+    writer.beginArray();
+    for(String jar : jars) {
+      writer.value(jar);
+    }
+    writer.endArray();
+
+    writer.endObject();
+  }
+
   @Override
   public void chainEntryStart() throws IOException {
     writer.beginObject();
@@ -15,17 +15,28 @@ public class StdOutReporter implements IReporter {
 
   private int chainCounter;
 
+  // Where the matched jars go for streamed results
+  private int jarsOffset;
+
   @Override
   public void preProcess(String searchTerm, Collection<String> jars) {
+    streamStart(searchTerm);
+    streamEnd(jars);
+  }
+
+  @Override
+  public void endProcess() {
+
+  }
+
+  @Override
+  public void streamStart(String searchTerm) {
     builder.append("Search Results");
     builder.append(NEW_LINE);
     builder.append("Jars Matched");
     builder.append(NEW_LINE);
 
-    jars.forEach(j -> {
-      builder.append(j);
-      builder.append(NEW_LINE);
-    });
+    jarsOffset = builder.length();
 
     builder.append(NEW_LINE);
     builder.append("Class Chains");
@@ -33,8 +44,15 @@ public class StdOutReporter implements IReporter {
   }
 
   @Override
-  public void endProcess() {
+  public void streamEnd(Collection<String> jars) {
+    StringBuilder jarLines = new StringBuilder();
+
+    jars.forEach(j -> {
+      jarLines.append(j);
+      jarLines.append(NEW_LINE);
+    });
 
+    builder.insert(jarsOffset, jarLines);
   }
 
   @Override
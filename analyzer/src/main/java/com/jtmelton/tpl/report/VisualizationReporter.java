@@ -26,6 +26,11 @@ public class VisualizationReporter implements IReporter {
 
   private Map<String, Object> previous = null;
 
+  // The jar list is written before the user classes, so those wait here until the jars are known
+  private StringBuilder userClassItems = new StringBuilder();
+
+  private Collection<String> jars = Collections.emptyList();
+
   private final File dir;
 
   private final File graphSrcDir;
@@ -70,6 +75,12 @@ public class VisualizationReporter implements IReporter {
 
   @Override
   public void preProcess(String searchTerm, Collection<String> jars) throws IOException{
+    streamStart(searchTerm);
+    this.jars = jars;
+  }
+
+  @Override
+  public void streamStart(String searchTerm) throws IOException {
     Path outputPath = Paths.get(dir.getAbsolutePath(), searchTerm);
     File outputFile = outputPath.toFile();
     outputFile.mkdir();
@@ -95,18 +106,6 @@ public class VisualizationReporter implements IReporter {
     htmlWriter.write(Paths.get(searchTerm, htmlFileName).toString());
     htmlWriter.write("\">" + searchTerm + "</a></summary>");
     htmlWriter.write("<div class=\"col-container\">");
-    htmlWriter.write("<div class=\"col\" style=\"background-color:#fce897;\">");
-    htmlWriter.write("<ul>");
-    for(String jar : jars) {
-      htmlWriter.write("<li>");
-      htmlWriter.write(jar);
-      htmlWriter.write("</li>");
-    }
-    htmlWriter.write("</ul>");
-    htmlWriter.write("</div>");
-
-    htmlWriter.write("<div class=\"col\" style=\"background-color:#bdd8fc;\">");
-    htmlWriter.write("<ul>");
   }
 
   @Override
@@ -131,9 +130,9 @@ public class VisualizationReporter implements IReporter {
       nodes.put(className, node);
       idCounter++;
 
-      htmlWriter.write("<li>");
-      htmlWriter.write(className);
-      htmlWriter.write("</li>");
+      userClassItems.append("<li>");
+      userClassItems.append(className);
+      userClassItems.append("</li>");
     }
   }
 
@@ -185,6 +184,11 @@ public class VisualizationReporter implements IReporter {
 
   @Override
   public void endProcess() throws IOException {
+    streamEnd(jars);
+  }
+
+  @Override
+  public void streamEnd(Collection<String> jars) throws IOException {
     jsonWriter.endArray();
     jsonWriter.name("nodes");
     jsonWriter.beginArray();
@@ -202,6 +206,19 @@ public class VisualizationReporter implements IReporter {
     jsonWriter.endObject();
     jsonWriter.close();
 
+    htmlWriter.write("<div class=\"col\" style=\"background-color:#fce897;\">");
+    htmlWriter.write("<ul>");
+    for(String jar : jars) {
+      htmlWriter.write("<li>");
+      htmlWriter.write(jar);
+      htmlWriter.write("</li>");
+    }
+    htmlWriter.write("</ul>");
+    htmlWriter.write("</div>");
+
+    htmlWriter.write("<div class=\"col\" style=\"background-color:#bdd8fc;\">");
+    htmlWriter.write("<ul>");
+    htmlWriter.write(userClassItems.toString());
     htmlWriter.write("</ul>");
     htmlWriter.write("</div>");
     htmlWriter.write("</div>");
@@ -224,6 +241,8 @@ public class VisualizationReporter implements IReporter {
     idCounter = 1;
     writtenEdges = new HashSet<>();
     previous = null;
+    userClassItems = new StringBuilder();
+    jars = Collections.emptyList();
   }
 
   private void copyGraphResources() throws IOException {
@@ -0,0 +1,51 @@
+package com.jtmelton.tpl.results;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/*
+ * Takes the chains found by one search. Streaming results get each chain as soon as it is found,
+ * filtered as it goes. Otherwise chains are kept until finish() adds the whole search at once,
+ * the same way a collected Cypher result is added.
+ */
+public class ChainCollector implements Consumer<ClassChain> {
+
+  private final ChainSink results;
+
+  private final Consumer<ClassChain> stream;
+
+  private final Consumer<List<ClassChain>> batch;
+
+  private final List<ClassChain> chains = new ArrayList<>();
+
+  private int count;
+
+  public ChainCollector(ChainSink results, Consumer<ClassChain> stream,
+                        Consumer<List<ClassChain>> batch) {
+    this.results = results;
+    this.stream = stream;
+    this.batch = batch;
+  }
+
+  @Override
+  public void accept(ClassChain chain) {
+    count++;
+
+    if(results.isStreaming()) {
+      stream.accept(chain);
+    } else {
+      chains.add(chain);
+    }
+  }
+
+  public void finish() {
+    if(!results.isStreaming() && !chains.isEmpty()) {
+      batch.accept(chains);
+    }
+  }
+
+  public int getCount() {
+    return count;
+  }
+}
@@ -0,0 +1,33 @@
+package com.jtmelton.tpl.results;
+
+import java.util.Collection;
+
+/*
+ * What a search adds the chains and jars it finds to. QueryResult keeps the chains so the whole
+ * search is reported once it is done, StreamingQueryResult hands them to the reporting thread
+ * as they are added.
+ */
+public interface ChainSink {
+
+  String getSearchTerm();
+
+  // Streaming sinks pass chains on as they are added instead of keeping them
+  boolean isStreaming();
+
+  // Set when a search gave up or lowered its depth, so the result isn't what was asked for
+  void markIncomplete();
+
+  boolean isComplete();
+
+  void addJarName(String jarName);
+
+  Collection<String> getJarNames();
+
+  // Chains read from query rows intern their names here so they share one copy per search
+  NameDictionary getNameDictionary();
+
+  void addClassChain(ClassChain classChain);
+
+  // Chains added so far
+  int getChainCount();
+}
@@ -0,0 +1,76 @@
+package com.jtmelton.tpl.results;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/*
+ * One chain of nodes found by a search, stored as parallel arrays of node ids and names. Names
+ * are shared with every other chain of the search, either through the in memory graph's string
+ * table or a NameDictionary, so a chain costs two small arrays instead of a map per node.
+ */
+public class ClassChain {
+
+  // Shorter chains first, then node by node from the start in name then id order. Searches find
+  // chains in this order, so filtering keeps the same chain whichever engine ran the search
+  public static final Comparator<ClassChain> SHORTEST_FIRST = (a, b) -> {
+    if(a.size() != b.size()) {
+      return Integer.compare(a.size(), b.size());
+    }
+
+    for(int i = 0;i < a.size();i++) {
+      // Names are shared between chains, so equal ones are mostly the same instance
+      if(a.names[i] != b.names[i]) {
+        int names = a.names[i].compareTo(b.names[i]);
+        if(names != 0) {
+          return names;
+        }
+      }
+
+      if(a.ids[i] != b.ids[i]) {
+        return Long.compare(a.ids[i], b.ids[i]);
+      }
+    }
+
+    return 0;
+  };
+
+  private final long[] ids;
+
+  private final String[] names;
+
+  public ClassChain(long[] ids, String[] names) {
+    this.ids = ids;
+    this.names = names;
+  }
+
+  public int size() {
+    return ids.length;
+  }
+
+  public long getId(int index) {
+    return ids[index];
+  }
+
+  public String getName(int index) {
+    return names[index];
+  }
+
+  public List<String> getNames() {
+    return Collections.unmodifiableList(Arrays.asList(names));
+  }
+
+  // Flips the chain in place so the last node comes first
+  public void reverse() {
+    for(int i = 0, j = ids.length - 1;i < j;i++, j--) {
+      long id = ids[i];
+      ids[i] = ids[j];
+      ids[j] = id;
+
+      String name = names[i];
+      names[i] = names[j];
+      names[j] = name;
+    }
+  }
+}
@@ -0,0 +1,23 @@
+package com.jtmelton.tpl.results;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/*
+ * Keeps one String instance per distinct class or jar name, so chains read from query rows share
+ * their names instead of each row carrying its own copies.
+ */
+public class NameDictionary {
+
+  private final ConcurrentMap<String, String> names = new ConcurrentHashMap<>();
+
+  public String intern(String name) {
+    String existing = names.putIfAbsent(name, name);
+
+    return existing == null ? name : existing;
+  }
+
+  public int size() {
+    return names.size();
+  }
+}
@@ -0,0 +1,82 @@
+package com.jtmelton.tpl.results;
+
+import com.jtmelton.tpl.graph.GraphBackend;
+import com.jtmelton.tpl.metrics.Counter;
+import com.jtmelton.tpl.metrics.Metrics;
+import com.jtmelton.tpl.metrics.Timer;
+
+import java.util.*;
+
+/*
+ * Resolves the jars owning every class in a result with one bulk lookup instead of one query
+ * per chain link. Resolved ids stay in a bounded LRU cache, since consecutive search terms
+ * tend to walk through the same classes.
+ */
+public class OwningJarResolver {
+
+  private static final int DEFAULT_CACHE_SIZE = 100000;
+
+  private static final Timer RESOLVE_TIMER = Metrics.timer("results.owningJars");
+
+  private static final Counter CACHED_IDS = Metrics.counter("results.owningJars.cached");
+
+  private static final Counter LOADED_IDS = Metrics.counter("results.owningJars.loaded");
+
+  private final GraphBackend backend;
+
+  private final Map<Long, Set<String>> cache;
+
+  public OwningJarResolver(GraphBackend backend) {
+    this(backend, DEFAULT_CACHE_SIZE);
+  }
+
+  public OwningJarResolver(GraphBackend backend, int cacheSize) {
+    this.backend = backend;
+    this.cache = new LinkedHashMap<Long, Set<String>>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Long, Set<String>> eldest) {
+        return size() > cacheSize;
+      }
+    };
+  }
+
+  // Owning jars of every link between the matched element and the user class of each chain
+  public Map<Long, Set<String>> resolve(Collection<ClassChain> chains) {
+    long start = RESOLVE_TIMER.start();
+    Map<Long, Set<String>> owningJars = new HashMap<>();
+    Set<Long> missing = new HashSet<>();
+
+    for(ClassChain chain : chains) {
+      for(int i = 1;i < chain.size() - 1;i++) {
+        long id = chain.getId(i);
+
+        if(owningJars.containsKey(id) || missing.contains(id)) {
+          continue;
+        }
+
+        Set<String> jars = cache.get(id);
+        if(jars != null) {
+          owningJars.put(id, jars);
+        } else {
+          missing.add(id);
+        }
+      }
+    }
+
+    if(!missing.isEmpty()) {
+      Map<Long, Set<String>> loaded = backend.findOwningJarNames(missing);
+
+      for(long id : missing) {
+        Set<String> jars = Collections.unmodifiableSet(loaded.getOrDefault(id, new HashSet<>()));
+        owningJars.put(id, jars);
+        cache.put(id, jars);
+      }
+    }
+
+    CACHED_IDS.add(owningJars.size() - missing.size());
+    LOADED_IDS.add(missing.size());
+    RESOLVE_TIMER.stop(start);
+
+    return owningJars;
+  }
+}
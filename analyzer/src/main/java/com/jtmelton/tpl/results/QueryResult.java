@@ -0,0 +1,72 @@
+package com.jtmelton.tpl.results;
+
+import java.util.*;
+
+/*
+ * Keeps every chain of a search so it can be reported once the search is done.
+ */
+public class QueryResult implements ChainSink {
+
+  private final String searchTerm;
+
+  private Set<String> jarNames = new HashSet<>();
+
+  private Collection<ClassChain> classChains = new ArrayList<>();
+
+  private final NameDictionary nameDictionary = new NameDictionary();
+
+  private volatile boolean complete = true;
+
+  public QueryResult(String searchTerm) {
+    this.searchTerm = searchTerm;
+  }
+
+  @Override
+  public String getSearchTerm() {
+    return searchTerm;
+  }
+
+  @Override
+  public boolean isStreaming() {
+    return false;
+  }
+
+  @Override
+  public void markIncomplete() {
+    complete = false;
+  }
+
+  @Override
+  public boolean isComplete() {
+    return complete;
+  }
+
+  @Override
+  public void addJarName(String jarName) {
+    jarNames.add(jarName);
+  }
+
+  @Override
+  public Collection<String> getJarNames() {
+    return Collections.unmodifiableCollection(jarNames);
+  }
+
+  @Override
+  public NameDictionary getNameDictionary() {
+    return nameDictionary;
+  }
+
+  @Override
+  public void addClassChain(ClassChain classChain) {
+    classChains.add(classChain);
+  }
+
+  @Override
+  public int getChainCount() {
+    return classChains.size();
+  }
+
+  public Collection<ClassChain> getClassChains() {
+    return Collections.unmodifiableCollection(classChains);
+  }
+}
@@ -0,0 +1,408 @@
+package com.jtmelton.tpl.results;
+
+import com.jtmelton.tpl.metrics.Metrics;
+import com.jtmelton.tpl.metrics.Timer;
+import com.jtmelton.tpl.report.IReporter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+public class ResultsProcessor {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ResultsProcessor.class);
+
+  // Chains taken off a stream per owning jar lookup
+  private static final int STREAM_BATCH_SIZE = 1000;
+
+  private final Supplier<OwningJarResolver> owningJarResolver;
+
+  private final Collection<TimedReporter> reporters = new ArrayList<>();
+
+  // The resolver is only asked for once a result needs its owning jars, so replaying
+  // cached results never loads the graph
+  public ResultsProcessor(Supplier<OwningJarResolver> owningJarResolver) {
+    this.owningJarResolver = owningJarResolver;
+  }
+
+  public void registerReporter(IReporter reporter) {
+    reporters.add(new TimedReporter(reporter));
+  }
+
+  public void removeReporter(IReporter reporter) {
+    reporters.removeIf(timed -> timed.delegate == reporter);
+  }
+
+  public void generateReports(String outputDir) {
+    reporters.forEach(reporter -> {
+      try {
+        reporter.report(outputDir);
+      } catch (IOException e) {
+        LOG.warn("Reporter {} failed", reporter, e);
+      }
+    });
+  }
+
+  public void process(QueryResult results) {
+    execPreProcess(results.getSearchTerm(), results.getJarNames());
+
+    Map<Long, Set<String>> owningJars = owningJarResolver.get().resolve(results.getClassChains());
+
+    for(ClassChain result : results.getClassChains()) {
+      processChain(result, owningJars);
+    }
+
+    execEndProcess();
+  }
+
+  // Runs the search on its own thread and reports chains while it is still producing them.
+  // Jars are only known once the search is done, so reporters get them after the chains
+  public void processStream(StreamingQueryResult results, Search search) throws InterruptedException {
+    ExecutorService producer = Executors.newSingleThreadExecutor();
+    Future<?> searchDone = producer.submit(() -> {
+      try {
+        search.run(results);
+      } finally {
+        results.finish();
+      }
+      return null;
+    });
+    producer.shutdown();
+
+    execStreamStart(results.getSearchTerm());
+
+    List<ClassChain> batch = new ArrayList<>(STREAM_BATCH_SIZE);
+    int chainCount = 0;
+
+    try {
+      while(results.drainTo(batch, STREAM_BATCH_SIZE)) {
+        Map<Long, Set<String>> owningJars = owningJarResolver.get().resolve(batch);
+        batch.forEach(chain -> processChain(chain, owningJars));
+
+        chainCount += batch.size();
+        batch.clear();
+      }
+
+      searchDone.get();
+    } catch(ExecutionException ee) {
+      LOG.error("Search for {} failed", results.getSearchTerm(), ee.getCause());
+      results.markIncomplete();
+    } finally {
+      results.close();
+    }
+
+    LOG.info("Streamed {} import chains", chainCount);
+
+    execStreamEnd(results.getJarNames());
+  }
+
+  // Reports a cached result the same way as a searched one. Returns false if the cache has no entry
+  public boolean replay(SearchCache cache, String key, String searchTerm, boolean streaming) {
+    try {
+      return cache.replay(key, searchTerm, new Broadcast(), streaming);
+    } catch(IOException ioe) {
+      throw new UncheckedIOException("Failed to read cached results for " + searchTerm, ioe);
+    }
+  }
+
+  private void processChain(ClassChain result, Map<Long, Set<String>> owningJars) {
+    execChainEntryStart();
+
+    //Don't care about the first element which contains the matched jar
+    for(int i = result.size() - 1;i > 0;i--) {
+      String className = result.getName(i);
+      long id = result.getId(i);
+
+      final Collection<String> jarNames;
+
+      //last element is the user class found
+      if(i == result.size() - 1) {
+        execAddChainEntryUserClass(className);
+        jarNames = Collections.singleton("user");
+      } else {
+        jarNames = owningJars.get(id);
+      }
+
+      execAddChainLink(className, jarNames);
+    }
+
+    execChainEntryEnd();
+  }
+
+  private void execPreProcess(String searchTerm, Collection<String> jarNames) {
+    reporters.forEach(reporter -> {
+      try {
+        reporter.preProcess(searchTerm, jarNames);
+      } catch (IOException e) {
+        LOG.warn("Reporter {} failed", reporter, e);
+      }
+    });
+  }
+
+  private void execStreamStart(String searchTerm) {
+    reporters.forEach(reporter -> {
+      try {
+        reporter.streamStart(searchTerm);
+      } catch (IOException e) {
+        LOG.warn("Reporter {} failed", reporter, e);
+      }
+    });
+  }
+
+  private void execStreamEnd(Collection<String> jarNames) {
+    reporters.forEach(reporter -> {
+      try {
+        reporter.streamEnd(jarNames);
+      } catch (IOException e) {
+        LOG.warn("Reporter {} failed", reporter, e);
+      }
+    });
+  }
+
+  private void execChainEntryStart() {
+    for (IReporter reporter : reporters) {
+      try {
+        reporter.chainEntryStart();
+      } catch(IOException e) {
+        LOG.warn("Reporter {} failed", reporter, e);
+      }
+    }
+  }
+
+  private void execAddChainEntryUserClass(String className) {
+    reporters.forEach(reporter -> {
+      try {
+        reporter.addChainEntryUserClass(className);
+      } catch (IOException e) {
+        LOG.warn("Reporter {} failed", reporter, e);
+      }
+    });
+  }
+
+  private void execAddChainLink(String className, Collection<String> jarNames) {
+    reporters.forEach(reporter ->
+      {
+        try {
+          reporter.addChainLink(className, jarNames);
+        } catch (IOException e) {
+          LOG.warn("Reporter {} failed", reporter, e);
+        }
+      }
+    );
+  }
+
+  private void execChainEntryEnd() {
+    for (IReporter reporter : reporters) {
+      try {
+        reporter.chainEntryEnd();
+      } catch (IOException e) {
+        LOG.warn("Reporter {} failed", reporter, e);
+      }
+    }
+  }
+
+  private void execEndProcess() {
+    for (IReporter reporter : reporters) {
+      try {
+        reporter.endProcess();
+      } catch (IOException e) {
+        LOG.warn("Reporter {} failed", reporter, e);
+      }
+    }
+  }
+
+  // Hands replayed events to every registered reporter
+  private class Broadcast implements IReporter {
+
+    @Override
+    public void preProcess(String searchTerm, Collection<String> jars) {
+      execPreProcess(searchTerm, jars);
+    }
+
+    @Override
+    public void endProcess() {
+      execEndProcess();
+    }
+
+    @Override
+    public void streamStart(String searchTerm) {
+      execStreamStart(searchTerm);
+    }
+
+    @Override
+    public void streamEnd(Collection<String> jars) {
+      execStreamEnd(jars);
+    }
+
+    @Override
+    public void chainEntryStart() {
+      execChainEntryStart();
+    }
+
+    @Override
+    public void chainEntryEnd() {
+      execChainEntryEnd();
+    }
+
+    @Override
+    public void addChainEntryUserClass(String className) {
+      execAddChainEntryUserClass(className);
+    }
+
+    @Override
+    public void addChainLink(String className, Collection<String> jars) {
+      execAddChainLink(className, jars);
+    }
+
+    @Override
+    public void report(String outputFile) {
+      // reports are generated by generateReports
+    }
+  }
+
+  // Times every callback of a reporter, under report.<reporter class>.<callback>
+  private static class TimedReporter implements IReporter {
+
+    private final IReporter delegate;
+
+    private final Timer preProcess;
+
+    private final Timer endProcess;
+
+    private final Timer streamStart;
+
+    private final Timer streamEnd;
+
+    private final Timer chainEntryStart;
+
+    private final Timer chainEntryEnd;
+
+    private final Timer addChainEntryUserClass;
+
+    private final Timer addChainLink;
+
+    private final Timer report;
+
+    private TimedReporter(IReporter delegate) {
+      this.delegate = delegate;
+
+      String prefix = "report." + delegate.getClass().getSimpleName() + ".";
+      this.preProcess = Metrics.timer(prefix + "preProcess");
+      this.endProcess = Metrics.timer(prefix + "endProcess");
+      this.streamStart = Metrics.timer(prefix + "streamStart");
+      this.streamEnd = Metrics.timer(prefix + "streamEnd");
+      this.chainEntryStart = Metrics.timer(prefix + "chainEntryStart");
+      this.chainEntryEnd = Metrics.timer(prefix + "chainEntryEnd");
+      this.addChainEntryUserClass = Metrics.timer(prefix + "addChainEntryUserClass");
+      this.addChainLink = Metrics.timer(prefix + "addChainLink");
+      this.report = Metrics.timer(prefix + "report");
+    }
+
+    @Override
+    public void preProcess(String searchTerm, Collection<String> jars) throws IOException {
+      long start = preProcess.start();
+      try {
+        delegate.preProcess(searchTerm, jars);
+      } finally {
+        preProcess.stop(start);
+      }
+    }
+
+    @Override
+    public void endProcess() throws IOException {
+      long start = endProcess.start();
+      try {
+        delegate.endProcess();
+      } finally {
+        endProcess.stop(start);
+      }
+    }
+
+    @Override
+    public void streamStart(String searchTerm) throws IOException {
+      long start = streamStart.start();
+      try {
+        delegate.streamStart(searchTerm);
+      } finally {
+        streamStart.stop(start);
+      }
+    }
+
+    @Override
+    public void streamEnd(Collection<String> jars) throws IOException {
+      long start = streamEnd.start();
+      try {
+        delegate.streamEnd(jars);
+      } finally {
+        streamEnd.stop(start);
+      }
+    }
+
+    @Override
+    public void chainEntryStart() throws IOException {
+      long start = chainEntryStart.start();
+      try {
+        delegate.chainEntryStart();
+      } finally {
+        chainEntryStart.stop(start);
+      }
+    }
+
+    @Override
+    public void chainEntryEnd() throws IOException {
+      long start = chainEntryEnd.start();
+      try {
+        delegate.chainEntryEnd();
+      } finally {
+        chainEntryEnd.stop(start);
+      }
+    }
+
+    @Override
+    public void addChainEntryUserClass(String className) throws IOException {
+      long start = addChainEntryUserClass.start();
+      try {
+        delegate.addChainEntryUserClass(className);
+      } finally {
+        addChainEntryUserClass.stop(start);
+      }
+    }
+
+    @Override
+    public void addChainLink(String className, Collection<String> jars) throws IOException {
+      long start = addChainLink.start();
+      try {
+        delegate.addChainLink(className, jars);
+      } finally {
+        addChainLink.stop(start);
+      }
+    }
+
+    @Override
+    public void report(String outputFile) throws IOException {
+      long start = report.start();
+      try {
+        delegate.report(outputFile);
+      } finally {
+        report.stop(start);
+      }
+    }
+
+    @Override
+    public String toString() {
+      return delegate.getClass().toString();
+    }
+  }
+
+  // A search that adds its chains to the sink it is given
+  public interface Search {
+    void run(ChainSink results) throws InterruptedException;
+  }
+}
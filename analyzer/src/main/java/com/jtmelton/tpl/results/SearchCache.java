@@ -0,0 +1,475 @@
+package com.jtmelton.tpl.results;
+
+import com.google.common.hash.Hashing;
+import com.jtmelton.tpl.cli.Options;
+import com.jtmelton.tpl.report.IReporter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/*
+ * On disk cache of search results. An entry holds the reporter events of one search, so a repeat
+ * search is replayed straight into the reporters without touching the graph. Entries are kept in
+ * a directory per graph build, so a rebuilt graph never sees them and DB directories can share one
+ * cache directory. Entries of builds no longer searched are never used again, so they are the first
+ * ones evicted once the cache grows past its size limit.
+ */
+public class SearchCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SearchCache.class);
+
+  public static final String DEPENDENCIES = "dependencies";
+
+  public static final String AFFECTED_CLASSES = "affectedClasses";
+
+  // Written to the DB directory by every build, so cached results never outlive the graph they came from
+  private static final String BUILD_ID_FILE = "tplaBuildId";
+
+  private static final String SUFFIX = ".tsc";
+
+  private static final int MAGIC = 0x54504c43;
+
+  private static final int VERSION = 1;
+
+  private static final byte NAME = 1;
+  private static final byte JARS = 2;
+  private static final byte CHAIN_START = 3;
+  private static final byte USER_CLASS = 4;
+  private static final byte LINK = 5;
+  private static final byte CHAIN_END = 6;
+  private static final byte END = 7;
+
+  // Shared by every build, the size limit covers all of them
+  private final File directory;
+
+  // Entries of this build
+  private final File buildDirectory;
+
+  private final long maxBytes;
+
+  private SearchCache(File directory, File buildDirectory, long maxBytes) {
+    this.directory = directory;
+    this.buildDirectory = buildDirectory;
+    this.maxBytes = maxBytes;
+  }
+
+  // Opens the cache for the given build. Entries of other builds stay until eviction removes them
+  public static SearchCache open(File directory, String buildId, long maxBytes) throws IOException {
+    File buildDirectory = new File(directory, buildId);
+
+    if(!buildDirectory.isDirectory() && !buildDirectory.mkdirs()) {
+      throw new IOException("Could not create search cache directory " + buildDirectory);
+    }
+
+    SearchCache cache = new SearchCache(directory, buildDirectory, maxBytes);
+    // The size limit may have been lowered since the last run
+    cache.evict();
+
+    return cache;
+  }
+
+  // Gives the graph in dbDirectory a new build id, called whenever it is built or updated
+  public static void newBuildId(File dbDirectory) throws IOException {
+    Files.write(new File(dbDirectory, BUILD_ID_FILE).toPath(),
+            UUID.randomUUID().toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  // DBs built before build ids were written get one on first use
+  public static String buildId(File dbDirectory) throws IOException {
+    Path idFile = new File(dbDirectory, BUILD_ID_FILE).toPath();
+
+    if(!Files.exists(idFile)) {
+      newBuildId(dbDirectory);
+    }
+
+    return new String(Files.readAllBytes(idFile), StandardCharsets.UTF_8).trim();
+  }
+
+  // Every option that changes which chains a search returns is part of the key
+  public String key(String searchType, String searchTerm, Options options) {
+    List<String> parts = new ArrayList<>();
+    parts.add(searchType);
+    parts.add(searchTerm);
+    parts.add(options.getSearchDepth());
+    parts.add(String.valueOf(options.isExactMatch()));
+    parts.add(String.valueOf(options.isFilterResults()));
+    parts.add(options.getGraphBackend());
+    parts.add(String.join(",", options.getSearchJarInclusions()));
+    parts.add(String.join(",", options.getSearchJarExclusions()));
+
+    return Hashing.sha256().hashString(String.join("\u0000", parts), StandardCharsets.UTF_8).toString();
+  }
+
+  public boolean contains(String key) {
+    return entryFile(key).isFile();
+  }
+
+  // Sends a cached result to the reporter. Returns false when there is no usable entry for the key
+  public boolean replay(String key, String searchTerm, IReporter reporter, boolean streaming) throws IOException {
+    File entry = entryFile(key);
+
+    if(!entry.isFile()) {
+      return false;
+    }
+
+    // The entry is checked in full before anything is reported, a second stream then reports it.
+    // Both are opened up front so eviction can't remove the entry in between
+    try(DataInputStream check = open(entry); DataInputStream in = open(entry)) {
+      Collection<String> jars;
+
+      try {
+        jars = read(check, null);
+      } catch(IOException | RuntimeException e) {
+        LOG.warn("Dropping unreadable search cache entry {}", entry.getName());
+        entry.delete();
+        return false;
+      }
+
+      entry.setLastModified(System.currentTimeMillis());
+
+      if(streaming) {
+        reporter.streamStart(searchTerm);
+        read(in, reporter);
+        reporter.streamEnd(jars);
+      } else {
+        reporter.preProcess(searchTerm, jars);
+        read(in, reporter);
+        reporter.endProcess();
+      }
+    }
+
+    return true;
+  }
+
+  // Returns a reporter that writes the events it is sent to a new entry for the key
+  public Recorder record(String key) {
+    return new Recorder(key);
+  }
+
+  // Reads an entry, sending its chains to the reporter if there is one. Returns the result's jars
+  private static Collection<String> read(DataInputStream in, IReporter reporter) throws IOException {
+    if(in.readInt() != MAGIC || in.readInt() != VERSION) {
+      throw new IOException("Not a search cache entry");
+    }
+
+    List<String> names = new ArrayList<>();
+    List<Collection<String>> jarSets = new ArrayList<>();
+
+    while(true) {
+      byte tag = in.readByte();
+
+      switch(tag) {
+        case NAME:
+          names.add(in.readUTF());
+          break;
+        case JARS:
+          jarSets.add(readJars(in, names));
+          break;
+        case CHAIN_START:
+          if(reporter != null) {
+            reporter.chainEntryStart();
+          }
+          break;
+        case USER_CLASS:
+          String userClass = names.get(in.readInt());
+          if(reporter != null) {
+            reporter.addChainEntryUserClass(userClass);
+          }
+          break;
+        case LINK:
+          String className = names.get(in.readInt());
+          Collection<String> jars = jarSets.get(in.readInt());
+          if(reporter != null) {
+            reporter.addChainLink(className, jars);
+          }
+          break;
+        case CHAIN_END:
+          if(reporter != null) {
+            reporter.chainEntryEnd();
+          }
+          break;
+        case END:
+          return readJars(in, names);
+        default:
+          throw new IOException("Unknown search cache record " + tag);
+      }
+    }
+  }
+
+  // Jar sets keep the order they were recorded in so reports come out the same as the original
+  private static Collection<String> readJars(DataInputStream in, List<String> names) throws IOException {
+    int count = in.readInt();
+    Set<String> jars = new LinkedHashSet<>();
+
+    for(int i = 0;i < count;i++) {
+      jars.add(names.get(in.readInt()));
+    }
+
+    return Collections.unmodifiableSet(jars);
+  }
+
+  private static DataInputStream open(File file) throws IOException {
+    return new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+  }
+
+  private File entryFile(String key) {
+    return new File(buildDirectory, key + SUFFIX);
+  }
+
+  // Entries of every build, including ones written straight into the cache directory by older versions
+  private List<File> listEntries() {
+    List<File> entries = listEntries(directory);
+
+    File[] builds = directory.listFiles(File::isDirectory);
+    if(builds != null) {
+      for(File build : builds) {
+        entries.addAll(listEntries(build));
+      }
+    }
+
+    return entries;
+  }
+
+  private static List<File> listEntries(File directory) {
+    File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+    return files == null ? new ArrayList<>() : new ArrayList<>(Arrays.asList(files));
+  }
+
+  // Removes the least recently used entries of any build until the cache fits in maxBytes
+  private synchronized void evict() {
+    List<File> entries = listEntries();
+    entries.sort(Comparator.comparingLong(File::lastModified));
+
+    long total = entries.stream().mapToLong(File::length).sum();
+
+    for(File entry : entries) {
+      if(total <= maxBytes) {
+        break;
+      }
+
+      long size = entry.length();
+      if(entry.delete()) {
+        total -= size;
+        LOG.info("Evicted search cache entry {}", entry.getName());
+
+        // Only removed once it is empty, which is never the case for the build still writing to it
+        File parent = entry.getParentFile();
+        if(!parent.equals(buildDirectory) && !parent.equals(directory)) {
+          parent.delete();
+        }
+      }
+    }
+  }
+
+  /*
+   * Reporter that writes a search's chains to a temporary file. Nothing is visible in the cache
+   * until commit() moves the finished file into place.
+   */
+  public class Recorder implements IReporter {
+
+    private final File entry;
+
+    private File temp;
+
+    private DataOutputStream out;
+
+    private final Map<String, Integer> names = new HashMap<>();
+
+    private final Map<List<String>, Integer> jarSets = new HashMap<>();
+
+    private Collection<String> jars = Collections.emptyList();
+
+    private boolean failed = false;
+
+    private Recorder(String key) {
+      this.entry = entryFile(key);
+
+      try {
+        // Another run sharing the cache directory may have evicted this build's last entry with its directory
+        buildDirectory.mkdirs();
+        temp = File.createTempFile(entry.getName(), ".tmp", buildDirectory);
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+      } catch(IOException ioe) {
+        fail(ioe);
+      }
+    }
+
+    @Override
+    public void preProcess(String searchTerm, Collection<String> jars) {
+      this.jars = new ArrayList<>(jars);
+    }
+
+    @Override
+    public void endProcess() {
+      // jars were given up front
+    }
+
+    @Override
+    public void streamStart(String searchTerm) {
+      // jars only come with streamEnd
+    }
+
+    @Override
+    public void streamEnd(Collection<String> jars) {
+      this.jars = new ArrayList<>(jars);
+    }
+
+    @Override
+    public void chainEntryStart() {
+      write(CHAIN_START);
+    }
+
+    @Override
+    public void chainEntryEnd() {
+      write(CHAIN_END);
+    }
+
+    @Override
+    public void addChainEntryUserClass(String className) {
+      int name = nameIndex(className);
+      write(USER_CLASS, name);
+    }
+
+    @Override
+    public void addChainLink(String className, Collection<String> jars) {
+      int name = nameIndex(className);
+      int jarSet = jarSetIndex(jars);
+      write(LINK, name, jarSet);
+    }
+
+    @Override
+    public void report(String outputFile) {
+      // written by commit
+    }
+
+    // Moves the finished entry into the cache, then evicts old entries if it grew too large
+    public void commit() {
+      List<Integer> jarIndexes = new ArrayList<>();
+      jars.forEach(jar -> jarIndexes.add(nameIndex(jar)));
+
+      writeJars(END, jarIndexes);
+      close();
+
+      if(failed) {
+        discard();
+        return;
+      }
+
+      try {
+        Files.move(temp.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+      } catch(IOException ioe) {
+        fail(ioe);
+        discard();
+        return;
+      }
+
+      evict();
+    }
+
+    public void discard() {
+      close();
+
+      if(temp != null) {
+        temp.delete();
+      }
+    }
+
+    private int nameIndex(String name) {
+      Integer index = names.get(name);
+
+      if(index == null) {
+        index = names.size();
+        names.put(name, index);
+        write(NAME);
+        writeUTF(name);
+      }
+
+      return index;
+    }
+
+    private int jarSetIndex(Collection<String> jars) {
+      List<String> jarList = new ArrayList<>(jars);
+      Integer index = jarSets.get(jarList);
+
+      if(index == null) {
+        List<Integer> jarIndexes = new ArrayList<>();
+        jarList.forEach(jar -> jarIndexes.add(nameIndex(jar)));
+
+        index = jarSets.size();
+        jarSets.put(jarList, index);
+        writeJars(JARS, jarIndexes);
+      }
+
+      return index;
+    }
+
+    private void write(byte tag, int... values) {
+      if(failed) {
+        return;
+      }
+
+      try {
+        out.writeByte(tag);
+        for(int value : values) {
+          out.writeInt(value);
+        }
+      } catch(IOException ioe) {
+        fail(ioe);
+      }
+    }
+
+    private void writeJars(byte tag, List<Integer> jarIndexes) {
+      int[] values = new int[jarIndexes.size() + 1];
+      values[0] = jarIndexes.size();
+
+      for(int i = 0;i < jarIndexes.size();i++) {
+        values[i + 1] = jarIndexes.get(i);
+      }
+
+      write(tag, values);
+    }
+
+    private void writeUTF(String value) {
+      if(failed) {
+        return;
+      }
+
+      try {
+        out.writeUTF(value);
+      } catch(IOException ioe) {
+        fail(ioe);
+      }
+    }
+
+    private void close() {
+      if(out == null) {
+        return;
+      }
+
+      try {
+        out.close();
+      } catch(IOException ioe) {
+        fail(ioe);
+      }
+
+      out = null;
+    }
+
+    private void fail(IOException ioe) {
+      if(!failed) {
+        LOG.warn("Failed to write search cache entry {}", entry.getName(), ioe);
+      }
+
+      failed = true;
+    }
+  }
+}
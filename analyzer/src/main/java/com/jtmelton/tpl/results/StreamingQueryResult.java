@@ -0,0 +1,156 @@
+package com.jtmelton.tpl.results;
+
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/*
+ * Hands chains to the reporting thread through a bounded queue instead of keeping them. Searches
+ * block once the queue is full, so memory stays flat however many chains a search produces. Only
+ * jar names are kept, since reporters need them after the last chain.
+ */
+public class StreamingQueryResult implements ChainSink {
+
+  public static final int DEFAULT_CAPACITY = 10000;
+
+  // Marks the end of the stream, never handed out as a chain
+  private static final ClassChain END = new ClassChain(new long[0], new String[0]);
+
+  private final String searchTerm;
+
+  private final Set<String> jarNames = new HashSet<>();
+
+  private final NameDictionary nameDictionary = new NameDictionary();
+
+  private final BlockingQueue<ClassChain> queue;
+
+  private volatile boolean complete = true;
+
+  private final AtomicInteger chainCount = new AtomicInteger();
+
+  private volatile boolean closed = false;
+
+  private boolean finished = false;
+
+  public StreamingQueryResult(String searchTerm) {
+    this(searchTerm, DEFAULT_CAPACITY);
+  }
+
+  public StreamingQueryResult(String searchTerm, int capacity) {
+    this.searchTerm = searchTerm;
+    this.queue = new ArrayBlockingQueue<>(capacity);
+  }
+
+  @Override
+  public String getSearchTerm() {
+    return searchTerm;
+  }
+
+  @Override
+  public boolean isStreaming() {
+    return true;
+  }
+
+  @Override
+  public void markIncomplete() {
+    complete = false;
+  }
+
+  @Override
+  public boolean isComplete() {
+    return complete;
+  }
+
+  @Override
+  public void addJarName(String jarName) {
+    jarNames.add(jarName);
+  }
+
+  @Override
+  public Collection<String> getJarNames() {
+    return Collections.unmodifiableCollection(jarNames);
+  }
+
+  @Override
+  public NameDictionary getNameDictionary() {
+    return nameDictionary;
+  }
+
+  @Override
+  public void addClassChain(ClassChain classChain) {
+    try {
+      // Chains are dropped once the reader gave up, rather than blocking the search forever
+      while(!closed) {
+        if(queue.offer(classChain, 100, MILLISECONDS)) {
+          chainCount.incrementAndGet();
+          return;
+        }
+      }
+    } catch(InterruptedException ie) {
+      // The chain never reached the reader, so the results are missing it
+      Thread.currentThread().interrupt();
+      markIncomplete();
+    }
+  }
+
+  @Override
+  public int getChainCount() {
+    return chainCount.get();
+  }
+
+  // Called once the search has added every chain. END goes on the queue even if the search was
+  // interrupted, since the reader waits for it
+  public void finish() {
+    boolean interrupted = false;
+
+    try {
+      while(!closed) {
+        try {
+          if(queue.offer(END, 100, MILLISECONDS)) {
+            return;
+          }
+        } catch(InterruptedException ie) {
+          interrupted = true;
+        }
+      }
+    } finally {
+      if(interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  // Called by the reader when it stops early so searches don't block on a full queue
+  public void close() {
+    closed = true;
+    queue.clear();
+  }
+
+  // Waits for at least one chain and moves up to maxChains into batch. Returns false once the
+  // search has finished and every chain was taken
+  public boolean drainTo(List<ClassChain> batch, int maxChains) throws InterruptedException {
+    if(finished) {
+      return false;
+    }
+
+    ClassChain chain = queue.take();
+    if(chain == END) {
+      finished = true;
+      return false;
+    }
+
+    batch.add(chain);
+    queue.drainTo(batch, maxChains - 1);
+
+    // END is always the last element put on the queue
+    if(batch.get(batch.size() - 1) == END) {
+      batch.remove(batch.size() - 1);
+      finished = true;
+    }
+
+    return true;
+  }
+}
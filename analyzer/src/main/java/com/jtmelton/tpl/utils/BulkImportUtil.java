@@ -0,0 +1,138 @@
+package com.jtmelton.tpl.utils;
+
+import com.jtmelton.tpl.domain.ClassNode;
+import com.jtmelton.tpl.domain.JarNode;
+import com.jtmelton.tpl.metrics.Counter;
+import com.jtmelton.tpl.metrics.Metrics;
+import com.jtmelton.tpl.metrics.Progress;
+import com.jtmelton.tpl.metrics.Timer;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.unsafe.batchinsert.BatchInserter;
+import org.neo4j.unsafe.batchinsert.BatchInserters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+public class BulkImportUtil {
+
+  private static final Logger LOG = LoggerFactory.getLogger(BulkImportUtil.class);
+
+  private static final Label JAR = Label.label("Jar");
+
+  private static final Label CLASS = Label.label("Class");
+
+  private static final Label USER_CLASS = Label.label("UserClass");
+
+  private static final RelationshipType CLASSES = RelationshipType.withName("classes");
+
+  private static final RelationshipType CLASSES_DEPENDED_ON = RelationshipType.withName("classesDependedOn");
+
+  private static final RelationshipType NESTED_IN = RelationshipType.withName("nestedIn");
+
+  private static final Timer IMPORT_TIMER = Metrics.timer("write.bulkImport");
+
+  // Same counters as transactional writes, so rates compare directly
+  private static final Counter NODE_ROWS = Metrics.counter("write.nodes.rows");
+
+  private static final Counter EDGE_ROWS = Metrics.counter("write.edges.rows");
+
+  // Streams the whole graph into a new store, bypassing transactions. The store must not be open elsewhere
+  public static void importGraph(File dbDirectory, Collection<ClassNode> userClasses,
+                                 Collection<ClassNode> externalClasses, Collection<JarNode> jarNodes,
+                                 Function<ClassNode, Collection<ClassNode>> dependencies) throws IOException {
+    checkImportDirectory(dbDirectory);
+
+    long start = IMPORT_TIMER.start();
+    BatchInserter inserter = BatchInserters.inserter(dbDirectory);
+
+    try {
+      LOG.info("Importing {} user classes and {} external classes", userClasses.size(), externalClasses.size());
+      userClasses.forEach(c -> writeClassNode(inserter, c));
+      externalClasses.forEach(c -> writeClassNode(inserter, c));
+      NODE_ROWS.add(userClasses.size() + externalClasses.size());
+
+      List<JarNode> allJars = jarNodes.stream()
+              .flatMap(j -> j.withNestedJars().stream())
+              .collect(Collectors.toList());
+
+      LOG.info("Importing {} jars and jar class relationships", allJars.size());
+      for(JarNode jarNode : allJars) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("name", jarNode.getName());
+        properties.put("hash", jarNode.getHash());
+        properties.put("paths", jarNode.getPaths().toArray(new String[0]));
+        properties.put("size", jarNode.getSize());
+        properties.put("mtime", jarNode.getLastModified());
+
+        jarNode.setId(inserter.createNode(properties, JAR));
+
+        for(ClassNode classNode : jarNode.getClassNodes()) {
+          inserter.createRelationship(classNode.getId(), jarNode.getId(), CLASSES, Collections.emptyMap());
+        }
+
+        NODE_ROWS.increment();
+        EDGE_ROWS.add(jarNode.getClassNodes().size());
+      }
+
+      for(JarNode jarNode : allJars) {
+        for(JarNode nestedJar : jarNode.getNestedJars()) {
+          inserter.createRelationship(nestedJar.getId(), jarNode.getId(), NESTED_IN, Collections.emptyMap());
+        }
+
+        EDGE_ROWS.add(jarNode.getNestedJars().size());
+      }
+
+      // Counted per class, the number of relationships is only known once they are all written
+      long written = 0;
+      try(Progress progress = Progress.start("Importing dependencies of classes",
+              userClasses.size() + externalClasses.size())) {
+        for(Collection<ClassNode> classNodes : Arrays.asList(userClasses, externalClasses)) {
+          for(ClassNode classNode : classNodes) {
+            Collection<ClassNode> classDependencies = dependencies.apply(classNode);
+
+            for(ClassNode dependency : classDependencies) {
+              inserter.createRelationship(classNode.getId(), dependency.getId(), CLASSES_DEPENDED_ON,
+                      Collections.emptyMap());
+            }
+
+            written += classDependencies.size();
+            progress.increment();
+          }
+        }
+      }
+
+      LOG.info("Imported {} class dependency relationships", written);
+      EDGE_ROWS.add(written);
+    } finally {
+      // Flushes the store files, the graph is not readable until this completes
+      inserter.shutdown();
+      IMPORT_TIMER.stop(start);
+    }
+  }
+
+  public static void checkImportDirectory(File dbDirectory) throws IOException {
+    String[] existing = dbDirectory.list();
+    if(existing != null && existing.length > 0) {
+      throw new IOException("Bulk import requires an empty db directory, " + dbDirectory + " is not empty");
+    }
+  }
+
+  private static void writeClassNode(BatchInserter inserter, ClassNode classNode) {
+    Map<String, Object> properties = new HashMap<>();
+    properties.put("name", classNode.getName());
+    properties.put("custom", classNode.isCustom());
+
+    classNode.setId(inserter.createNode(properties, classNode.isCustom() ? USER_CLASS : CLASS));
+  }
+}
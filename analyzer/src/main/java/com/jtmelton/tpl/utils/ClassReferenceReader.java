@@ -0,0 +1,28 @@
+package com.jtmelton.tpl.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public interface ClassReferenceReader {
+
+  String CONSTANT_POOL = "constantPool";
+
+  String JAVASSIST = "javassist";
+
+  String VERIFY = "verify";
+
+  ClassReferences read(ByteBuffer classFile) throws IOException;
+
+  static ClassReferenceReader forType(String type) {
+    switch(type) {
+      case CONSTANT_POOL:
+        return new ConstantPoolReader();
+      case JAVASSIST:
+        return new JavassistReferenceReader();
+      case VERIFY:
+        return new VerifyingReferenceReader(new ConstantPoolReader(), new JavassistReferenceReader());
+      default:
+        throw new IllegalArgumentException("Unknown class reader " + type);
+    }
+  }
+}
@@ -0,0 +1,25 @@
+package com.jtmelton.tpl.utils;
+
+import java.util.Collection;
+import java.util.Collections;
+
+public class ClassReferences {
+
+  private final String name;
+
+  private final Collection<String> referencedClasses;
+
+  public ClassReferences(String name, Collection<String> referencedClasses) {
+    this.name = name;
+    this.referencedClasses = referencedClasses;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  // Includes the name of the class itself, same as CtClass.getRefClasses()
+  public Collection<String> getReferencedClasses() {
+    return Collections.unmodifiableCollection(referencedClasses);
+  }
+}
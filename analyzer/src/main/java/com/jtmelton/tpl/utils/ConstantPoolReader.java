@@ -0,0 +1,408 @@
+package com.jtmelton.tpl.utils;
+
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.Buffer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashSet;
+import java.util.Set;
+
+/*
+ * Reads the classes referenced by a class file straight from its bytes. Collects the same
+ * names as CtClass.getRefClasses(): class constants, NameAndType and MethodType descriptors,
+ * field and method descriptors, and the types used in annotations. Signature attributes are
+ * ignored by Javassist and are ignored here as well.
+ */
+public class ConstantPoolReader implements ClassReferenceReader {
+
+  private static final int MAGIC = 0xCAFEBABE;
+
+  private static final int UTF8 = 1;
+  private static final int INTEGER = 3;
+  private static final int FLOAT = 4;
+  private static final int LONG = 5;
+  private static final int DOUBLE = 6;
+  private static final int CLASS = 7;
+  private static final int STRING = 8;
+  private static final int FIELD_REF = 9;
+  private static final int METHOD_REF = 10;
+  private static final int INTERFACE_METHOD_REF = 11;
+  private static final int NAME_AND_TYPE = 12;
+  private static final int METHOD_HANDLE = 15;
+  private static final int METHOD_TYPE = 16;
+  private static final int DYNAMIC = 17;
+  private static final int INVOKE_DYNAMIC = 18;
+  private static final int MODULE = 19;
+  private static final int PACKAGE = 20;
+
+  @Override
+  public ClassReferences read(ByteBuffer classFile) throws IOException {
+    try {
+      return new Parser(classFile).parse();
+    } catch(BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+      throw new IOException("Truncated class file", e);
+    }
+  }
+
+  private static class Parser {
+
+    private final ByteBuffer in;
+
+    private final Set<String> refs = new HashSet<>();
+
+    private int[] offsets;
+
+    private byte[] tags;
+
+    private String[] utf8Cache;
+
+    private Parser(ByteBuffer classFile) {
+      this.in = classFile.slice().order(ByteOrder.BIG_ENDIAN);
+    }
+
+    private ClassReferences parse() throws IOException {
+      int magic = in.getInt();
+      if(magic != MAGIC) {
+        throw new IOException("bad magic number: " + Integer.toHexString(magic));
+      }
+
+      // minor and major version
+      skip(4);
+
+      readConstantPool();
+
+      // access flags
+      skip(2);
+      String name = className(u2());
+      // super class and interfaces are class constants, already collected
+      skip(2);
+      skip(2 * u2());
+
+      readMembers();
+      readMembers();
+      readAttributes();
+
+      return new ClassReferences(name, refs);
+    }
+
+    private void readConstantPool() throws IOException {
+      int count = u2();
+      offsets = new int[count];
+      tags = new byte[count];
+      utf8Cache = new String[count];
+
+      for(int i = 1;i < count;i++) {
+        int tag = u1();
+        tags[i] = (byte) tag;
+        offsets[i] = in.position();
+
+        switch(tag) {
+          case UTF8:
+            skip(u2());
+            break;
+          case CLASS:
+          case STRING:
+          case METHOD_TYPE:
+          case MODULE:
+          case PACKAGE:
+            skip(2);
+            break;
+          case METHOD_HANDLE:
+            skip(3);
+            break;
+          case INTEGER:
+          case FLOAT:
+          case FIELD_REF:
+          case METHOD_REF:
+          case INTERFACE_METHOD_REF:
+          case NAME_AND_TYPE:
+          case DYNAMIC:
+          case INVOKE_DYNAMIC:
+            skip(4);
+            break;
+          case LONG:
+          case DOUBLE:
+            skip(8);
+            i++;
+            break;
+          default:
+            throw new IOException("invalid constant type: " + tag + " at " + i);
+        }
+      }
+
+      for(int i = 1;i < count;i++) {
+        switch(tags[i]) {
+          case CLASS:
+            String className = utf8(in.getShort(offsets[i]) & 0xffff);
+            if(className.charAt(0) == '[') {
+              addDescriptor(className);
+            } else {
+              refs.add(toJavaName(className));
+            }
+            break;
+          case NAME_AND_TYPE:
+            addDescriptor(utf8(in.getShort(offsets[i] + 2) & 0xffff));
+            break;
+          case METHOD_TYPE:
+            addDescriptor(utf8(in.getShort(offsets[i]) & 0xffff));
+            break;
+          default:
+            break;
+        }
+      }
+    }
+
+    private void readMembers() throws IOException {
+      int count = u2();
+
+      for(int i = 0;i < count;i++) {
+        // access flags and name
+        skip(4);
+        addDescriptor(utf8(u2()));
+        readAttributes();
+      }
+    }
+
+    private void readAttributes() throws IOException {
+      int count = u2();
+
+      for(int i = 0;i < count;i++) {
+        String name = utf8(u2());
+        int length = in.getInt();
+        int end = in.position() + length;
+
+        switch(name) {
+          case "RuntimeVisibleAnnotations":
+          case "RuntimeInvisibleAnnotations":
+            annotationArray();
+            break;
+          case "RuntimeVisibleParameterAnnotations":
+          case "RuntimeInvisibleParameterAnnotations":
+            int parameters = u1();
+            for(int p = 0;p < parameters;p++) {
+              annotationArray();
+            }
+            break;
+          case "RuntimeVisibleTypeAnnotations":
+          case "RuntimeInvisibleTypeAnnotations":
+            typeAnnotationArray();
+            break;
+          case "Code":
+            // max stack and max locals
+            skip(4);
+            skip(in.getInt());
+            // exception table entries
+            skip(8 * u2());
+            readAttributes();
+            break;
+          default:
+            break;
+        }
+
+        position(end);
+      }
+    }
+
+    private void annotationArray() throws IOException {
+      int count = u2();
+      for(int i = 0;i < count;i++) {
+        annotation();
+      }
+    }
+
+    private void typeAnnotationArray() throws IOException {
+      int count = u2();
+      for(int i = 0;i < count;i++) {
+        typeAnnotationTarget(u1());
+        // type path entries
+        skip(2 * u1());
+        annotation();
+      }
+    }
+
+    private void typeAnnotationTarget(int type) throws IOException {
+      switch(type) {
+        case 0x00:
+        case 0x01:
+        case 0x16:
+          skip(1);
+          break;
+        case 0x10:
+        case 0x11:
+        case 0x12:
+        case 0x17:
+        case 0x42:
+        case 0x43:
+        case 0x44:
+        case 0x45:
+        case 0x46:
+          skip(2);
+          break;
+        case 0x13:
+        case 0x14:
+        case 0x15:
+          break;
+        case 0x40:
+        case 0x41:
+          skip(6 * u2());
+          break;
+        case 0x47:
+        case 0x48:
+        case 0x49:
+        case 0x4a:
+        case 0x4b:
+          skip(3);
+          break;
+        default:
+          throw new IOException("invalid target type: " + type);
+      }
+    }
+
+    private void annotation() throws IOException {
+      addDescriptor(utf8(u2()));
+
+      int pairs = u2();
+      for(int i = 0;i < pairs;i++) {
+        // element name
+        skip(2);
+        elementValue();
+      }
+    }
+
+    private void elementValue() throws IOException {
+      int tag = u1();
+
+      switch(tag) {
+        case 'e':
+          addDescriptor(utf8(u2()));
+          // enum constant name
+          skip(2);
+          break;
+        case 'c':
+          addDescriptor(utf8(u2()));
+          break;
+        case '@':
+          annotation();
+          break;
+        case '[':
+          int count = u2();
+          for(int i = 0;i < count;i++) {
+            elementValue();
+          }
+          break;
+        default:
+          // primitive or String constant
+          skip(2);
+          break;
+      }
+    }
+
+    // Mirrors javassist.bytecode.Descriptor.rename, which picks up every L...; run in the string
+    private void addDescriptor(String descriptor) {
+      int i = 0;
+
+      for(;;) {
+        int start = descriptor.indexOf('L', i);
+        if(start < 0) {
+          break;
+        }
+
+        int end = descriptor.indexOf(';', start);
+        if(end < 0) {
+          break;
+        }
+
+        i = end + 1;
+        refs.add(toJavaName(descriptor.substring(start + 1, end)));
+      }
+    }
+
+    private String className(int index) throws IOException {
+      if(index <= 0 || index >= tags.length || tags[index] != CLASS) {
+        throw new IOException("Constant " + index + " is not a class");
+      }
+
+      return toJavaName(utf8(in.getShort(offsets[index]) & 0xffff));
+    }
+
+    private String utf8(int index) throws IOException {
+      if(index <= 0 || index >= tags.length || tags[index] != UTF8) {
+        throw new IOException("Constant " + index + " is not a utf8 string");
+      }
+
+      String value = utf8Cache[index];
+      if(value == null) {
+        value = decodeUtf8(offsets[index]);
+        utf8Cache[index] = value;
+      }
+
+      return value;
+    }
+
+    // Modified UTF-8 as read by DataInputStream.readUTF
+    private String decodeUtf8(int offset) throws UTFDataFormatException {
+      int length = in.getShort(offset) & 0xffff;
+      int pos = offset + 2;
+      int end = pos + length;
+      char[] chars = new char[length];
+      int count = 0;
+
+      while(pos < end) {
+        int c = in.get(pos) & 0xff;
+
+        if(c < 0x80) {
+          chars[count++] = (char) c;
+          pos++;
+        } else if((c >> 5) == 0x6) {
+          if(pos + 1 >= end) {
+            throw new UTFDataFormatException("malformed input: partial character at end");
+          }
+          int c2 = in.get(pos + 1);
+          if((c2 & 0xc0) != 0x80) {
+            throw new UTFDataFormatException("malformed input around byte " + (pos + 1));
+          }
+          chars[count++] = (char) (((c & 0x1f) << 6) | (c2 & 0x3f));
+          pos += 2;
+        } else if((c >> 4) == 0xe) {
+          if(pos + 2 >= end) {
+            throw new UTFDataFormatException("malformed input: partial character at end");
+          }
+          int c2 = in.get(pos + 1);
+          int c3 = in.get(pos + 2);
+          if((c2 & 0xc0) != 0x80 || (c3 & 0xc0) != 0x80) {
+            throw new UTFDataFormatException("malformed input around byte " + (pos + 1));
+          }
+          chars[count++] = (char) (((c & 0x0f) << 12) | ((c2 & 0x3f) << 6) | (c3 & 0x3f));
+          pos += 3;
+        } else {
+          throw new UTFDataFormatException("malformed input around byte " + pos);
+        }
+      }
+
+      return new String(chars, 0, count);
+    }
+
+    private int u1() {
+      return in.get() & 0xff;
+    }
+
+    private int u2() {
+      return in.getShort() & 0xffff;
+    }
+
+    private void skip(int bytes) {
+      position(in.position() + bytes);
+    }
+
+    // Called through Buffer so the class still links on Java 8 when compiled with a newer JDK
+    private void position(int position) {
+      ((Buffer) in).position(position);
+    }
+
+    private static String toJavaName(String name) {
+      return name.replace('/', '.');
+    }
+  }
+}
@@ -0,0 +1,29 @@
+package com.jtmelton.tpl.utils;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+public class FileHashUtil {
+
+  public static String sha256(Path path) throws IOException {
+    return Files.asByteSource(path.toFile()).hash(Hashing.sha256()).toString();
+  }
+
+  // Same format as hashing a file with the same content
+  public static String sha256(ByteBuffer content) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      digest.update(content.duplicate());
+      return HashCode.fromBytes(digest.digest()).toString();
+    } catch(NoSuchAlgorithmException nsae) {
+      throw new IllegalStateException("SHA-256 is not available", nsae);
+    }
+  }
+}
@@ -0,0 +1,107 @@
+package com.jtmelton.tpl.utils;
+
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+public class Filters {
+  public static PatternFilter<Map<String, Object>> searchJarInclude(Collection<String> inclusions) {
+    return new PatternFilter<>("Search jar inclusions", inclusions, j -> (String) j.get("name"), true);
+  }
+
+  public static PatternFilter<Map<String, Object>> searchJarExclude(Collection<String> exclusions) {
+    return new PatternFilter<>("Search jar exclusions", exclusions, j -> (String) j.get("name"), false);
+  }
+
+  public static PatternFilter<Path> depExclude(Collection<String> exclusions) {
+    return new PatternFilter<>("Dependency exclusions", exclusions, Path::toString, false);
+  }
+
+  public static Predicate<Path> filterTestDirs() {
+    return p -> {
+      String path = p.toAbsolutePath().toFile().getAbsolutePath();
+      if(path.contains("/")) {
+        return !path.contains("/test/");
+      } else if(path.contains("\\\\")) {
+        return !path.contains("\\\\test\\\\");
+      }
+      return true;
+    };
+  }
+
+  public static Predicate<Map<String, Object>> contains(String searchTerm) {
+    return p -> ((String) p.get("name")).contains(searchTerm);
+  }
+
+  public static Predicate<Map<String, Object>> equals(String searchTerm) {
+    return p -> p.get("name").equals(searchTerm);
+  }
+
+  /*
+   * Keeps or drops whatever a set of regexes matches, compiled when the filter is made rather
+   * than on every test. No regexes keeps everything. Counts are kept so the filter can report
+   * how much it matched, and the filter can be shared between threads.
+   */
+  public static class PatternFilter<T> implements Predicate<T> {
+
+    private final String description;
+
+    private final PatternSet patterns;
+
+    private final Function<T, String> key;
+
+    private final boolean keepMatches;
+
+    private final LongAdder tested = new LongAdder();
+
+    private final LongAdder matched = new LongAdder();
+
+    private PatternFilter(String description, Collection<String> regexes, Function<T, String> key,
+                          boolean keepMatches) {
+      this.description = description;
+      this.patterns = PatternSet.compile(regexes);
+      this.key = key;
+      this.keepMatches = keepMatches;
+    }
+
+    @Override
+    public boolean test(T item) {
+      if(patterns.isEmpty()) {
+        return true;
+      }
+
+      tested.increment();
+
+      boolean match = patterns.matches(key.apply(item));
+      if(match) {
+        matched.increment();
+      }
+
+      return match == keepMatches;
+    }
+
+    public boolean isEmpty() {
+      return patterns.isEmpty();
+    }
+
+    public long getTested() {
+      return tested.sum();
+    }
+
+    public long getMatched() {
+      return matched.sum();
+    }
+
+    @Override
+    public String toString() {
+      long tested = getTested();
+      long matched = getMatched();
+
+      return String.format("%s matched %d of %d (%.1f%%)", description, matched, tested,
+              tested == 0 ? 0.0 : matched * 100.0 / tested);
+    }
+  }
+}
@@ -0,0 +1,459 @@
+package com.jtmelton.tpl.utils;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multimap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.jtmelton.tpl.domain.ClassNode;
+import com.jtmelton.tpl.domain.JarNode;
+import com.jtmelton.tpl.metrics.Progress;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+/*
+ * Writes a new graph while jars are still being parsed. Jars are parsed on the scan pool and
+ * handed over as each one finishes, the calling thread writes their class and jar nodes, and an
+ * edge thread writes dependency relationships as soon as both of their classes have nodes. The
+ * queues between the stages are bounded so parsing can't run far ahead of the writes, and the
+ * references of a jar are dropped once its relationships are written.
+ *
+ * A dependency on a class no jar has defined yet waits until that class is written. References
+ * are keyed by class name, so every jar defining a class and a user class of the same name all
+ * add to the dependencies of each of those nodes. The first set for a node is created directly,
+ * any later ones are merged once everything else has been written.
+ */
+public class GraphPipeline {
+
+  private static final Logger LOG = LoggerFactory.getLogger(GraphPipeline.class);
+
+  private final GraphDatabaseService graphDb;
+
+  private final int writeBatchSize;
+
+  private final int queueSize;
+
+  private final ExecutorService writePool;
+
+  // Bounds the writes waiting on the pool
+  private final Semaphore writes;
+
+  // First write that failed. Once set nothing else is written and the build fails
+  private volatile RuntimeException writeFailure;
+
+  private Collection<JarNode> retainedJars;
+
+  private Multimap<String, String> retainedReferences;
+
+  public GraphPipeline(GraphDatabaseService graphDb, int threads, int writeBatchSize) {
+    this.graphDb = graphDb;
+    this.writeBatchSize = writeBatchSize;
+    this.queueSize = threads * 2;
+    this.writes = new Semaphore(queueSize);
+    this.writePool = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+            .setNameFormat("graph-write-%d")
+            .build());
+  }
+
+  // Keeps every jar written and the references of their classes, which are otherwise dropped
+  // once written. Only read them once write returns
+  public void retainModel(Collection<JarNode> jarNodes, Multimap<String, String> references) {
+    this.retainedJars = jarNodes;
+    this.retainedReferences = references;
+  }
+
+  // User classes and their references must already be read. Returns the number of jars written
+  public int write(Collection<ClassNode> userClasses, Multimap<String, String> userReferences,
+                   Map<String, List<Path>> jarsByHash, Map<String, ClassNode> externalClassNodes,
+                   ClassReferenceReader reader, ForkJoinPool scanPool) throws IOException, InterruptedException {
+    BlockingQueue<ParsedJar> parsed = new ArrayBlockingQueue<>(queueSize);
+
+    for(Map.Entry<String, List<Path>> jar : jarsByHash.entrySet()) {
+      scanPool.execute(() -> Uninterruptibles.putUninterruptibly(parsed,
+              parse(jar.getValue(), jar.getKey(), externalClassNodes, reader)));
+    }
+
+    return write(userClasses, userReferences, externalClassNodes, parsed, jarsByHash.size());
+  }
+
+  // Jars that were already read, like those of a snapshot, with the references of every class by
+  // name. The references of a class go with the first jar holding it, so none are merged twice
+  public int write(Collection<ClassNode> userClasses, Multimap<String, String> userReferences,
+                   Collection<JarNode> jarNodes, Multimap<String, String> references,
+                   Map<String, ClassNode> externalClassNodes, ForkJoinPool pool)
+          throws IOException, InterruptedException {
+    BlockingQueue<ParsedJar> parsed = new ArrayBlockingQueue<>(queueSize);
+
+    pool.execute(() -> {
+      Set<String> seen = new HashSet<>();
+
+      for(JarNode jarNode : jarNodes) {
+        Multimap<String, String> jarReferences = HashMultimap.create();
+
+        for(JarNode jar : jarNode.withNestedJars()) {
+          for(ClassNode classNode : jar.getClassNodes()) {
+            if(seen.add(classNode.getName())) {
+              jarReferences.putAll(classNode.getName(), references.get(classNode.getName()));
+            }
+          }
+        }
+
+        Uninterruptibles.putUninterruptibly(parsed, new ParsedJar(jarNode, jarReferences, null));
+      }
+    });
+
+    return write(userClasses, userReferences, externalClassNodes, parsed, jarNodes.size());
+  }
+
+  private int write(Collection<ClassNode> userClasses, Multimap<String, String> userReferences,
+                    Map<String, ClassNode> externalClassNodes, BlockingQueue<ParsedJar> parsed, int jarCount)
+          throws IOException, InterruptedException {
+    EdgeWriter edges = new EdgeWriter(userClasses, userReferences, externalClassNodes);
+    Thread edgeThread = new Thread(edges, "graph-edges");
+    Progress progress = Progress.start("Writing jars", jarCount);
+
+    try {
+      LOG.info("Writing {} user classes to db", userClasses.size());
+      List<Future<?>> userWrites = new ArrayList<>();
+      Lists.partition(new ArrayList<>(userClasses), writeBatchSize)
+              .forEach(b -> userWrites.add(submit(() -> QueryUtil.writeClassNodes(graphDb, b, true))));
+      awaitAll(userWrites);
+      checkWrites();
+
+      edgeThread.start();
+
+      int received = 0;
+      IOException failure = null;
+
+      while(received < jarCount) {
+        List<ParsedJar> jars = new ArrayList<>();
+        jars.add(parsed.take());
+        parsed.drainTo(jars);
+        received += jars.size();
+
+        for(ParsedJar jar : jars) {
+          if(jar.failure != null && failure == null) {
+            failure = jar.failure;
+          }
+        }
+
+        // Everything still parsing is drained before giving up, so no parse task is left blocked
+        if(failure == null && writeFailure != null) {
+          failure = new IOException("Failed to write graph", writeFailure);
+        }
+
+        if(failure != null) {
+          continue;
+        }
+
+        writeNodes(jars);
+
+        for(ParsedJar jar : jars) {
+          if(retainedJars != null) {
+            retainedJars.add(jar.jarNode);
+            retainedReferences.putAll(jar.references);
+          }
+
+          edges.queue.put(jar);
+        }
+
+        progress.add(jars.size());
+      }
+
+      if(failure != null) {
+        throw failure;
+      }
+
+      edges.queue.put(ParsedJar.END);
+      edgeThread.join();
+
+      if(edges.failure != null) {
+        throw new IOException("Failed to write dependency relationships", edges.failure);
+      }
+
+      checkWrites();
+
+      return received;
+    } finally {
+      progress.close();
+
+      if(edgeThread.isAlive()) {
+        edgeThread.interrupt();
+      }
+
+      writePool.shutdown();
+      writePool.awaitTermination(24, TimeUnit.HOURS);
+    }
+  }
+
+  private static ParsedJar parse(List<Path> paths, String hash, Map<String, ClassNode> externalClassNodes,
+                                 ClassReferenceReader reader) {
+    Multimap<String, String> references = HashMultimap.create();
+
+    try {
+      return new ParsedJar(JavassistUtil.analyzeJarFile(paths, hash, externalClassNodes, references, reader),
+              references, null);
+    } catch(IOException ioe) {
+      return new ParsedJar(null, references, ioe);
+    } catch(RuntimeException re) {
+      return new ParsedJar(null, references, new IOException("Failed to scan " + paths.get(0), re));
+    }
+  }
+
+  // Writes the classes first seen in these jars, then the jars, then the jar class and nested jar
+  // relationships. A jar is written along with every jar nested in it
+  private void writeNodes(List<ParsedJar> jars) throws InterruptedException {
+    Set<ClassNode> created = Collections.newSetFromMap(new IdentityHashMap<>());
+    List<JarNode> jarNodes = new ArrayList<>();
+
+    for(ParsedJar jar : jars) {
+      for(JarNode jarNode : jar.jarNode.withNestedJars()) {
+        jar.classes.addAll(jarNode.getClassNodes());
+        jarNodes.add(jarNode);
+      }
+
+      jar.classes.stream().filter(c -> c.getId() == null).forEach(created::add);
+    }
+
+    List<Future<?>> nodeWrites = new ArrayList<>();
+    Lists.partition(new ArrayList<>(created), writeBatchSize)
+            .forEach(b -> nodeWrites.add(submit(() -> QueryUtil.writeClassNodes(graphDb, b, false))));
+    Lists.partition(jarNodes, writeBatchSize)
+            .forEach(b -> nodeWrites.add(submit(() -> QueryUtil.writeJarNodes(graphDb, b))));
+    awaitAll(nodeWrites);
+
+    for(JarNode jarNode : jarNodes) {
+      Lists.partition(new ArrayList<>(jarNode.getClassNodes()), writeBatchSize)
+              .forEach(b -> submit(() -> QueryUtil.writeClassToJarRels(graphDb, jarNode, b)));
+    }
+
+    Lists.partition(jarNodes, writeBatchSize).forEach(b -> submit(() -> QueryUtil.writeNestedJarRels(graphDb, b)));
+  }
+
+  private Future<?> submit(Runnable write) {
+    writes.acquireUninterruptibly();
+
+    return writePool.submit(() -> {
+      try {
+        if(writeFailure == null) {
+          write.run();
+        }
+      } catch(RuntimeException re) {
+        LOG.error("Graph write failed", re);
+
+        synchronized(this) {
+          if(writeFailure == null) {
+            writeFailure = re;
+          }
+        }
+      } finally {
+        writes.release();
+      }
+    });
+  }
+
+  private void checkWrites() throws IOException {
+    if(writeFailure != null) {
+      throw new IOException("Failed to write graph", writeFailure);
+    }
+  }
+
+  private void awaitWrites() {
+    writes.acquireUninterruptibly(queueSize);
+    writes.release(queueSize);
+  }
+
+  private static void awaitAll(List<Future<?>> futures) throws InterruptedException {
+    for(Future<?> future : futures) {
+      try {
+        future.get();
+      } catch(ExecutionException ee) {
+        // Logged by the write itself
+      }
+    }
+  }
+
+  // A parsed jar with the references of its classes and those of its nested jars, or a failed one
+  private static class ParsedJar {
+
+    private static final ParsedJar END = new ParsedJar(null, null, null);
+
+    private final JarNode jarNode;
+
+    private final Multimap<String, String> references;
+
+    private final IOException failure;
+
+    // Filled in when the nodes are written, each class once
+    private final Set<ClassNode> classes = new LinkedHashSet<>();
+
+    private ParsedJar(JarNode jarNode, Multimap<String, String> references, IOException failure) {
+      this.jarNode = jarNode;
+      this.references = references;
+      this.failure = failure;
+    }
+  }
+
+  /*
+   * Turns the references of each written jar into relationships. Runs on its own thread so node
+   * writes for the next jars go on while relationships are worked out.
+   */
+  private class EdgeWriter implements Runnable {
+
+    private final BlockingQueue<ParsedJar> queue = new ArrayBlockingQueue<>(queueSize);
+
+    private final Map<String, ClassNode> userClasses = new HashMap<>();
+
+    private final Multimap<String, String> userReferences;
+
+    private final Map<String, ClassNode> externalClassNodes;
+
+    // Names of the jar classes with nodes so far
+    private final Set<String> written = new HashSet<>();
+
+    // Class names not written yet mapped to the classes depending on them
+    private final Map<String, Set<ClassNode>> waiting = new HashMap<>();
+
+    private final List<ClassNode[]> merges = new ArrayList<>();
+
+    private List<ClassNode[]> userBatch = new ArrayList<>();
+
+    private List<ClassNode[]> classBatch = new ArrayList<>();
+
+    private long created;
+
+    // Relationships written so far, merges included
+    private Progress progress;
+
+    private volatile Throwable failure;
+
+    private EdgeWriter(Collection<ClassNode> userClasses, Multimap<String, String> userReferences,
+                       Map<String, ClassNode> externalClassNodes) {
+      this.userReferences = userReferences;
+      this.externalClassNodes = externalClassNodes;
+
+      // No jar class has a node yet, so every user class dependency waits
+      for(ClassNode userClass : userClasses) {
+        this.userClasses.put(userClass.getName(), userClass);
+        link(userClass, userReferences.get(userClass.getName()), true);
+      }
+    }
+
+    @Override
+    public void run() {
+      progress = Progress.start("Writing dependency relationships");
+
+      try {
+        for(ParsedJar jar = queue.take();jar != ParsedJar.END;jar = queue.take()) {
+          add(jar);
+        }
+
+        flush(true);
+        flush(false);
+        awaitWrites();
+
+        // Merges may repeat relationships created above, so they wait until those are written
+        LOG.info("Created {} class dependency relationships, merging {} more", created, merges.size());
+        for(boolean custom : new boolean[] { true, false }) {
+          List<ClassNode[]> relationships = merges.stream()
+                  .filter(r -> r[0].isCustom() == custom)
+                  .collect(Collectors.toList());
+
+          for(List<ClassNode[]> batch : Lists.partition(relationships, writeBatchSize)) {
+            QueryUtil.mergeClassToClassRels(graphDb, batch, custom);
+            progress.add(batch.size());
+          }
+        }
+      } catch(InterruptedException ie) {
+        Thread.currentThread().interrupt();
+      } catch(RuntimeException re) {
+        failure = re;
+      } finally {
+        progress.close();
+      }
+    }
+
+    private void add(ParsedJar jar) {
+      Set<ClassNode> first = Collections.newSetFromMap(new IdentityHashMap<>());
+
+      for(ClassNode jarClass : jar.classes) {
+        if(written.add(jarClass.getName())) {
+          first.add(jarClass);
+
+          Set<ClassNode> dependents = waiting.remove(jarClass.getName());
+          if(dependents != null) {
+            dependents.forEach(d -> create(d, jarClass));
+          }
+        }
+      }
+
+      for(ClassNode jarClass : jar.classes) {
+        Collection<String> references = jar.references.get(jarClass.getName());
+
+        if(first.contains(jarClass)) {
+          Set<String> all = new HashSet<>(references);
+          all.addAll(userReferences.get(jarClass.getName()));
+          link(jarClass, all, true);
+        } else {
+          link(jarClass, references, false);
+        }
+
+        ClassNode userClass = userClasses.get(jarClass.getName());
+        if(userClass != null) {
+          link(userClass, references, false);
+        }
+      }
+    }
+
+    private void link(ClassNode classNode, Collection<String> references, boolean create) {
+      for(String reference : references) {
+        if(reference.equals(classNode.getName())) {
+          continue;
+        }
+
+        if(!written.contains(reference)) {
+          waiting.computeIfAbsent(reference, r -> Collections.newSetFromMap(new IdentityHashMap<>()))
+                  .add(classNode);
+        } else if(create) {
+          create(classNode, externalClassNodes.get(reference));
+        } else {
+          merges.add(new ClassNode[] { classNode, externalClassNodes.get(reference) });
+        }
+      }
+    }
+
+    private void create(ClassNode classNode, ClassNode dependency) {
+      List<ClassNode[]> batch = classNode.isCustom() ? userBatch : classBatch;
+      batch.add(new ClassNode[] { classNode, dependency });
+      created++;
+
+      if(batch.size() >= writeBatchSize) {
+        flush(classNode.isCustom());
+      }
+    }
+
+    private void flush(boolean custom) {
+      List<ClassNode[]> batch = custom ? userBatch : classBatch;
+
+      if(custom) {
+        userBatch = new ArrayList<>();
+      } else {
+        classBatch = new ArrayList<>();
+      }
+
+      if(!batch.isEmpty()) {
+        submit(() -> {
+          QueryUtil.writeClassToClassRels(graphDb, batch, custom);
+          progress.add(batch.size());
+        });
+      }
+    }
+  }
+}
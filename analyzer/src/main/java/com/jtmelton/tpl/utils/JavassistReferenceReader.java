@@ -0,0 +1,34 @@
+package com.jtmelton.tpl.utils;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+public class JavassistReferenceReader implements ClassReferenceReader {
+
+  @Override
+  public ClassReferences read(ByteBuffer classFile) throws IOException {
+    // A pool per class keeps CtClass instances from piling up for the life of a jar
+    ClassPool classPool = new ClassPool();
+
+    try(InputStream is = toInputStream(classFile)) {
+      CtClass ctClass = classPool.makeClass(is);
+      return new ClassReferences(ctClass.getName(), ctClass.getRefClasses());
+    }
+  }
+
+  private InputStream toInputStream(ByteBuffer buffer) {
+    if(buffer.hasArray()) {
+      return new ByteArrayInputStream(buffer.array(), buffer.arrayOffset() + buffer.position(),
+              buffer.remaining());
+    }
+
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.duplicate().get(bytes);
+    return new ByteArrayInputStream(bytes);
+  }
+}
@@ -0,0 +1,316 @@
+package com.jtmelton.tpl.utils;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multimap;
+import com.jtmelton.tpl.domain.ClassNode;
+import com.jtmelton.tpl.domain.JarNode;
+import com.jtmelton.tpl.metrics.Counter;
+import com.jtmelton.tpl.metrics.Histogram;
+import com.jtmelton.tpl.metrics.Metrics;
+import com.jtmelton.tpl.metrics.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Collectors;
+
+public class JavassistUtil {
+
+  private static final Logger LOG = LoggerFactory.getLogger(JavassistUtil.class);
+
+  // Number of class files handed to a single task when scanning in parallel
+  private static final int CLASS_BATCH_SIZE = 256;
+
+  private static final Timer PARSE_CLASS_TIMER = Metrics.timer("parse.class");
+
+  private static final Counter BYTES_READ = Metrics.counter("read.bytes");
+
+  private static final Histogram REFERENCES = Metrics.histogram("parse.references");
+
+  private static final Timer PARSE_JAR_TIMER = Metrics.timer("parse.jar");
+
+  public static Collection<ClassNode> analyzeUserClassFiles(Collection<Path> paths,
+                                                            Set<String> customClasses,
+                                                            Multimap<String, String> classToUsedClassesMap,
+                                                            ClassReferenceReader reader,
+                                                            ForkJoinPool pool) throws IOException {
+    List<ForkJoinTask<ClassFileBatch>> tasks = new ArrayList<>();
+
+    for (List<Path> batch : Lists.partition(new ArrayList<>(paths), CLASS_BATCH_SIZE)) {
+      tasks.add(pool.submit(() -> readClassFileBatch(batch, reader)));
+    }
+
+    List<ClassFileBatch> batches = joinAll(tasks);
+
+    // User classes can only be filtered out once every user class name is known
+    batches.forEach(b -> b.classNodes.forEach(c -> customClasses.add(c.getName())));
+
+    Collection<ClassNode> classNodes = new ArrayList<>();
+
+    for (ClassFileBatch batch : batches) {
+      for (Map.Entry<String, Collection<String>> entry : batch.referencedClasses.asMap().entrySet()) {
+        String className = entry.getKey();
+
+        Collection<String> filteredClasses = entry.getValue().stream()
+                .filter(c -> !customClasses.contains(c) && !className.equals(c))
+                .collect(Collectors.toList());
+
+        classToUsedClassesMap.putAll(className, filteredClasses);
+      }
+
+      classNodes.addAll(batch.classNodes);
+    }
+
+    return classNodes;
+  }
+
+  public static Collection<JarNode> analyzeJarFiles(Collection<Path> jars,
+                                                    ConcurrentMap<String, ClassNode> externalClassNodes,
+                                                    Multimap<String, String> classToUsedClassesMap,
+                                                    ClassReferenceReader reader,
+                                                    ForkJoinPool pool) throws IOException {
+    return analyzeJarFiles(groupJarsByHash(jars, pool), externalClassNodes, classToUsedClassesMap, reader, pool);
+  }
+
+  // Each distinct jar is analyzed once, from the first path it was found at
+  public static Collection<JarNode> analyzeJarFiles(Map<String, List<Path>> jarsByHash,
+                                                    ConcurrentMap<String, ClassNode> externalClassNodes,
+                                                    Multimap<String, String> classToUsedClassesMap,
+                                                    ClassReferenceReader reader,
+                                                    ForkJoinPool pool) throws IOException {
+    List<ForkJoinTask<JarNode>> tasks = new ArrayList<>();
+
+    for (Map.Entry<String, List<Path>> jar : jarsByHash.entrySet()) {
+      tasks.add(pool.submit(() -> analyzeJarFile(jar.getValue(), jar.getKey(), externalClassNodes,
+              classToUsedClassesMap, reader)));
+    }
+
+    // Joining in submission order keeps the jars in the order they were found
+    return joinAll(tasks);
+  }
+
+  // Content hash to every path with that content, in the order the jars were given
+  public static Map<String, List<Path>> groupJarsByHash(Collection<Path> jars, ForkJoinPool pool) throws IOException {
+    List<ForkJoinTask<String>> tasks = new ArrayList<>();
+
+    for (Path jar : jars) {
+      tasks.add(pool.submit(() -> FileHashUtil.sha256(jar)));
+    }
+
+    Map<String, List<Path>> jarsByHash = new LinkedHashMap<>();
+
+    Iterator<Path> paths = jars.iterator();
+    for (String hash : joinAll(tasks)) {
+      jarsByHash.computeIfAbsent(hash, h -> new ArrayList<>()).add(paths.next());
+    }
+
+    return jarsByHash;
+  }
+
+  static JarNode analyzeJarFile(List<Path> paths,
+                                String hash,
+                                Map<String, ClassNode> externalClassNodes,
+                                Multimap<String, String> classToUsedClassesMap,
+                                ClassReferenceReader reader) throws IOException {
+    long start = PARSE_JAR_TIMER.start();
+    Path jar = paths.get(0);
+
+    JarNode jarNode = new JarNode();
+    jarNode.setName(jar.toFile().getPath());
+    paths.forEach(p -> jarNode.addPath(p.toFile().getPath()));
+    jarNode.setHash(hash);
+    jarNode.setSize(Files.size(jar));
+    jarNode.setLastModified(Files.getLastModifiedTime(jar).toMillis());
+
+    JarVisitor visitor = new JarVisitor(jarNode, externalClassNodes, reader);
+
+    try {
+      MappedJarReader.readEntries(jar, visitor);
+    } finally {
+      // Classes read before a failure are still recorded
+      visitor.record(classToUsedClassesMap);
+    }
+
+    analyzeNestedJars(jarNode, visitor.archives, externalClassNodes, classToUsedClassesMap, reader);
+
+    PARSE_JAR_TIMER.stop(start);
+    return jarNode;
+  }
+
+  // Nested jars are read in memory, forked onto the scan pool when there is one
+  private static void analyzeNestedJars(JarNode container,
+                                        List<MappedJarReader.NestedArchive> archives,
+                                        Map<String, ClassNode> externalClassNodes,
+                                        Multimap<String, String> classToUsedClassesMap,
+                                        ClassReferenceReader reader) throws IOException {
+    List<JarNode> nestedJars = new ArrayList<>();
+
+    if (ForkJoinTask.inForkJoinPool()) {
+      List<ForkJoinTask<JarNode>> tasks = new ArrayList<>();
+
+      for (MappedJarReader.NestedArchive archive : archives) {
+        tasks.add(ForkJoinTask.adapt(() -> analyzeNestedJar(container, archive, externalClassNodes,
+                classToUsedClassesMap, reader)).fork());
+      }
+
+      nestedJars.addAll(joinAll(tasks));
+    } else {
+      for (MappedJarReader.NestedArchive archive : archives) {
+        nestedJars.add(analyzeNestedJar(container, archive, externalClassNodes, classToUsedClassesMap, reader));
+      }
+    }
+
+    nestedJars.stream().filter(Objects::nonNull).forEach(container::addNestedJar);
+  }
+
+  // A nested jar is found wherever its container is. Returns null if it can't be read
+  private static JarNode analyzeNestedJar(JarNode container,
+                                          MappedJarReader.NestedArchive archive,
+                                          Map<String, ClassNode> externalClassNodes,
+                                          Multimap<String, String> classToUsedClassesMap,
+                                          ClassReferenceReader reader) throws IOException {
+    String entry = "!/" + archive.getName();
+
+    JarNode jarNode = new JarNode();
+    jarNode.setName(container.getName() + entry);
+    container.getPaths().forEach(p -> jarNode.addPath(p + entry));
+    jarNode.setSize(archive.getSize());
+    jarNode.setLastModified(container.getLastModified());
+
+    JarVisitor visitor = new JarVisitor(jarNode, externalClassNodes, reader);
+
+    try {
+      ByteBuffer content = archive.read();
+      jarNode.setHash(FileHashUtil.sha256(content));
+
+      MappedJarReader.readEntries(content, jarNode.getName(), visitor);
+    } catch (IOException ioe) {
+      LOG.warn("Skipping nested jar {}", jarNode.getName(), ioe);
+      return null;
+    } finally {
+      visitor.record(classToUsedClassesMap);
+    }
+
+    analyzeNestedJars(jarNode, visitor.archives, externalClassNodes, classToUsedClassesMap, reader);
+
+    return jarNode;
+  }
+
+  private static ClassFileBatch readClassFileBatch(Collection<Path> paths,
+                                                   ClassReferenceReader reader) throws IOException {
+    ClassFileBatch batch = new ClassFileBatch();
+
+    for (Path path : paths) {
+      ClassReferences classFile = readClassFile(reader, path);
+
+      ClassNode classNode = new ClassNode();
+      classNode.setName(classFile.getName());
+      classNode.setCustom(true);
+
+      batch.referencedClasses.putAll(classNode.getName(), classFile.getReferencedClasses());
+      batch.classNodes.add(classNode);
+    }
+
+    return batch;
+  }
+
+  private static ClassReferences readClassFile(ClassReferenceReader reader, Path path) throws IOException {
+    return readClass(reader, ByteBuffer.wrap(Files.readAllBytes(path)));
+  }
+
+  private static ClassReferences readClass(ClassReferenceReader reader, ByteBuffer classBytes) throws IOException {
+    BYTES_READ.add(classBytes.remaining());
+
+    long start = PARSE_CLASS_TIMER.start();
+    ClassReferences classFile = reader.read(classBytes);
+    PARSE_CLASS_TIMER.stop(start);
+
+    REFERENCES.record(classFile.getReferencedClasses().size());
+    return classFile;
+  }
+
+  private static <T> List<T> joinAll(List<ForkJoinTask<T>> tasks) throws IOException {
+    List<T> results = new ArrayList<>(tasks.size());
+
+    try {
+      for (ForkJoinTask<T> task : tasks) {
+        results.add(task.get());
+      }
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while scanning class files", ie);
+    } catch (ExecutionException ee) {
+      if (ee.getCause() instanceof IOException) {
+        throw (IOException) ee.getCause();
+      } else if (ee.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) ee.getCause();
+      }
+
+      throw new IOException("Failed to scan class files", ee.getCause());
+    }
+
+    return results;
+  }
+
+  // Adds the classes of one jar to its node and keeps its nested jars for later
+  private static class JarVisitor implements MappedJarReader.EntryVisitor {
+    private final JarNode jarNode;
+
+    private final Map<String, ClassNode> externalClassNodes;
+
+    private final ClassReferenceReader reader;
+
+    private final Multimap<String, String> usedClasses = HashMultimap.create();
+
+    private final List<MappedJarReader.NestedArchive> archives = new ArrayList<>();
+
+    private JarVisitor(JarNode jarNode, Map<String, ClassNode> externalClassNodes, ClassReferenceReader reader) {
+      this.jarNode = jarNode;
+      this.externalClassNodes = externalClassNodes;
+      this.reader = reader;
+    }
+
+    @Override
+    public void visitClass(ByteBuffer classBytes) throws IOException {
+      ClassReferences classFile = readClass(reader, classBytes);
+
+      ClassNode classNode = externalClassNodes.computeIfAbsent(classFile.getName(), name -> {
+        ClassNode newNode = new ClassNode();
+        newNode.setName(name);
+        newNode.setCustom(false);
+        return newNode;
+      });
+
+      usedClasses.putAll(classNode.getName(), classFile.getReferencedClasses());
+
+      jarNode.addClassFile(classNode);
+    }
+
+    @Override
+    public void visitArchive(MappedJarReader.NestedArchive archive) {
+      archives.add(archive);
+    }
+
+    private void record(Multimap<String, String> classToUsedClassesMap) {
+      synchronized (classToUsedClassesMap) {
+        classToUsedClassesMap.putAll(usedClasses);
+      }
+    }
+  }
+
+  // Class nodes and unfiltered references read from one batch of user class files
+  private static class ClassFileBatch {
+    private final List<ClassNode> classNodes = new ArrayList<>();
+
+    private final Multimap<String, String> referencedClasses = HashMultimap.create();
+  }
+}
@@ -0,0 +1,380 @@
+package com.jtmelton.tpl.utils;
+
+import com.jtmelton.tpl.results.ClassChain;
+import com.jtmelton.tpl.results.NameDictionary;
+import org.neo4j.graphdb.*;
+
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+/*
+ * Searches out from a jar or user class one level of classesDependedOn relationships at a time
+ * within a time budget. Shallow levels are always finished before deeper ones are started, so a
+ * search that runs out of time keeps every chain up to the depth it reached instead of starting
+ * over at a lower depth.
+ *
+ * A breadth first pass marks every node within the search depth and how far each one is from
+ * the nearest chain end. With shortestOnly that pass is the whole search. Otherwise every path
+ * is enumerated by iterative deepening with the same relationship uniqueness rule Cypher uses,
+ * only stepping to nodes that can still end a chain at the current depth.
+ *
+ * Relationships are walked in name then id order of the node at the other end, so which chain is
+ * found first doesn't depend on how the store lays them out and matches the in memory graph.
+ */
+public class LevelTraversal {
+
+  private static final Label USER_CLASS = Label.label("UserClass");
+
+  private static final RelationshipType CLASSES = RelationshipType.withName("classes");
+
+  private static final RelationshipType CLASSES_DEPENDED_ON = RelationshipType.withName("classesDependedOn");
+
+  private final GraphDatabaseService graphDb;
+
+  // Dependents are followed from a jar, dependencies from a user class
+  private final boolean fromJar;
+
+  private final int maxDepth;
+
+  private final long deadline;
+
+  private final NameDictionary names;
+
+  private final Map<Long, String> nodeNames = new HashMap<>();
+
+  private final Map<Long, List<Relationship>> dependencies = new HashMap<>();
+
+  private int depthReached;
+
+  // Last nodes of the chains reported at the depth being enumerated
+  private final Set<Long> endsAtDepth = new HashSet<>();
+
+  private boolean timedOut;
+
+  private LevelTraversal(GraphDatabaseService graphDb, boolean fromJar, int maxDepth, int timeoutMinutes,
+                         NameDictionary names) {
+    this.graphDb = graphDb;
+    this.fromJar = fromJar;
+    this.maxDepth = maxDepth;
+    this.deadline = System.nanoTime() + MINUTES.toNanos(timeoutMinutes);
+    this.names = names;
+  }
+
+  // Chains run from the jar through one of its classes and its dependents to a user class
+  public static LevelTraversal fromJar(GraphDatabaseService graphDb, int maxDepth, int timeoutMinutes,
+                                       NameDictionary names) {
+    return new LevelTraversal(graphDb, true, maxDepth, timeoutMinutes, names);
+  }
+
+  // Chains run from the user class through the classes it depends on to an owning jar
+  public static LevelTraversal fromUserClass(GraphDatabaseService graphDb, int maxDepth, int timeoutMinutes,
+                                             NameDictionary names) {
+    return new LevelTraversal(graphDb, false, maxDepth, timeoutMinutes, names);
+  }
+
+  // Must run inside a transaction. Returns false if the time budget ran out before maxDepth
+  public boolean search(long startId, boolean shortestOnly, Consumer<ClassChain> chains) {
+    Node start = graphDb.getNodeById(startId);
+
+    List<Node> roots = new ArrayList<>();
+    Map<Long, Long> parents = new HashMap<>();
+    parents.put(startId, -1L);
+
+    if(fromJar) {
+      for(Relationship jarClass : sorted(start, start.getRelationships(Direction.INCOMING, CLASSES))) {
+        if(parents.putIfAbsent(jarClass.getStartNodeId(), startId) == null) {
+          roots.add(jarClass.getStartNode());
+        }
+      }
+    } else {
+      roots.add(start);
+    }
+
+    Set<Long> ends = new HashSet<>();
+
+    if(shortestOnly) {
+      sweep(roots, parents, ends, chains);
+      return !timedOut;
+    }
+
+    // The shortest chains are only kept in case the budget runs out before every path is enumerated
+    List<ClassChain> shortest = new ArrayList<>();
+    Map<Long, Integer> levels = sweep(roots, parents, ends, shortest::add);
+
+    if(timedOut) {
+      shortest.forEach(chains);
+      return false;
+    }
+
+    depthReached = 0;
+    Map<Long, Integer> hopsToEnd = hopsToEnd(ends, levels);
+
+    if(!timedOut) {
+      enumerate(start, roots, hopsToEnd, chains);
+    }
+
+    if(timedOut) {
+      // Every chain up to depthReached was enumerated. Past that the sweep's chains are all there is,
+      // except to ends the unfinished depth already reported a chain for
+      for(ClassChain chain : shortest) {
+        int depth = chain.size() - 2;
+        boolean reported = depth == depthReached + 1 && endsAtDepth.contains(chain.getId(chain.size() - 1));
+
+        if(depth > depthReached && !reported) {
+          chains.accept(chain);
+        }
+      }
+    }
+
+    return !timedOut;
+  }
+
+  // The deepest level every chain was found for
+  public int getDepthReached() {
+    return depthReached;
+  }
+
+  // Breadth first pass returning the level of every node reached. Ends are the nodes a chain can
+  // finish at, the first chain found to each of them is reported
+  private Map<Long, Integer> sweep(List<Node> roots, Map<Long, Long> parents, Set<Long> ends,
+                                   Consumer<ClassChain> chains) {
+    Map<Long, Integer> levels = new HashMap<>();
+    roots.forEach(root -> levels.put(root.getId(), 0));
+
+    List<Node> frontier = new ArrayList<>(roots);
+
+    for(int level = 1;level <= maxDepth && !frontier.isEmpty();level++) {
+      List<Node> next = new ArrayList<>();
+
+      for(Node node : frontier) {
+        if(expired()) {
+          return levels;
+        }
+
+        for(Relationship dependency : dependencies(node)) {
+          Node other = dependency.getOtherNode(node);
+
+          if(levels.putIfAbsent(other.getId(), level) != null) {
+            continue;
+          }
+
+          parents.put(other.getId(), node.getId());
+
+          if(fromJar && other.hasLabel(USER_CLASS)) {
+            ends.add(other.getId());
+            chains.accept(chainTo(other.getId(), parents));
+            continue;
+          }
+
+          if(!fromJar) {
+            for(Relationship owner : sorted(other, other.getRelationships(Direction.OUTGOING, CLASSES))) {
+              ends.add(other.getId());
+
+              // Jars are never reached through dependencies, so they can share the parent marks
+              if(parents.putIfAbsent(owner.getEndNodeId(), other.getId()) == null) {
+                chains.accept(chainTo(owner.getEndNodeId(), parents));
+              }
+            }
+          }
+
+          next.add(other);
+        }
+      }
+
+      depthReached = level;
+      frontier = next;
+    }
+
+    depthReached = maxDepth;
+
+    return levels;
+  }
+
+  // Walks back from every end through the nodes of the sweep, giving the fewest hops from
+  // each of them to an end
+  private Map<Long, Integer> hopsToEnd(Set<Long> ends, Map<Long, Integer> levels) {
+    Map<Long, Integer> hops = new HashMap<>();
+    List<Long> frontier = new ArrayList<>(ends);
+    ends.forEach(end -> hops.put(end, 0));
+
+    for(int hop = 1;hop <= maxDepth && !frontier.isEmpty();hop++) {
+      List<Long> next = new ArrayList<>();
+
+      for(long id : frontier) {
+        if(expired()) {
+          return hops;
+        }
+
+        Node node = graphDb.getNodeById(id);
+        for(Relationship dependency : node.getRelationships(direction().reverse(), CLASSES_DEPENDED_ON)) {
+          long other = dependency.getOtherNodeId(id);
+
+          if(levels.containsKey(other) && hops.putIfAbsent(other, hop) == null) {
+            next.add(other);
+          }
+        }
+      }
+
+      frontier = next;
+    }
+
+    return hops;
+  }
+
+  // Reports every chain one depth at a time, so a search that runs out of time has every chain
+  // shorter than the depth it was on
+  private void enumerate(Node start, List<Node> roots, Map<Long, Integer> hopsToEnd,
+                         Consumer<ClassChain> chains) {
+    int offset = fromJar ? 1 : 0;
+    Node[] path = new Node[maxDepth + 2];
+    long[] relationships = new long[maxDepth];
+    path[0] = start;
+
+    depthReached = 0;
+
+    for(int depth = 1;depth <= maxDepth;depth++) {
+      endsAtDepth.clear();
+
+      for(Node root : roots) {
+        if(!hopsToEnd.containsKey(root.getId())) {
+          continue;
+        }
+
+        path[offset] = root;
+
+        if(!trails(path, relationships, offset, 0, depth, hopsToEnd, chains)) {
+          return;
+        }
+      }
+
+      depthReached = depth;
+    }
+  }
+
+  private boolean trails(Node[] path, long[] relationships, int offset, int length, int depth,
+                         Map<Long, Integer> hopsToEnd, Consumer<ClassChain> chains) {
+    if(expired()) {
+      return false;
+    }
+
+    Node node = path[offset + length];
+
+    if(length == depth) {
+      if(fromJar) {
+        endsAtDepth.add(node.getId());
+        chains.accept(toChain(path, offset + length + 1));
+      } else {
+        for(Relationship owner : sorted(node, node.getRelationships(Direction.OUTGOING, CLASSES))) {
+          path[offset + length + 1] = owner.getEndNode();
+          endsAtDepth.add(owner.getEndNodeId());
+          chains.accept(toChain(path, offset + length + 2));
+        }
+      }
+
+      return true;
+    }
+
+    for(Relationship dependency : dependencies(node)) {
+      if(contains(relationships, length, dependency.getId())) {
+        continue;
+      }
+
+      Node other = dependency.getOtherNode(node);
+      Integer hops = hopsToEnd.get(other.getId());
+
+      // Chains end at the first user class, and every step has to leave room to reach an end
+      if(hops == null || length + 1 + hops > depth || (fromJar && hops == 0 && length + 1 < depth)) {
+        continue;
+      }
+
+      path[offset + length + 1] = other;
+      relationships[length] = dependency.getId();
+
+      if(!trails(path, relationships, offset, length + 1, depth, hopsToEnd, chains)) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  // Kept for the whole search, enumeration comes back to the same nodes at every depth
+  private List<Relationship> dependencies(Node node) {
+    return dependencies.computeIfAbsent(node.getId(),
+            id -> sorted(node, node.getRelationships(direction(), CLASSES_DEPENDED_ON)));
+  }
+
+  private List<Relationship> sorted(Node node, Iterable<Relationship> relationships) {
+    return sorted(node, relationships, this::name);
+  }
+
+  // Name then id order of the node at the other end, the order the in memory graph keeps its edges in
+  static List<Relationship> sorted(Node node, Iterable<Relationship> relationships, Function<Node, String> names) {
+    List<Relationship> sorted = new ArrayList<>();
+    relationships.forEach(sorted::add);
+
+    sorted.sort(Comparator.comparing((Relationship relationship) -> names.apply(relationship.getOtherNode(node)))
+            .thenComparingLong(relationship -> relationship.getOtherNodeId(node.getId())));
+
+    return sorted;
+  }
+
+  private Direction direction() {
+    return fromJar ? Direction.INCOMING : Direction.OUTGOING;
+  }
+
+  private boolean expired() {
+    if(!timedOut && System.nanoTime() - deadline > 0) {
+      timedOut = true;
+    }
+
+    return timedOut;
+  }
+
+  private ClassChain chainTo(long id, Map<Long, Long> parents) {
+    List<Long> ids = new ArrayList<>();
+    for(long current = id;current != -1;current = parents.get(current)) {
+      ids.add(current);
+    }
+
+    Collections.reverse(ids);
+
+    long[] chainIds = new long[ids.size()];
+    String[] chainNames = new String[ids.size()];
+    for(int i = 0;i < chainIds.length;i++) {
+      chainIds[i] = ids.get(i);
+      chainNames[i] = name(graphDb.getNodeById(chainIds[i]));
+    }
+
+    return new ClassChain(chainIds, chainNames);
+  }
+
+  private ClassChain toChain(Node[] path, int length) {
+    long[] ids = new long[length];
+    String[] chainNames = new String[length];
+
+    for(int i = 0;i < length;i++) {
+      ids[i] = path[i].getId();
+      chainNames[i] = name(path[i]);
+    }
+
+    return new ClassChain(ids, chainNames);
+  }
+
+  private String name(Node node) {
+    return nodeNames.computeIfAbsent(node.getId(), id -> names.intern((String) node.getProperty("name")));
+  }
+
+  private static boolean contains(long[] values, int length, long value) {
+    for(int i = 0;i < length;i++) {
+      if(values[i] == value) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+}
@@ -0,0 +1,374 @@
+package com.jtmelton.tpl.utils;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/*
+ * Reads the class files of a jar straight from a memory mapped copy of it. The central directory
+ * is parsed here instead of going through JarFile, so there are no per entry streams and no
+ * signature verification, which only matters for loading classes and not for reading their
+ * constant pools. Stored entries are handed over as slices of the mapping, deflated ones are
+ * inflated into buffers each thread reuses from jar to jar.
+ *
+ * Jars, wars and ears inside the archive are handed over unread, so they can be read in memory
+ * by whichever thread gets to them. Spring Boot keeps its nested jars stored, so those are read
+ * straight from the outer mapping.
+ *
+ * Mappings can't be released explicitly on Java 8, each one goes away once its buffer is
+ * garbage collected.
+ */
+public class MappedJarReader {
+
+  private static final int LOCAL_HEADER = 0x04034b50;
+  private static final int CENTRAL_HEADER = 0x02014b50;
+  private static final int END_OF_DIRECTORY = 0x06054b50;
+  private static final int ZIP64_END_OF_DIRECTORY = 0x06064b50;
+  private static final int ZIP64_LOCATOR = 0x07064b50;
+
+  private static final int ZIP64_EXTRA = 0x0001;
+
+  private static final int END_OF_DIRECTORY_SIZE = 22;
+  private static final int ZIP64_LOCATOR_SIZE = 20;
+  private static final int MAX_COMMENT = 0xffff;
+
+  private static final int STORED = 0;
+  private static final int DEFLATED = 8;
+
+  private static final byte[] CLASS_SUFFIX = { '.', 'c', 'l', 'a', 's', 's' };
+
+  private static final String[] ARCHIVE_SUFFIXES = { ".jar", ".war", ".ear" };
+
+  private static final ThreadLocal<Buffers> BUFFERS = ThreadLocal.withInitial(Buffers::new);
+
+  public static boolean isArchive(String name) {
+    for(String suffix : ARCHIVE_SUFFIXES) {
+      if(name.endsWith(suffix)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  // Sends every class and nested archive entry to the visitor in central directory order. Class
+  // buffers are only valid until the visitor returns
+  public static void readEntries(Path jar, EntryVisitor visitor) throws IOException {
+    ByteBuffer zip;
+
+    try(FileChannel channel = FileChannel.open(jar, StandardOpenOption.READ)) {
+      if(channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("Jar too large to map: " + jar);
+      }
+
+      zip = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+
+    readEntries(zip, jar.toString(), visitor);
+  }
+
+  // Same for an archive already in memory, such as one read from a NestedArchive
+  public static void readEntries(ByteBuffer archive, String name, EntryVisitor visitor) throws IOException {
+    try {
+      readDirectory(archive.slice().order(ByteOrder.LITTLE_ENDIAN), name, visitor);
+    } catch(IndexOutOfBoundsException | IllegalArgumentException e) {
+      throw new IOException("Malformed jar " + name, e);
+    }
+  }
+
+  private static void readDirectory(ByteBuffer zip, String jar, EntryVisitor visitor) throws IOException {
+    int end = findEndOfDirectory(zip, jar);
+
+    long entries = u2(zip, end + 10);
+    long directorySize = u4(zip, end + 12);
+    long directoryOffset = u4(zip, end + 16);
+    long directoryEnd = end;
+
+    if(entries == 0xffff || directorySize == 0xffffffffL || directoryOffset == 0xffffffffL) {
+      int locator = end - ZIP64_LOCATOR_SIZE;
+
+      if(locator >= 0 && zip.getInt(locator) == ZIP64_LOCATOR) {
+        int zip64End = toInt(zip.getLong(locator + 8), jar);
+        if(zip.getInt(zip64End) != ZIP64_END_OF_DIRECTORY) {
+          throw new IOException("Bad zip64 end of central directory in " + jar);
+        }
+
+        entries = zip.getLong(zip64End + 32);
+        directorySize = zip.getLong(zip64End + 40);
+        directoryOffset = zip.getLong(zip64End + 48);
+        directoryEnd = zip64End;
+      }
+    }
+
+    // Offsets are relative to the start of the archive, which isn't the start of the file when
+    // something like a launch script has been prepended
+    long base = directoryEnd - directorySize - directoryOffset;
+    int position = toInt(base + directoryOffset, jar);
+
+    for(long i = 0;i < entries;i++) {
+      if(zip.getInt(position) != CENTRAL_HEADER) {
+        throw new IOException("Bad central directory entry in " + jar);
+      }
+
+      int flags = u2(zip, position + 8);
+      int method = u2(zip, position + 10);
+      long compressedSize = u4(zip, position + 20);
+      long size = u4(zip, position + 24);
+      int nameLength = u2(zip, position + 28);
+      int extraLength = u2(zip, position + 30);
+      int commentLength = u2(zip, position + 32);
+      long localOffset = u4(zip, position + 42);
+      int name = position + 46;
+
+      boolean isClass = isClass(zip, name, nameLength);
+      String archiveName = isClass ? null : archiveName(zip, name, nameLength);
+
+      if(isClass || archiveName != null) {
+        // Sizes and offset too large for their fields are in the zip64 extra field, in this order
+        int extra = name + nameLength;
+        int extraEnd = extra + extraLength;
+
+        while(extra + 4 <= extraEnd) {
+          int id = u2(zip, extra);
+          int dataLength = u2(zip, extra + 2);
+          int field = extra + 4;
+
+          if(id == ZIP64_EXTRA) {
+            if(size == 0xffffffffL) {
+              size = zip.getLong(field);
+              field += 8;
+            }
+            if(compressedSize == 0xffffffffL) {
+              compressedSize = zip.getLong(field);
+              field += 8;
+            }
+            if(localOffset == 0xffffffffL) {
+              localOffset = zip.getLong(field);
+            }
+          }
+
+          extra += 4 + dataLength;
+        }
+
+        if((flags & 1) != 0) {
+          throw new IOException("Encrypted entry in " + jar);
+        }
+
+        int local = toInt(base + localOffset, jar);
+        if(zip.getInt(local) != LOCAL_HEADER) {
+          throw new IOException("Bad local header in " + jar);
+        }
+
+        int data = local + 30 + u2(zip, local + 26) + u2(zip, local + 28);
+
+        if(isClass) {
+          visitor.visitClass(entry(zip, data, toInt(compressedSize, jar), toInt(size, jar), method, jar));
+        } else {
+          visitor.visitArchive(new NestedArchive(zip, jar, archiveName, data, toInt(compressedSize, jar),
+                  toInt(size, jar), method));
+        }
+      }
+
+      position = name + nameLength + extraLength + commentLength;
+    }
+  }
+
+  private static ByteBuffer entry(ByteBuffer zip, int data, int compressedSize, int size, int method,
+                                  String jar) throws IOException {
+    if(method == STORED) {
+      return slice(zip, data, size);
+    }
+
+    return inflate(zip, data, compressedSize, BUFFERS.get().output(size), size, method, jar);
+  }
+
+  private static ByteBuffer inflate(ByteBuffer zip, int data, int compressedSize, byte[] output, int size,
+                                    int method, String jar) throws IOException {
+    if(method != DEFLATED) {
+      throw new IOException("Unsupported compression method " + method + " in " + jar);
+    }
+
+    Buffers buffers = BUFFERS.get();
+    byte[] input = buffers.input(compressedSize + 1);
+
+    // Raw inflation may need one byte past the compressed data, same as ZipFile provides
+    slice(zip, data, compressedSize).get(input, 0, compressedSize);
+    input[compressedSize] = 0;
+
+    Inflater inflater = buffers.inflater;
+    inflater.reset();
+    inflater.setInput(input, 0, compressedSize + 1);
+
+    try {
+      int inflated = 0;
+
+      while(inflated < size && !inflater.finished()) {
+        int count = inflater.inflate(output, inflated, size - inflated);
+
+        if(count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          break;
+        }
+
+        inflated += count;
+      }
+
+      if(inflated != size) {
+        throw new IOException("Truncated entry in " + jar);
+      }
+    } catch(DataFormatException dfe) {
+      throw new IOException("Corrupt entry in " + jar, dfe);
+    }
+
+    return ByteBuffer.wrap(output, 0, size);
+  }
+
+  private static int findEndOfDirectory(ByteBuffer zip, String jar) throws IOException {
+    int last = zip.capacity() - END_OF_DIRECTORY_SIZE;
+
+    for(int position = last;position >= 0 && position >= last - MAX_COMMENT;position--) {
+      if(zip.getInt(position) == END_OF_DIRECTORY) {
+        return position;
+      }
+    }
+
+    throw new IOException("Not a jar, no end of central directory in " + jar);
+  }
+
+  private static boolean isClass(ByteBuffer zip, int name, int nameLength) {
+    if(nameLength < CLASS_SUFFIX.length) {
+      return false;
+    }
+
+    int suffix = name + nameLength - CLASS_SUFFIX.length;
+    for(int i = 0;i < CLASS_SUFFIX.length;i++) {
+      if(zip.get(suffix + i) != CLASS_SUFFIX[i]) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  // Entry name if it is a nested archive, otherwise null
+  private static String archiveName(ByteBuffer zip, int name, int nameLength) {
+    byte[] bytes = new byte[nameLength];
+    slice(zip, name, nameLength).get(bytes);
+
+    String entryName = new String(bytes, StandardCharsets.UTF_8);
+    return isArchive(entryName) ? entryName : null;
+  }
+
+  private static ByteBuffer slice(ByteBuffer zip, int position, int length) {
+    ByteBuffer slice = zip.duplicate();
+    ((Buffer) slice).limit(position + length);
+    ((Buffer) slice).position(position);
+    return slice.slice();
+  }
+
+  private static int u2(ByteBuffer zip, int position) {
+    return zip.getShort(position) & 0xffff;
+  }
+
+  private static long u4(ByteBuffer zip, int position) {
+    return zip.getInt(position) & 0xffffffffL;
+  }
+
+  private static int toInt(long value, String jar) throws IOException {
+    if(value < 0 || value > Integer.MAX_VALUE) {
+      throw new IOException("Entry offset or size out of range in " + jar);
+    }
+
+    return (int) value;
+  }
+
+  public interface EntryVisitor {
+    void visitClass(ByteBuffer classFile) throws IOException;
+
+    default void visitArchive(NestedArchive archive) throws IOException {
+      // nested archives are skipped unless asked for
+    }
+  }
+
+  /*
+   * A jar, war or ear entry of another archive. It keeps the outer archive in memory, so it can
+   * be read after the outer archive has been visited.
+   */
+  public static class NestedArchive {
+
+    private final ByteBuffer zip;
+
+    private final String container;
+
+    private final String name;
+
+    private final int data;
+
+    private final int compressedSize;
+
+    private final int size;
+
+    private final int method;
+
+    private NestedArchive(ByteBuffer zip, String container, String name, int data, int compressedSize,
+                          int size, int method) {
+      this.zip = zip;
+      this.container = container;
+      this.name = name;
+      this.data = data;
+      this.compressedSize = compressedSize;
+      this.size = size;
+      this.method = method;
+    }
+
+    // Entry name within the outer archive
+    public String getName() {
+      return name;
+    }
+
+    public int getSize() {
+      return size;
+    }
+
+    // Stored archives are a slice of the outer one, deflated ones are inflated into a new array
+    public ByteBuffer read() throws IOException {
+      if(method == STORED) {
+        return slice(zip, data, size);
+      }
+
+      return inflate(zip, data, compressedSize, new byte[size], size, method, container + "!/" + name);
+    }
+  }
+
+  // Grown to the largest entry a thread has read so far
+  private static class Buffers {
+
+    private final Inflater inflater = new Inflater(true);
+
+    private byte[] input = new byte[64 * 1024];
+
+    private byte[] output = new byte[64 * 1024];
+
+    private byte[] input(int length) {
+      if(input.length < length) {
+        input = new byte[Math.max(length, input.length * 2)];
+      }
+
+      return input;
+    }
+
+    private byte[] output(int length) {
+      if(output.length < length) {
+        output = new byte[Math.max(length, output.length * 2)];
+      }
+
+      return output;
+    }
+  }
+}
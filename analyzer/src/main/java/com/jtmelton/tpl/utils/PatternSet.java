@@ -0,0 +1,476 @@
+package com.jtmelton.tpl.utils;
+
+import java.util.*;
+import java.util.function.IntPredicate;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.Collectors;
+
+/*
+ * A set of regexes compiled once and matched against whole strings, the same as testing each
+ * with String.matches. Regexes that only say a string equals, starts with, ends with or contains
+ * some literal text, like .*-sources\.jar or .*junit.*, skip the regex engine. Those literals
+ * are merged into tries, contains literals into an Aho-Corasick automaton, so each string is
+ * scanned once however many there are. A regex with some literal text every match has to
+ * contain, like lib- in .*lib-[0-9.]+\.jar, is only tried on strings that automaton finds that
+ * text in. Every other regex is joined into one alternation, unless joining could change what it
+ * or the regexes after it match, those are tried one at a time.
+ *
+ * A regex dot doesn't match line terminators, so a string containing one is only tested against
+ * the compiled regexes.
+ */
+public class PatternSet {
+
+  private static final String META_CHARACTERS = "\\.[]{}()*+?^$|";
+
+  // Back references and named groups, whose numbers and names would clash once joined, and quoted
+  // text or comments, which could run on into the regexes joined after them
+  private static final Pattern UNJOINABLE = Pattern.compile("\\\\(?:[1-9]|k<|Q)|\\(\\?<[a-zA-Z]|\\(\\?[a-zA-Z-]*x");
+
+  private static final Pattern EMBEDDED_FLAGS = Pattern.compile("\\(\\?[a-zA-Z-]");
+
+  // Escapes followed by more than one character: hex, unicode, octal, control, properties and names
+  private static final String COMPOUND_ESCAPES = "xu0cpPkN";
+
+  private static final String LINE_TERMINATORS = "\n\r\u0085\u2028\u2029";
+
+  private final boolean empty;
+
+  private final boolean matchesAll;
+
+  private final Set<String> exact = new HashSet<>();
+
+  private final Trie prefixes = new Trie();
+
+  private final Trie suffixes = new Trie();
+
+  private final Trie contains = new Trie();
+
+  // Required literals of the guarded regexes, each end node holding the indexes of its regexes
+  private final Trie guards = new Trie();
+
+  private final List<Pattern> guarded = new ArrayList<>();
+
+  // Alternation of the regexes with no literal form or required literal, null if there are none
+  private final Pattern combined;
+
+  // Regexes that can't be joined into combined
+  private final List<Pattern> separate = new ArrayList<>();
+
+  // Every other regex, for strings containing a line terminator
+  private final List<Pattern> all = new ArrayList<>();
+
+  private PatternSet(Collection<String> regexes) {
+    List<String> complex = new ArrayList<>();
+    boolean matchesAll = false;
+
+    for(String regex : regexes) {
+      // Fails on a bad regex up front, naming it
+      Pattern pattern = Pattern.compile(regex);
+
+      if(UNJOINABLE.matcher(regex).find()) {
+        separate.add(pattern);
+        continue;
+      }
+
+      all.add(pattern);
+
+      Literal literal = Literal.parse(regex);
+
+      if(literal == null) {
+        String required = Literal.required(regex);
+
+        if(required == null) {
+          complex.add(regex);
+        } else {
+          guards.add(required, false).regexes.add(guarded.size());
+          guarded.add(pattern);
+        }
+      } else if(literal.leadingWildcard && literal.trailingWildcard) {
+        matchesAll |= literal.text.isEmpty();
+        contains.add(literal.text, false);
+      } else if(literal.trailingWildcard) {
+        prefixes.add(literal.text, false);
+      } else if(literal.leadingWildcard) {
+        suffixes.add(literal.text, true);
+      } else {
+        exact.add(literal.text);
+      }
+    }
+
+    contains.link();
+    guards.link();
+
+    this.empty = regexes.isEmpty();
+    this.matchesAll = matchesAll;
+    this.combined = alternation(complex);
+  }
+
+  public static PatternSet compile(Collection<String> regexes) {
+    return new PatternSet(regexes);
+  }
+
+  public boolean isEmpty() {
+    return empty;
+  }
+
+  // True if any of the regexes matches the whole string
+  public boolean matches(String value) {
+    for(Pattern pattern : separate) {
+      if(pattern.matcher(value).matches()) {
+        return true;
+      }
+    }
+
+    if(hasLineTerminator(value)) {
+      for(Pattern pattern : all) {
+        if(pattern.matcher(value).matches()) {
+          return true;
+        }
+      }
+
+      return false;
+    }
+
+    return matchesAll
+            || exact.contains(value)
+            || prefixes.startOf(value)
+            || suffixes.endOf(value)
+            || contains.within(value)
+            || matchesGuarded(value)
+            || (combined != null && combined.matcher(value).matches());
+  }
+
+  private boolean matchesGuarded(String value) {
+    if(guarded.isEmpty()) {
+      return false;
+    }
+
+    // Several literals of one regex can be found, it is only tried once
+    boolean[] tried = new boolean[guarded.size()];
+
+    return guards.anyFound(value, index -> {
+      if(tried[index]) {
+        return false;
+      }
+
+      tried[index] = true;
+      return guarded.get(index).matcher(value).matches();
+    });
+  }
+
+  // Regexes that still don't compile once joined are tried one at a time
+  private Pattern alternation(List<String> regexes) {
+    if(regexes.isEmpty()) {
+      return null;
+    }
+
+    try {
+      return Pattern.compile(regexes.stream().map(r -> "(?:" + r + ")").collect(Collectors.joining("|")));
+    } catch(PatternSyntaxException pse) {
+      regexes.forEach(regex -> separate.add(Pattern.compile(regex)));
+      return null;
+    }
+  }
+
+  private static boolean hasLineTerminator(String value) {
+    for(int i = 0;i < value.length();i++) {
+      if(LINE_TERMINATORS.indexOf(value.charAt(i)) >= 0) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  // Literal text optionally preceded or followed by .*
+  private static class Literal {
+
+    private final String text;
+
+    private final boolean leadingWildcard;
+
+    private final boolean trailingWildcard;
+
+    private Literal(String text, boolean leadingWildcard, boolean trailingWildcard) {
+      this.text = text;
+      this.leadingWildcard = leadingWildcard;
+      this.trailingWildcard = trailingWildcard;
+    }
+
+    // Null if the regex is anything else
+    private static Literal parse(String regex) {
+      boolean leadingWildcard = regex.startsWith(".*");
+      int start = leadingWildcard ? 2 : 0;
+      int end = regex.length();
+      boolean trailingWildcard = false;
+
+      StringBuilder text = new StringBuilder();
+
+      for(int i = start;i < end;i++) {
+        char c = regex.charAt(i);
+
+        if(c == '\\') {
+          // Escaped letters and digits are classes or references, anything else stands for itself
+          if(i + 1 >= end || Character.isLetterOrDigit(regex.charAt(i + 1))) {
+            return null;
+          }
+
+          text.append(regex.charAt(++i));
+        } else if(c == '.' && i + 2 == end && regex.charAt(i + 1) == '*') {
+          trailingWildcard = true;
+          break;
+        } else if(META_CHARACTERS.indexOf(c) >= 0) {
+          return null;
+        } else {
+          text.append(c);
+        }
+      }
+
+      // .* alone is both
+      if(leadingWildcard && !trailingWildcard && text.length() == 0) {
+        trailingWildcard = true;
+      }
+
+      return new Literal(text.toString(), leadingWildcard, trailingWildcard);
+    }
+
+    // The longest run of literal text any match of the regex has to contain, or null if there is
+    // none. Only looks at the top level, groups and classes just end a run
+    private static String required(String regex) {
+      // Quoted text and flags change what the characters after them mean
+      if(regex.contains("\\Q") || EMBEDDED_FLAGS.matcher(regex).find()) {
+        return null;
+      }
+
+      String longest = "";
+      StringBuilder run = new StringBuilder();
+
+      for(int i = 0;i < regex.length();i++) {
+        char c = regex.charAt(i);
+
+        if(c == '\\' && i + 1 < regex.length()) {
+          char escaped = regex.charAt(++i);
+
+          if(!Character.isLetterOrDigit(escaped)) {
+            run.append(escaped);
+            continue;
+          }
+
+          // Escapes like hex characters and properties take up the characters after them
+          if(Character.isDigit(escaped) || COMPOUND_ESCAPES.indexOf(escaped) >= 0) {
+            return null;
+          }
+        } else if(c == '|') {
+          return null;
+        } else if(META_CHARACTERS.indexOf(c) < 0) {
+          run.append(c);
+          continue;
+        } else if((c == '?' || c == '*' || c == '{') && run.length() > 0) {
+          // The character before an optional or bounded quantifier may not be there
+          run.setLength(run.length() - 1);
+        }
+
+        longest = run.length() > longest.length() ? run.toString() : longest;
+        run.setLength(0);
+
+        if(c == '[') {
+          i = skipClass(regex, i);
+        } else if(c == '(') {
+          i = skipGroup(regex, i);
+        } else if(c == '{') {
+          i = regex.indexOf('}', i);
+        }
+
+        if(i < 0) {
+          return null;
+        }
+      }
+
+      longest = run.length() > longest.length() ? run.toString() : longest;
+
+      return longest.isEmpty() ? null : longest;
+    }
+
+    // Index of the bracket closing the class opened at start, or -1. A ] straight after the
+    // opening bracket is part of the class
+    private static int skipClass(String regex, int start) {
+      int i = start + 1;
+      if(i < regex.length() && regex.charAt(i) == '^') {
+        i++;
+      }
+      if(i < regex.length() && regex.charAt(i) == ']') {
+        i++;
+      }
+
+      for(;i < regex.length();i++) {
+        char c = regex.charAt(i);
+
+        if(c == '\\') {
+          i++;
+        } else if(c == '[') {
+          i = skipClass(regex, i);
+          if(i < 0) {
+            return -1;
+          }
+        } else if(c == ']') {
+          return i;
+        }
+      }
+
+      return -1;
+    }
+
+    // Index of the parenthesis closing the group opened at start, or -1
+    private static int skipGroup(String regex, int start) {
+      for(int i = start + 1;i < regex.length();i++) {
+        char c = regex.charAt(i);
+
+        if(c == '\\') {
+          i++;
+        } else if(c == '[') {
+          i = skipClass(regex, i);
+        } else if(c == '(') {
+          i = skipGroup(regex, i);
+        } else if(c == ')') {
+          return i;
+        }
+
+        if(i < 0) {
+          return -1;
+        }
+      }
+
+      return -1;
+    }
+  }
+
+  /*
+   * Literals stored one character per node. Walked from the start of a string it finds prefixes,
+   * built from reversed literals and walked from the end it finds suffixes, and once linked it
+   * finds literals anywhere in a string in one pass.
+   */
+  private static class Trie {
+
+    private final Node root = new Node();
+
+    private Node add(String literal, boolean reversed) {
+      Node node = root;
+
+      for(int i = 0;i < literal.length();i++) {
+        char c = literal.charAt(reversed ? literal.length() - 1 - i : i);
+        node = node.next.computeIfAbsent(c, k -> new Node());
+      }
+
+      node.terminal = true;
+      return node;
+    }
+
+    // Adds the Aho-Corasick failure links, breadth first so shorter paths are linked first
+    private void link() {
+      Deque<Node> queue = new ArrayDeque<>();
+      root.fail = root;
+
+      for(Node child : root.next.values()) {
+        child.fail = root;
+        queue.add(child);
+      }
+
+      while(!queue.isEmpty()) {
+        Node node = queue.poll();
+
+        for(Map.Entry<Character, Node> edge : node.next.entrySet()) {
+          Node fail = node.fail;
+          while(fail != root && !fail.next.containsKey(edge.getKey())) {
+            fail = fail.fail;
+          }
+
+          Node child = edge.getValue();
+          child.fail = fail.next.getOrDefault(edge.getKey(), root);
+          child.terminal |= child.fail.terminal;
+          child.regexes.addAll(child.fail.regexes);
+          queue.add(child);
+        }
+      }
+    }
+
+    private boolean startOf(String value) {
+      Node node = root;
+
+      for(int i = 0;!node.terminal;i++) {
+        if(i == value.length() || (node = node.next.get(value.charAt(i))) == null) {
+          return false;
+        }
+      }
+
+      return true;
+    }
+
+    private boolean endOf(String value) {
+      Node node = root;
+
+      for(int i = value.length() - 1;!node.terminal;i--) {
+        if(i < 0 || (node = node.next.get(value.charAt(i))) == null) {
+          return false;
+        }
+      }
+
+      return true;
+    }
+
+    // Needs the failure links
+    private boolean within(String value) {
+      if(root.next.isEmpty()) {
+        return root.terminal;
+      }
+
+      Node node = root;
+
+      for(int i = 0;i < value.length();i++) {
+        node = step(node, value.charAt(i));
+
+        if(node.terminal) {
+          return true;
+        }
+      }
+
+      return false;
+    }
+
+    // Hands the regex indexes of every literal found in the string to found, until it returns true
+    private boolean anyFound(String value, IntPredicate found) {
+      Node node = root;
+
+      for(int i = 0;i < value.length();i++) {
+        node = step(node, value.charAt(i));
+
+        for(int index : node.regexes) {
+          if(found.test(index)) {
+            return true;
+          }
+        }
+      }
+
+      return false;
+    }
+
+    private Node step(Node node, char c) {
+      while(node != root && !node.next.containsKey(c)) {
+        node = node.fail;
+      }
+
+      return node.next.getOrDefault(c, root);
+    }
+  }
+
+  private static class Node {
+
+    private final Map<Character, Node> next = new HashMap<>();
+
+    private Node fail;
+
+    private boolean terminal;
+
+    private final List<Integer> regexes = new ArrayList<>();
+  }
+}
@@ -0,0 +1,1002 @@
+package com.jtmelton.tpl.utils;
+
+import com.google.common.collect.Lists;
+import com.jtmelton.tpl.cli.Options;
+import com.jtmelton.tpl.metrics.Counter;
+import com.jtmelton.tpl.metrics.Metrics;
+import com.jtmelton.tpl.metrics.Progress;
+import com.jtmelton.tpl.metrics.Timer;
+import com.jtmelton.tpl.results.ChainCollector;
+import com.jtmelton.tpl.results.ChainSink;
+import com.jtmelton.tpl.results.ClassChain;
+import com.jtmelton.tpl.domain.ClassNode;
+import com.jtmelton.tpl.domain.JarNode;
+import org.neo4j.graphdb.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+public class QueryUtil {
+
+  private static final Logger LOG = LoggerFactory.getLogger(QueryUtil.class);
+
+  private static final String CLASSES_TO_OWNING_JARS_QUERY = "UNWIND { `batch` } AS row " +
+        "MATCH (class:Class)-[:classes]->(jar:Jar) WHERE ID(class) = row.id " +
+        "RETURN ID(class) AS id, jar.name AS name, jar.paths AS paths";
+
+  // Ids looked up per owning jar query
+  private static final int OWNING_JAR_BATCH_SIZE = 10000;
+
+  private static final String GET_ALL_JARS_QUERY = "MATCH (jar:Jar) " +
+          "RETURN collect({id: ID(jar), name: jar.name, hash: jar.hash, paths: jar.paths})";
+
+  private static final String GET_ALL_USER_CLASSES_QUERY = "MATCH (class:UserClass) RETURN collect({id: ID(class), name: class.name})";
+
+  private static final String JAR_CLASS_QUERY = "MATCH (jar:Jar) WHERE ID(jar) = { `id` } WITH jar " +
+          "MATCH (jar)<-[:classes]-(jarClass:Class) RETURN collect({id: ID(jarClass)})";
+
+  // How many dependency hops from a user class still count as using a jar
+  public static final int UNUSED_SEARCH_DEPTH = 12;
+
+  private static final String CLASS_TO_USER_QUERY = "MATCH (jarClass:Class) WHERE ID(jarClass) = { `id` } WITH jarClass " +
+          "MATCH (jarClass)<-[:classesDependedOn*.." + UNUSED_SEARCH_DEPTH + "]-(userClass:UserClass) RETURN userClass LIMIT 1";
+
+  private static final Label USER_CLASS = Label.label("UserClass");
+
+  private static final RelationshipType CLASSES = RelationshipType.withName("classes");
+
+  private static final RelationshipType CLASSES_DEPENDED_ON = RelationshipType.withName("classesDependedOn");
+
+  private static final String WRITE_JARS_QUERY = "UNWIND { `batch` } AS row " +
+          "CREATE (n:Jar { name: row.name, paths: row.paths, hash: row.hash, size: row.size, mtime: row.mtime }) " +
+          "RETURN row.index AS index, ID(n) AS id";
+
+  private static final String WRITE_CLASSES_QUERY = "UNWIND { `batch` } AS row " +
+          "CREATE (n:Class { name: row.name, custom: row.custom }) RETURN row.index AS index, ID(n) AS id";
+
+  private static final String WRITE_USER_CLASSES_QUERY = "UNWIND { `batch` } AS row " +
+          "CREATE (n:UserClass { name: row.name, custom: row.custom }) RETURN row.index AS index, ID(n) AS id";
+
+  private static final String CLASS_JAR_RELATIONSHIPS_QUERY = "UNWIND { `batch` } AS row " +
+          "MATCH (jar:Jar) WHERE ID(jar) = row.jarID WITH row, jar " +
+          "MATCH (class:Class) WHERE ID(class) = row.classID CREATE (jar)<-[rel:classes]-(class)";
+
+  private static final String NESTED_JAR_RELATIONSHIPS_QUERY = "UNWIND { `batch` } AS row " +
+          "MATCH (container:Jar) WHERE ID(container) = row.containerID WITH row, container " +
+          "MATCH (jar:Jar) WHERE ID(jar) = row.jarID CREATE (jar)-[rel:nestedIn]->(container)";
+
+  private static final String USER_CLASS_DEPCLASS_RELATIONSHIPS_QUERY = "UNWIND { `batch` } AS row " +
+          "MATCH (class:UserClass) WHERE ID(class) = row.classID WITH row, class " +
+          "MATCH (dep:Class) WHERE ID(dep) = row.depID CREATE (class)-[rel:classesDependedOn]->(dep)";
+
+  private static final String CLASS_DEPCLASS_RELATIONSHIPS_QUERY = "UNWIND { `batch` } AS row " +
+          "MATCH (class:Class) WHERE ID(class) = row.classID WITH row, class " +
+          "MATCH (dep:Class) WHERE ID(dep) = row.depID CREATE (class)-[rel:classesDependedOn]->(dep)";
+
+  // Only jars found on disk, nested jars go with their container
+  private static final String GET_ALL_JAR_STATES_QUERY = "MATCH (jar:Jar) WHERE NOT (jar)-[:nestedIn]->() " +
+          "RETURN ID(jar) AS id, jar.name AS name, jar.paths AS paths, jar.hash AS hash, jar.size AS size, " +
+          "jar.mtime AS mtime, size((jar)<-[:nestedIn]-()) AS nestedJars";
+
+  private static final String GET_CLASS_IDS_QUERY = "MATCH (class:%s) RETURN class.name AS name, ID(class) AS id";
+
+  private static final String UPDATE_JARS_QUERY = "UNWIND { `batch` } AS row " +
+          "MATCH (jar:Jar) WHERE ID(jar) = row.id " +
+          "SET jar.name = row.name, jar.paths = row.paths, jar.size = row.size, jar.mtime = row.mtime";
+
+  private static final String DELETE_NODES_QUERY = "UNWIND { `batch` } AS row " +
+          "MATCH (n) WHERE ID(n) = row.id DETACH DELETE n";
+
+  private static final String JAR_CLASS_IDS_QUERY = "UNWIND { `batch` } AS row " +
+          "MATCH (jar:Jar)<-[:classes]-(class:Class) WHERE ID(jar) = row.id RETURN DISTINCT ID(class) AS id";
+
+  private static final String NESTED_JAR_IDS_QUERY = "UNWIND { `batch` } AS row " +
+          "MATCH (jar:Jar)<-[:nestedIn*]-(nested:Jar) WHERE ID(jar) = row.id RETURN DISTINCT ID(nested) AS id";
+
+  // Nested jars are read through their container, so the outermost jar is returned for them
+  private static final String OWNING_CONTAINER_IDS_QUERY = "UNWIND { `batch` } AS row " +
+          "MATCH (class:Class)-[:classes]->(jar:Jar) WHERE ID(class) = row.id " +
+          "OPTIONAL MATCH (jar)-[:nestedIn*]->(container:Jar) WHERE NOT (container)-[:nestedIn]->() " +
+          "RETURN DISTINCT ID(coalesce(container, jar)) AS id";
+
+  private static final String DELETE_ORPHAN_CLASSES_QUERY = "UNWIND { `batch` } AS row " +
+          "MATCH (class:Class) WHERE ID(class) = row.id AND NOT (class)-[:classes]->(:Jar) " +
+          "WITH class, class.name AS name DETACH DELETE class RETURN name";
+
+  private static final String CLASSES_OWNED_BY_OTHER_JARS_QUERY = "UNWIND { `batch` } AS row " +
+          "MATCH (class:Class)-[:classes]->(jar:Jar) WHERE ID(class) = row.id AND NOT ID(jar) IN { `jarIDs` } " +
+          "RETURN DISTINCT ID(class) AS id";
+
+  private static final String DELETE_OUTGOING_DEPENDENCIES_QUERY = "UNWIND { `batch` } AS row " +
+          "MATCH (class)-[rel:classesDependedOn]->() WHERE ID(class) = row.id DELETE rel";
+
+  private static final String GET_USER_CLASS_DEPENDENCIES_QUERY = "MATCH (class:UserClass)-[:classesDependedOn]->(dep:Class) " +
+          "RETURN ID(class) AS classID, ID(dep) AS depID";
+
+  private static final String GET_CLASS_DEPENDENCIES_QUERY = "UNWIND { `batch` } AS row " +
+          "MATCH (class:Class)-[:classesDependedOn]->(dep:Class) WHERE ID(class) = row.id " +
+          "RETURN ID(class) AS classID, ID(dep) AS depID";
+
+  private static final String DELETE_CLASS_DEPENDENCIES_QUERY = "UNWIND { `batch` } AS row " +
+          "MATCH (class)-[rel:classesDependedOn]->(dep) WHERE ID(class) = row.classID AND ID(dep) = row.depID DELETE rel";
+
+  private static final String MERGE_CLASS_DEPCLASS_RELATIONSHIPS_QUERY = "UNWIND { `batch` } AS row " +
+          "MATCH (class:Class) WHERE ID(class) = row.classID WITH row, class " +
+          "MATCH (dep:Class) WHERE ID(dep) = row.depID MERGE (class)-[rel:classesDependedOn]->(dep)";
+
+  private static final String MERGE_USER_CLASS_DEPCLASS_RELATIONSHIPS_QUERY = "UNWIND { `batch` } AS row " +
+          "MATCH (class:UserClass) WHERE ID(class) = row.classID WITH row, class " +
+          "MATCH (dep:Class) WHERE ID(dep) = row.depID MERGE (class)-[rel:classesDependedOn]->(dep)";
+
+  // Parallel batches that share hub nodes can deadlock on relationship locks, those are retried
+  private static final int MAX_BATCH_ATTEMPTS = 10;
+
+  private static final Timer NODE_WRITE_TIMER = Metrics.timer("write.nodes");
+
+  private static final Counter NODE_ROWS = Metrics.counter("write.nodes.rows");
+
+  private static final Timer EDGE_WRITE_TIMER = Metrics.timer("write.edges");
+
+  private static final Counter EDGE_ROWS = Metrics.counter("write.edges.rows");
+
+  private static final Timer TRANSACTION_TIMER = Metrics.timer("db.transaction");
+
+  private static final Counter TRANSIENT_ERRORS = Metrics.counter("db.transientErrors");
+
+  private static final Counter SPLITS = Metrics.counter("db.splits");
+
+  private static final Counter FAILURES = Metrics.counter("db.failures");
+
+  public static void findAffectedUserClasses(GraphDatabaseService graphDb, List<Map<String, Object>> allJarPaths,
+                                             ChainSink results, SearchScheduler scheduler,
+                                             Options options) throws InterruptedException {
+    List<Map<String, Object>> jars = selectJars(allJarPaths, results, results.getSearchTerm(), options);
+
+    try(Progress progress = Progress.start("Search queries for " + results.getSearchTerm(), jars.size())) {
+      scheduler.runAll(jars, jar -> searchForUserClasses(graphDb, jar, results, progress, options));
+    }
+  }
+
+  public static List<Long> getJarClassIds(long id, GraphDatabaseService graphDb) {
+    List<Long> classIds = new ArrayList<>();
+
+    try(Transaction tx = graphDb.beginTx()) {
+      Map<String, Object> params = new HashMap<>();
+      params.put("id", id);
+
+      Result query = graphDb.execute(JAR_CLASS_QUERY, params);
+      while (query.hasNext()) {
+        Map<String, Object> results = query.next();
+
+        String key = "collect({id: ID(jarClass)})";
+        List<Map<Object, Object>> classes = (List<Map<Object, Object>>) results.get(key);
+        for(Map<Object, Object> clazz : classes) {
+          long classId = (long) clazz.get("id");
+          classIds.add(classId);
+        }
+      }
+
+      tx.success();
+    }
+
+    return classIds;
+  }
+
+  public static boolean isClassUsedByUser(long id, GraphDatabaseService graphDb, long timeout) {
+    boolean result;
+    try(Transaction tx = graphDb.beginTx(timeout, MINUTES)) {
+      Map<String, Object> params = new HashMap<>();
+      params.put("id", id);
+
+      Result query = graphDb.execute(CLASS_TO_USER_QUERY, params);
+      result = query.hasNext();
+
+      tx.success();
+    }
+
+    return result;
+  }
+
+  public static void findDependencies(GraphDatabaseService graphDb,
+                                      List<Map<String, Object>> allUserClasses,
+                                      ChainSink results,
+                                      SearchScheduler scheduler,
+                                      Options options) throws InterruptedException {
+    List<Map<String, Object>> classes = selectUserClasses(allUserClasses, results.getSearchTerm(), options);
+
+    scheduler.runAll(classes, clazz -> searchForDependencyJars(graphDb, clazz, results, options));
+  }
+
+  public static List<Map<String, Object>> selectUserClasses(List<Map<String, Object>> allClasses,
+                                                            String searchTerm, Options options) {
+    Predicate<Map<String, Object>> filter = options.isExactMatch() ? Filters.equals(searchTerm) : Filters.contains(searchTerm);
+
+    List<Map<String, Object>> classes = allClasses.stream().filter(filter)
+            .collect(Collectors.toList());
+
+    LOG.info("Retrieved {} user class nodes", classes.size());
+
+    return classes;
+  }
+
+  public static List<Map<String, Object>> getAllUserClasses(GraphDatabaseService graphDb) {
+    List<Map<String, Object>> allClasses = new ArrayList<>();
+
+    try(Transaction tx = graphDb.beginTx()) {
+
+      Result query = graphDb.execute(GET_ALL_USER_CLASSES_QUERY, Collections.EMPTY_MAP);
+
+      while(query.hasNext()) {
+        Map<String, Object> results = query.next();
+
+        String key = "collect({id: ID(class), name: class.name})";
+        allClasses = (List<Map<String, Object>>) results.get(key);
+      }
+
+      tx.success();
+    }
+
+    return allClasses;
+  }
+
+  public static List<Map<String, Object>> getAllJars(GraphDatabaseService graphDb) {
+    List<Map<String, Object>> allJars = new ArrayList<>();
+
+    try(Transaction tx = graphDb.beginTx()) {
+
+      Result query = graphDb.execute(GET_ALL_JARS_QUERY, Collections.EMPTY_MAP);
+
+      while (query.hasNext()) {
+        Map<String, Object> results = query.next();
+
+        String key = "collect({id: ID(jar), name: jar.name, hash: jar.hash, paths: jar.paths})";
+        allJars = (List<Map<String, Object>>) results.get(key);
+      }
+
+      tx.success();
+    }
+
+    return allJars;
+  }
+
+  // One entry per path a jar was found at, so name filters match any copy of the jar
+  public static List<Map<String, Object>> getAllJarPaths(GraphDatabaseService graphDb) {
+    return toJarPaths(getAllJars(graphDb));
+  }
+
+  public static List<Map<String, Object>> toJarPaths(List<Map<String, Object>> allJars) {
+    List<Map<String, Object>> allJarPaths = new ArrayList<>();
+
+    for(Map<String, Object> jar : allJars) {
+      for(String path : getJarPaths(jar)) {
+        Map<String, Object> entry = new HashMap<>(jar);
+        entry.put("name", path);
+        allJarPaths.add(entry);
+      }
+    }
+
+    return allJarPaths;
+  }
+
+  public static List<String> getJarPaths(Map<String, Object> jar) {
+    return toPaths(jar.get("paths"), (String) jar.get("name"));
+  }
+
+  // Identical jars share a hash. DBs built before hashes were recorded fall back to the file name
+  public static String getJarKey(Map<String, Object> jar) {
+    if(jar.get("hash") != null) {
+      return (String) jar.get("hash");
+    }
+
+    return Paths.get((String) jar.get("name"), "").getFileName().toString();
+  }
+
+  private static List<String> toPaths(Object paths, String name) {
+    if(paths instanceof String[]) {
+      return Arrays.asList((String[]) paths);
+    }
+
+    return Collections.singletonList(name);
+  }
+
+  // Returns one entry per distinct matching jar. Paths of duplicates go straight into the results
+  public static List<Map<String, Object>> selectJars(List<Map<String, Object>> allJars, ChainSink results,
+                                                     String searchTerm, Options options) {
+    Predicate<Map<String, Object>> filter = options.isExactMatch() ? Filters.equals(searchTerm) : Filters.contains(searchTerm);
+
+    Filters.PatternFilter<Map<String, Object>> include = Filters.searchJarInclude(options.getSearchJarInclusions());
+    Filters.PatternFilter<Map<String, Object>> exclude = Filters.searchJarExclude(options.getSearchJarExclusions());
+
+    final List<Map<String, Object>> jars = allJars.stream()
+            .filter(include)
+            .filter(exclude)
+            .filter(filter)
+            .collect(Collectors.toList());
+
+    LOG.debug("{}, {}", include, exclude);
+
+    LOG.info("Retrieved {} jar nodes", jars.size());
+
+    List<Map<String, Object>> uniqueJars = new ArrayList<>();
+
+    if(jars.isEmpty()) {
+      LOG.info("No jars found to analyze");
+      return uniqueJars;
+    }
+
+    Set<String> jarKeys = new HashSet<>();
+    for(Map<String, Object> jar : jars) {
+      String absoluteJarName = (String) jar.get("name");
+      String jarName = getJarKey(jar);
+
+      if(jarKeys.contains(jarName)) {
+        results.addJarName(absoluteJarName);
+        LOG.debug("Ignoring duplicate jar {}", absoluteJarName);
+        continue;
+      }
+
+      jarKeys.add(jarName);
+      uniqueJars.add(jar);
+    }
+
+    if(uniqueJars.size() < jars.size()) {
+      LOG.info("Ignoring {} duplicate jars", jars.size() - uniqueJars.size());
+    }
+
+    return uniqueJars;
+  }
+
+  private static Callable<Boolean> searchForDependencyJars(GraphDatabaseService graphDb, Map<String, Object> clazz,
+                                                           ChainSink results, Options options) {
+    return () -> {
+      boolean success;
+
+      try(Transaction tx = graphDb.beginTx()) {
+        LevelTraversal traversal = LevelTraversal.fromUserClass(graphDb, Integer.parseInt(options.getSearchDepth()),
+                options.getSearchTimeout(), results.getNameDictionary());
+
+        ChainCollector chains = dependencyChains(results, options);
+        success = traversal.search((Long) clazz.get("id"), options.isFilterResults(), chains);
+        chains.finish();
+
+        if(!success) {
+          timedOut(results, clazz, traversal.getDepthReached(), chains);
+        }
+
+        tx.success();
+      }
+
+      return success;
+    };
+  }
+
+  // The chains found before the time budget ran out are kept, only the result is marked
+  public static void timedOut(ChainSink results, Map<String, Object> searched, int depthReached,
+                              ChainCollector chains) {
+    LOG.warn("Search timed out for {}, keeping {} chains found up to depth {}", searched.get("name"),
+            chains.getCount(), depthReached);
+    results.markIncomplete();
+  }
+
+  // Same filtering as addDependencyChains, applied one chain at a time for streamed results. Searches
+  // report chains in SHORTEST_FIRST order, so the first one kept is the one a sorted batch keeps
+  public static ChainCollector dependencyChains(ChainSink results, Options options) {
+    Set<String> jarNames = new HashSet<>();
+    Set<String> jarClasses = new HashSet<>();
+
+    return new ChainCollector(results, chain -> {
+      String jarName = chain.getName(chain.size() - 1);
+
+      if(options.isFilterResults() && !jarNames.add(jarName)) {
+        return;
+      }
+
+      synchronized (results) {
+        results.addJarName(jarName);
+      }
+
+      chain.reverse();
+
+      if(jarClasses.add(chain.getName(1))) {
+        results.addClassChain(chain);
+      }
+    }, chains -> addDependencyChains(results, chains, options));
+  }
+
+  // Same filtering as addAffectedClassChains, applied one chain at a time for streamed results
+  public static ChainCollector affectedClassChains(ChainSink results, Map<String, Object> jar, Options options) {
+    Set<String> userClasses = new HashSet<>();
+
+    return new ChainCollector(results, chain -> {
+      if(options.isFilterResults() && !userClasses.add(chain.getName(chain.size() - 1))) {
+        return;
+      }
+
+      synchronized (results) {
+        results.addJarName((String) jar.get("name"));
+      }
+
+      results.addClassChain(chain);
+    }, chains -> addAffectedClassChains(results, jar, chains, options));
+  }
+
+  // Chains run from a user class to a jar. Reports expect the jar to be the first element. The chain
+  // kept per jar and per jar class is the first in SHORTEST_FIRST order, not whichever was found first
+  public static void addDependencyChains(ChainSink results, List<ClassChain> chains, Options options) {
+    chains.sort(ClassChain.SHORTEST_FIRST);
+    List<ClassChain> chainsToAdd;
+
+    if(options.isFilterResults()) {
+      chainsToAdd = filterChainResults(chains);
+    } else {
+      chainsToAdd = chains;
+    }
+
+    synchronized (results) {
+      for(ClassChain chain : chainsToAdd) {
+        results.addJarName(chain.getName(chain.size() - 1));
+      }
+
+      Set<String> added = new HashSet<>();
+      for(ClassChain chain : chainsToAdd) {
+        chain.reverse();
+
+        if(added.contains(chain.getName(1))) {
+          continue;
+        }
+
+        added.add(chain.getName(1));
+        results.addClassChain(chain);
+      }
+    }
+  }
+
+  public static boolean isJarUsed(GraphDatabaseService graphDb, long jarId, int searchTimeout) {
+    List<Long> ids = QueryUtil.getJarClassIds(jarId, graphDb);
+
+    for(long id : ids) {
+      if(QueryUtil.isClassUsedByUser(id, graphDb, searchTimeout)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  public static Callable<Boolean> searchForUserClasses(GraphDatabaseService graphDb, Map<String, Object> jar,
+                                                       ChainSink results, Progress progress, Options options) {
+    return () -> {
+      boolean success;
+
+      try (Transaction tx = graphDb.beginTx()) {
+        LevelTraversal traversal = LevelTraversal.fromJar(graphDb, Integer.parseInt(options.getSearchDepth()),
+                options.getSearchTimeout(), results.getNameDictionary());
+
+        ChainCollector chains = affectedClassChains(results, jar, options);
+        success = traversal.search((Long) jar.get("id"), options.isFilterResults(), chains);
+        chains.finish();
+
+        if(!success) {
+          timedOut(results, jar, traversal.getDepthReached(), chains);
+        }
+
+        progress.increment();
+        tx.success();
+      }
+
+      return success;
+    };
+  }
+
+  // One breadth first sweep from every user class at once. Returns each jar reached within
+  // UNUSED_SEARCH_DEPTH hops mapped to the names on the shortest path that reaches it. User classes
+  // start in id order and relationships are walked in the traversal order, so the path found for a
+  // jar is the same on every run and on the in memory graph
+  public static Map<Long, List<String>> findUsedJars(GraphDatabaseService graphDb) {
+    Map<Long, List<String>> usedJars = new HashMap<>();
+    Map<Long, Long> parents = new HashMap<>();
+    Map<Long, String> names = new HashMap<>();
+    List<Node> frontier = new ArrayList<>();
+
+    try(Transaction tx = graphDb.beginTx()) {
+      graphDb.findNodes(USER_CLASS).forEachRemaining(frontier::add);
+      frontier.sort(Comparator.comparingLong(Node::getId));
+      frontier.forEach(userClass -> parents.put(userClass.getId(), -1L));
+
+      Function<Node, String> name = n -> names.computeIfAbsent(n.getId(), id -> (String) n.getProperty("name"));
+
+      for(int depth = 1;depth <= UNUSED_SEARCH_DEPTH && !frontier.isEmpty();depth++) {
+        List<Node> next = new ArrayList<>();
+
+        for(Node node : frontier) {
+          for(Relationship dependency : LevelTraversal.sorted(node,
+                  node.getRelationships(Direction.OUTGOING, CLASSES_DEPENDED_ON), name)) {
+            Node dependencyClass = dependency.getEndNode();
+
+            if(parents.putIfAbsent(dependencyClass.getId(), node.getId()) != null) {
+              continue;
+            }
+
+            next.add(dependencyClass);
+
+            for(Relationship owner : dependencyClass.getRelationships(Direction.OUTGOING, CLASSES)) {
+              long jarId = owner.getEndNodeId();
+
+              if(parents.putIfAbsent(jarId, dependencyClass.getId()) == null) {
+                usedJars.put(jarId, witnessPath(graphDb, parents, jarId));
+              }
+            }
+          }
+        }
+
+        frontier.clear();
+        frontier.addAll(next);
+      }
+
+      tx.success();
+    }
+
+    return usedJars;
+  }
+
+  private static List<String> witnessPath(GraphDatabaseService graphDb, Map<Long, Long> parents, long id) {
+    List<String> path = new ArrayList<>();
+
+    for(long current = id;current != -1;current = parents.get(current)) {
+      path.add((String) graphDb.getNodeById(current).getProperty("name"));
+    }
+
+    Collections.reverse(path);
+
+    return path;
+  }
+
+  // Chains run from the jar to a user class
+  public static void addAffectedClassChains(ChainSink results, Map<String, Object> jar,
+                                            List<ClassChain> chains, Options options) {
+    chains.sort(ClassChain.SHORTEST_FIRST);
+    List<ClassChain> chainsToAdd;
+
+    if(options.isFilterResults()) {
+      chainsToAdd = filterChainResults(chains);
+    } else {
+      chainsToAdd = chains;
+    }
+
+    synchronized (results) {
+      results.addJarName((String) jar.get("name"));
+      chainsToAdd.forEach(results::addClassChain);
+    }
+  }
+
+  private static List<ClassChain> filterChainResults(List<ClassChain> chains) {
+    Set<String> matchedUserClasses = new HashSet<>();
+
+    List<ClassChain> filteredChains = chains.stream().filter(c -> {
+      String jarName = c.getName(c.size() - 1);
+      if (matchedUserClasses.contains(jarName)) {
+        return false;
+      } else {
+        matchedUserClasses.add(jarName);
+        return true;
+      }
+    }).collect(Collectors.toList());
+
+    return filteredChains;
+  }
+
+  // Paths of the jars owning each class. Classes without an owning jar are left out
+  public static Map<Long, Set<String>> findOwningJarNames(GraphDatabaseService graphDb, Collection<Long> classIds) {
+    Map<Long, Set<String>> jarNames = new HashMap<>();
+
+    for(List<Long> batch : Lists.partition(new ArrayList<>(classIds), OWNING_JAR_BATCH_SIZE)) {
+      try(Transaction tx = graphDb.beginTx()) {
+        Map<String, Object> params = new HashMap<>();
+        params.put("batch", idRows(batch));
+
+        Result result = graphDb.execute(CLASSES_TO_OWNING_JARS_QUERY, params);
+
+        while(result.hasNext()) {
+          Map<String, Object> row = result.next();
+          jarNames.computeIfAbsent(((Number) row.get("id")).longValue(), k -> new HashSet<>())
+                  .addAll(toPaths(row.get("paths"), (String) row.get("name")));
+        }
+
+        tx.success();
+      } catch (QueryExecutionException qee) {
+        LOG.warn("Class to owning jars query failed", qee);
+      }
+    }
+
+    return jarNames;
+  }
+
+  public static void writeJarNodes(GraphDatabaseService graphDb, List<JarNode> jarNodes) {
+    List<Map<String, Object>> batch = new ArrayList<>();
+
+    for(int i = 0;i < jarNodes.size();i++) {
+      Map<String, Object> row = new HashMap<>();
+      row.put("index", i);
+      row.put("name", jarNodes.get(i).getName());
+      row.put("paths", jarNodes.get(i).getPaths());
+      row.put("hash", jarNodes.get(i).getHash());
+      row.put("size", jarNodes.get(i).getSize());
+      row.put("mtime", jarNodes.get(i).getLastModified());
+      batch.add(row);
+    }
+
+    writeBatch(graphDb, WRITE_JARS_QUERY, batch, "Jar creation", NODE_WRITE_TIMER, NODE_ROWS, result -> {
+      while(result.hasNext()) {
+        Map<String, Object> row = result.next();
+        jarNodes.get(((Number) row.get("index")).intValue()).setId(((Number) row.get("id")).longValue());
+      }
+    });
+  }
+
+  // All class nodes in the batch must be either user classes or external classes
+  public static void writeClassNodes(GraphDatabaseService graphDb, List<ClassNode> classNodes, boolean custom) {
+    List<Map<String, Object>> batch = new ArrayList<>();
+
+    for(int i = 0;i < classNodes.size();i++) {
+      Map<String, Object> row = new HashMap<>();
+      row.put("index", i);
+      row.put("name", classNodes.get(i).getName());
+      row.put("custom", custom);
+      batch.add(row);
+    }
+
+    String query = custom ? WRITE_USER_CLASSES_QUERY : WRITE_CLASSES_QUERY;
+
+    writeBatch(graphDb, query, batch, "Class creation", NODE_WRITE_TIMER, NODE_ROWS, result -> {
+      while(result.hasNext()) {
+        Map<String, Object> row = result.next();
+        classNodes.get(((Number) row.get("index")).intValue()).setId(((Number) row.get("id")).longValue());
+      }
+    });
+  }
+
+  public static void writeClassToJarRels(GraphDatabaseService graphDb, JarNode jarNode, List<ClassNode> classNodes) {
+    List<Map<String, Object>> batch = new ArrayList<>();
+
+    for(ClassNode classNode : classNodes) {
+      Map<String, Object> row = new HashMap<>();
+      row.put("jarID", jarNode.getId());
+      row.put("classID", classNode.getId());
+      batch.add(row);
+    }
+
+    writeBatch(graphDb, CLASS_JAR_RELATIONSHIPS_QUERY, batch, "Class to owning jar relationship", EDGE_WRITE_TIMER,
+            EDGE_ROWS, r -> { });
+  }
+
+  // Links the jars directly nested in each of these jars to it
+  public static void writeNestedJarRels(GraphDatabaseService graphDb, List<JarNode> containers) {
+    List<Map<String, Object>> batch = new ArrayList<>();
+
+    for(JarNode container : containers) {
+      for(JarNode nestedJar : container.getNestedJars()) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("containerID", container.getId());
+        row.put("jarID", nestedJar.getId());
+        batch.add(row);
+      }
+    }
+
+    writeBatch(graphDb, NESTED_JAR_RELATIONSHIPS_QUERY, batch, "Nested jar to container relationship",
+            EDGE_WRITE_TIMER, EDGE_ROWS, r -> { });
+  }
+
+  // Each relationship is a pair of {class, dependency}. All classes must be user classes or all external
+  public static void writeClassToClassRels(GraphDatabaseService graphDb, List<ClassNode[]> relationships,
+                                           boolean custom) {
+    List<Map<String, Object>> batch = new ArrayList<>();
+
+    for(ClassNode[] relationship : relationships) {
+      Map<String, Object> row = new HashMap<>();
+      row.put("classID", relationship[0].getId());
+      row.put("depID", relationship[1].getId());
+      batch.add(row);
+    }
+
+    String query = custom ? USER_CLASS_DEPCLASS_RELATIONSHIPS_QUERY : CLASS_DEPCLASS_RELATIONSHIPS_QUERY;
+
+    writeBatch(graphDb, query, batch, "Class to dependency class relationship", EDGE_WRITE_TIMER, EDGE_ROWS,
+            r -> { });
+  }
+
+  // Times a node or relationship write, retries and splits included
+  private static void writeBatch(GraphDatabaseService graphDb, String query, List<Map<String, Object>> batch,
+                                 String description, Timer timer, Counter rows, Consumer<Result> resultHandler) {
+    if(batch.isEmpty()) {
+      return;
+    }
+
+    long start = timer.start();
+    executeBatch(graphDb, query, batch, description, resultHandler);
+    timer.stop(start);
+
+    rows.add(batch.size());
+  }
+
+  // Throws once a single row still can't be written, so a build never carries on with part of the graph
+  private static void executeBatch(GraphDatabaseService graphDb, String query, List<Map<String, Object>> batch,
+                                   String description, Consumer<Result> resultHandler) {
+    if(batch.isEmpty()) {
+      return;
+    }
+
+    Map<String, Object> params = new HashMap<>();
+    params.put("batch", batch);
+
+    RuntimeException failure = null;
+
+    for(int attempt = 1;attempt <= MAX_BATCH_ATTEMPTS;attempt++) {
+      long start = TRANSACTION_TIMER.start();
+
+      try(Transaction tx = graphDb.beginTx()) {
+        Result result = graphDb.execute(query, params);
+        resultHandler.accept(result);
+        tx.success();
+        return;
+      } catch (RuntimeException re) {
+        failure = re;
+
+        // Retrying won't help, but splitting still isolates the row at fault
+        if(!isTransient(re)) {
+          LOG.debug("{} batch of {} failed", description, batch.size(), re);
+          break;
+        }
+
+        LOG.debug("{} batch failed on attempt {}, retrying", description, attempt, re);
+      } finally {
+        // The commit happens on close, so it is timed too
+        TRANSACTION_TIMER.stop(start);
+      }
+
+      TRANSIENT_ERRORS.increment();
+
+      try {
+        Thread.sleep(ThreadLocalRandom.current().nextInt(10, 50) * attempt);
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+        FAILURES.increment();
+        throw new IllegalStateException(description + " batch interrupted", ie);
+      }
+    }
+
+    // A smaller transaction holds fewer locks, so each half is far less likely to deadlock again.
+    // Rows carry their own indexes, so result handlers work the same on part of a batch
+    if(batch.size() > 1) {
+      LOG.debug("{} batch of {} failed, splitting it", description, batch.size());
+
+      SPLITS.increment();
+
+      int half = batch.size() / 2;
+      executeBatch(graphDb, query, batch.subList(0, half), description, resultHandler);
+      executeBatch(graphDb, query, batch.subList(half, batch.size()), description, resultHandler);
+      return;
+    }
+
+    FAILURES.increment();
+    throw new IllegalStateException(description + " failed for " + batch.get(0), failure);
+  }
+
+  private static boolean isTransient(RuntimeException re) {
+    if(re instanceof TransientFailureException) {
+      return true;
+    }
+
+    String status = re instanceof QueryExecutionException ? ((QueryExecutionException) re).getStatusCode() : null;
+    return status != null && status.startsWith("Neo.TransientError");
+  }
+
+  public static List<Map<String, Object>> getAllJarStates(GraphDatabaseService graphDb) {
+    List<Map<String, Object>> jars = new ArrayList<>();
+
+    try(Transaction tx = graphDb.beginTx()) {
+      Result result = graphDb.execute(GET_ALL_JAR_STATES_QUERY, Collections.emptyMap());
+
+      while(result.hasNext()) {
+        jars.add(new HashMap<>(result.next()));
+      }
+
+      tx.success();
+    }
+
+    return jars;
+  }
+
+  // Maps class name to node id for every node with the given label, Class or UserClass
+  public static Map<String, Long> getClassIds(GraphDatabaseService graphDb, String label) {
+    Map<String, Long> classIds = new HashMap<>();
+
+    try(Transaction tx = graphDb.beginTx()) {
+      Result result = graphDb.execute(String.format(GET_CLASS_IDS_QUERY, label), Collections.emptyMap());
+
+      while(result.hasNext()) {
+        Map<String, Object> row = result.next();
+        classIds.putIfAbsent((String) row.get("name"), ((Number) row.get("id")).longValue());
+      }
+
+      tx.success();
+    }
+
+    return classIds;
+  }
+
+  public static void updateJarNodes(GraphDatabaseService graphDb, List<JarNode> jarNodes) {
+    List<Map<String, Object>> batch = new ArrayList<>();
+
+    for(JarNode jarNode : jarNodes) {
+      Map<String, Object> row = new HashMap<>();
+      row.put("id", jarNode.getId());
+      row.put("name", jarNode.getName());
+      row.put("paths", jarNode.getPaths());
+      row.put("size", jarNode.getSize());
+      row.put("mtime", jarNode.getLastModified());
+      batch.add(row);
+    }
+
+    executeBatch(graphDb, UPDATE_JARS_QUERY, batch, "Jar update", r -> { });
+  }
+
+  public static void deleteNodes(GraphDatabaseService graphDb, List<Long> ids) {
+    executeBatch(graphDb, DELETE_NODES_QUERY, idRows(ids), "Node deletion", r -> { });
+  }
+
+  public static Set<Long> getClassIdsOfJars(GraphDatabaseService graphDb, List<Long> jarIds) {
+    Set<Long> classIds = new HashSet<>();
+
+    executeBatch(graphDb, JAR_CLASS_IDS_QUERY, idRows(jarIds), "Jar class lookup", result -> {
+      while(result.hasNext()) {
+        classIds.add(((Number) result.next().get("id")).longValue());
+      }
+    });
+
+    return classIds;
+  }
+
+  // Every jar nested in the given jars at any depth
+  public static Set<Long> getNestedJarIds(GraphDatabaseService graphDb, List<Long> jarIds) {
+    Set<Long> nestedIds = new HashSet<>();
+
+    executeBatch(graphDb, NESTED_JAR_IDS_QUERY, idRows(jarIds), "Nested jar lookup", result -> {
+      while(result.hasNext()) {
+        nestedIds.add(((Number) result.next().get("id")).longValue());
+      }
+    });
+
+    return nestedIds;
+  }
+
+  // Removes the given classes if no jar owns them anymore and returns the names removed
+  public static Set<Long> getOwningContainerIds(GraphDatabaseService graphDb, List<Long> classIds) {
+    Set<Long> containerIds = new HashSet<>();
+
+    executeBatch(graphDb, OWNING_CONTAINER_IDS_QUERY, idRows(classIds), "Owning jar lookup", result -> {
+      while(result.hasNext()) {
+        containerIds.add(((Number) result.next().get("id")).longValue());
+      }
+    });
+
+    return containerIds;
+  }
+
+  public static Set<String> deleteOrphanClasses(GraphDatabaseService graphDb, List<Long> classIds) {
+    Set<String> names = new HashSet<>();
+
+    executeBatch(graphDb, DELETE_ORPHAN_CLASSES_QUERY, idRows(classIds), "Orphan class deletion", result -> {
+      while(result.hasNext()) {
+        names.add((String) result.next().get("name"));
+      }
+    });
+
+    return names;
+  }
+
+  public static Set<Long> findClassesOwnedByOtherJars(GraphDatabaseService graphDb, List<Long> classIds,
+                                                      Collection<Long> jarIds) {
+    Set<Long> owned = new HashSet<>();
+
+    try(Transaction tx = graphDb.beginTx()) {
+      Map<String, Object> params = new HashMap<>();
+      params.put("batch", idRows(classIds));
+      params.put("jarIDs", new ArrayList<>(jarIds));
+
+      Result result = graphDb.execute(CLASSES_OWNED_BY_OTHER_JARS_QUERY, params);
+      while(result.hasNext()) {
+        owned.add(((Number) result.next().get("id")).longValue());
+      }
+
+      tx.success();
+    }
+
+    return owned;
+  }
+
+  public static void deleteOutgoingDependencies(GraphDatabaseService graphDb, List<Long> classIds) {
+    executeBatch(graphDb, DELETE_OUTGOING_DEPENDENCIES_QUERY, idRows(classIds),
+            "Class dependency deletion", r -> { });
+  }
+
+  // Pairs of {user class id, dependency id}
+  public static Set<List<Long>> getUserClassDependencies(GraphDatabaseService graphDb) {
+    Set<List<Long>> dependencies = new HashSet<>();
+
+    try(Transaction tx = graphDb.beginTx()) {
+      Result result = graphDb.execute(GET_USER_CLASS_DEPENDENCIES_QUERY, Collections.emptyMap());
+
+      while(result.hasNext()) {
+        Map<String, Object> row = result.next();
+        dependencies.add(Arrays.asList(((Number) row.get("classID")).longValue(),
+                ((Number) row.get("depID")).longValue()));
+      }
+
+      tx.success();
+    }
+
+    return dependencies;
+  }
+
+  // Pairs of {class id, dependency id} for the given external classes
+  public static Set<List<Long>> getClassDependencies(GraphDatabaseService graphDb, List<Long> classIds) {
+    Set<List<Long>> dependencies = new HashSet<>();
+
+    executeBatch(graphDb, GET_CLASS_DEPENDENCIES_QUERY, idRows(classIds), "Class dependency lookup", result -> {
+      while(result.hasNext()) {
+        Map<String, Object> row = result.next();
+        dependencies.add(Arrays.asList(((Number) row.get("classID")).longValue(),
+                ((Number) row.get("depID")).longValue()));
+      }
+    });
+
+    return dependencies;
+  }
+
+  public static void deleteClassToClassRels(GraphDatabaseService graphDb, List<List<Long>> relationships) {
+    List<Map<String, Object>> batch = new ArrayList<>();
+
+    for(List<Long> relationship : relationships) {
+      Map<String, Object> row = new HashMap<>();
+      row.put("classID", relationship.get(0));
+      row.put("depID", relationship.get(1));
+      batch.add(row);
+    }
+
+    executeBatch(graphDb, DELETE_CLASS_DEPENDENCIES_QUERY, batch, "Class dependency deletion", r -> { });
+  }
+
+  // Same as writeClassToClassRels but leaves existing relationships in place
+  public static void mergeClassToClassRels(GraphDatabaseService graphDb, List<ClassNode[]> relationships,
+                                           boolean custom) {
+    List<Map<String, Object>> batch = new ArrayList<>();
+
+    for(ClassNode[] relationship : relationships) {
+      Map<String, Object> row = new HashMap<>();
+      row.put("classID", relationship[0].getId());
+      row.put("depID", relationship[1].getId());
+      batch.add(row);
+    }
+
+    String query = custom ? MERGE_USER_CLASS_DEPCLASS_RELATIONSHIPS_QUERY : MERGE_CLASS_DEPCLASS_RELATIONSHIPS_QUERY;
+
+    writeBatch(graphDb, query, batch, "Class to dependency class relationship", EDGE_WRITE_TIMER, EDGE_ROWS,
+            r -> { });
+  }
+
+  private static List<Map<String, Object>> idRows(List<Long> ids) {
+    return ids.stream()
+            .map(id -> Collections.<String, Object>singletonMap("id", id))
+            .collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,122 @@
+package com.jtmelton.tpl.utils;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.*;
+
+/*
+ * Thread pool shared by every traversal of a run, so all search terms and search types draw
+ * from one configured level of parallelism. Memory is checked before a traversal starts: while
+ * less than the reserved share of the heap is free, new traversals wait for running ones to
+ * finish. One traversal is always let through so a search can't stall.
+ */
+public class SearchScheduler {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SearchScheduler.class);
+
+  // How often waiting traversals look at the heap again, it can free up without a traversal finishing
+  private static final long ADMISSION_POLL_MILLIS = 100;
+
+  private final ExecutorService executor;
+
+  private final int parallelism;
+
+  private final long heapReserve;
+
+  private final Object admission = new Object();
+
+  private int running;
+
+  private long heldBack;
+
+  public SearchScheduler(int parallelism, int heapReservePercent) {
+    this.parallelism = parallelism;
+    this.heapReserve = Runtime.getRuntime().maxMemory() / 100 * heapReservePercent;
+    this.executor = Executors.newFixedThreadPool(parallelism, new ThreadFactoryBuilder()
+            .setNameFormat("search-%d")
+            .setDaemon(true)
+            .build());
+  }
+
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  // Number of traversals that had to wait for heap to free up
+  public long getHeldBack() {
+    synchronized (admission) {
+      return heldBack;
+    }
+  }
+
+  public Future<?> submit(Callable<?> traversal) {
+    return executor.submit(() -> {
+      admit();
+
+      try {
+        return traversal.call();
+      } finally {
+        release();
+      }
+    });
+  }
+
+  // Runs every traversal and waits for all of them. A failed traversal is logged and the rest
+  // still run
+  public <T> void runAll(Collection<T> searches, TraversalFactory<T> traversal) throws InterruptedException {
+    List<Future<?>> futures = new ArrayList<>();
+
+    for(T search : searches) {
+      futures.add(submit(traversal.create(search)));
+    }
+
+    for(Future<?> future : futures) {
+      try {
+        future.get();
+      } catch(ExecutionException ee) {
+        LOG.error("Search traversal failed", ee.getCause());
+      }
+    }
+  }
+
+  private void admit() throws InterruptedException {
+    synchronized (admission) {
+      boolean waited = false;
+
+      while(running > 0 && freeHeap() < heapReserve) {
+        if(!waited) {
+          waited = true;
+          heldBack++;
+          LOG.debug("Holding back traversal with {} running and {} MB of heap free", running,
+                  freeHeap() / (1024 * 1024));
+        }
+
+        admission.wait(ADMISSION_POLL_MILLIS);
+      }
+
+      running++;
+    }
+  }
+
+  private void release() {
+    synchronized (admission) {
+      running--;
+      admission.notifyAll();
+    }
+  }
+
+  private static long freeHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    return runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+  }
+
+  // Builds the traversal run for one jar or class of a search
+  public interface TraversalFactory<T> {
+    Callable<?> create(T search);
+  }
+}
@@ -0,0 +1,53 @@
+package com.jtmelton.tpl.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class VerifyingReferenceReader implements ClassReferenceReader {
+
+  private static final Logger LOG = LoggerFactory.getLogger(VerifyingReferenceReader.class);
+
+  private final ClassReferenceReader primary;
+
+  private final ClassReferenceReader reference;
+
+  private final AtomicLong mismatches = new AtomicLong();
+
+  public VerifyingReferenceReader(ClassReferenceReader primary, ClassReferenceReader reference) {
+    this.primary = primary;
+    this.reference = reference;
+  }
+
+  @Override
+  public ClassReferences read(ByteBuffer classFile) throws IOException {
+    ClassReferences result = primary.read(classFile.duplicate());
+    ClassReferences expected = reference.read(classFile.duplicate());
+
+    Set<String> actualRefs = new HashSet<>(result.getReferencedClasses());
+    Set<String> expectedRefs = new HashSet<>(expected.getReferencedClasses());
+
+    if(!result.getName().equals(expected.getName()) || !actualRefs.equals(expectedRefs)) {
+      mismatches.incrementAndGet();
+
+      Set<String> missing = new HashSet<>(expectedRefs);
+      missing.removeAll(actualRefs);
+      Set<String> extra = new HashSet<>(actualRefs);
+      extra.removeAll(expectedRefs);
+
+      LOG.warn("Class reader mismatch for {} (expected {}): missing {}, extra {}",
+              result.getName(), expected.getName(), missing, extra);
+    }
+
+    return expected;
+  }
+
+  public long getMismatches() {
+    return mismatches.get();
+  }
+}
@@ -0,0 +1,200 @@
+package com.jtmelton.tpl;
+
+import com.jtmelton.tpl.cli.Options;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Result;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.junit.Assert.assertEquals;
+
+/*
+ * Updates a DB step by step with -incremental and checks after every step that it holds the same
+ * graph as a DB built from scratch out of the same jars and classes.
+ */
+public class IncrementalUpdateTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Path classes;
+
+  private Path jars;
+
+  private int builds;
+
+  @Test
+  public void incrementalUpdatesMatchFreshBuilds() throws Exception {
+    classes = folder.newFolder("classes").toPath();
+    jars = folder.newFolder("jars").toPath();
+    File db = folder.newFolder("db");
+
+    writeClass(classes, "app.Main", "lib.Shared", "lib.C");
+    writeJar("a.jar", clazz("lib.Shared", "lib.A1"), clazz("lib.A1"));
+    writeJar("b.jar", clazz("lib.Shared", "lib.B1", "lib.C"), clazz("lib.B1", "lib.A1"));
+    writeJar("c.jar", clazz("lib.C", "lib.Shared", "lib.B1"));
+    writeJar("fat.jar", nested("BOOT-INF/lib/n.jar", clazz("lib.C", "lib.A1"), clazz("lib.N", "lib.C")));
+    build(db, false);
+    assertSameGraph(db);
+
+    // lib.Shared stays in a.jar but loses what only b.jar's copy referenced
+    Files.delete(jars.resolve("b.jar"));
+    build(db, true);
+    assertSameGraph(db);
+
+    // A new copy of lib.Shared in d.jar, and c.jar changed in place. Its old lib.C is read again
+    // from the jar nested in fat.jar
+    writeJar("d.jar", clazz("lib.Shared", "lib.D"), clazz("lib.D", "lib.C"));
+    writeJar("c.jar", clazz("lib.C", "lib.A1"), clazz("lib.C2", "lib.Shared"));
+    build(db, true);
+    assertSameGraph(db);
+
+    // Removing a jar that shares a class with both a new and an unchanged jar
+    Files.delete(jars.resolve("a.jar"));
+    writeJar("e.jar", clazz("lib.Shared", "lib.C2"), clazz("lib.A1", "lib.D"));
+    build(db, true);
+    assertSameGraph(db);
+
+    Files.delete(jars.resolve("d.jar"));
+    writeClass(classes, "app.Other", "lib.A1");
+    build(db, true);
+    assertSameGraph(db);
+  }
+
+  private void assertSameGraph(File db) throws Exception {
+    File fresh = folder.newFolder("fresh" + builds);
+    build(fresh, false);
+
+    assertEquals(graph(fresh), graph(db));
+  }
+
+  private void build(File db, boolean incremental) throws IOException, InterruptedException {
+    Options options = new Options();
+    options.setClassesDirectory(classes.toString());
+    options.setJarsDirectory(jars.toString());
+    options.setDbDirectory(db.getPath());
+    options.setThreads(2);
+    options.setWriteBatchSize(2);
+
+    ThirdPartyLibraryAnalyzer analyzer = new ThirdPartyLibraryAnalyzer(options);
+
+    try {
+      if(incremental) {
+        analyzer.updateDependencyGraph(options);
+      } else {
+        analyzer.buildDependencyGraph(options);
+      }
+    } finally {
+      analyzer.shutdown();
+    }
+
+    builds++;
+  }
+
+  // Every node and relationship by name, sorted so ids and store order don't matter
+  private static List<String> graph(File db) {
+    GraphDatabaseService graphDb = new GraphDatabaseFactory().newEmbeddedDatabase(db);
+    List<String> graph = new ArrayList<>();
+
+    try(Transaction tx = graphDb.beginTx()) {
+      Result nodes = graphDb.execute("MATCH (n) RETURN labels(n)[0] + ' ' + n.name AS line");
+      nodes.forEachRemaining(row -> graph.add((String) row.get("line")));
+
+      Result relationships = graphDb.execute("MATCH (a)-[r]->(b) RETURN a.name + ' ' + type(r) + ' ' + b.name AS line");
+      relationships.forEachRemaining(row -> graph.add((String) row.get("line")));
+
+      tx.success();
+    } finally {
+      graphDb.shutdown();
+    }
+
+    Collections.sort(graph);
+
+    return graph;
+  }
+
+  @SafeVarargs
+  private final void writeJar(String name, Map.Entry<String, byte[]>... entries) throws IOException {
+    Path jar = jars.resolve(name);
+    boolean replaced = Files.exists(jar);
+
+    Files.write(jar, jar(entries));
+
+    // Changed jars are only hashed again when their size or modification time moved
+    if(replaced) {
+      Files.setLastModifiedTime(jar, FileTime.fromMillis(Files.getLastModifiedTime(jar).toMillis() + 5000));
+    }
+  }
+
+  @SafeVarargs
+  private static Map.Entry<String, byte[]> nested(String path, Map.Entry<String, byte[]>... entries)
+          throws IOException {
+    return entry(path, jar(entries));
+  }
+
+  @SafeVarargs
+  private static byte[] jar(Map.Entry<String, byte[]>... entries) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+    try(JarOutputStream out = new JarOutputStream(bytes)) {
+      for(Map.Entry<String, byte[]> entry : entries) {
+        out.putNextEntry(new JarEntry(entry.getKey()));
+        out.write(entry.getValue());
+        out.closeEntry();
+      }
+    }
+
+    return bytes.toByteArray();
+  }
+
+  private static void writeClass(Path root, String name, String... references) throws IOException {
+    Map.Entry<String, byte[]> entry = clazz(name, references);
+    Path file = root.resolve(entry.getKey());
+    Files.createDirectories(file.getParent());
+
+    try(OutputStream out = Files.newOutputStream(file)) {
+      out.write(entry.getValue());
+    }
+  }
+
+  // A class referencing each of the others through a field type
+  private static Map.Entry<String, byte[]> clazz(String name, String... references) {
+    try {
+      ClassPool pool = new ClassPool(true);
+      CtClass ctClass = pool.makeClass(name);
+
+      for(int i = 0;i < references.length;i++) {
+        ctClass.addField(new CtField(pool.makeClass(references[i]), "field" + i, ctClass));
+      }
+
+      return entry(name.replace('.', '/') + ".class", ctClass.toBytecode());
+    } catch(Exception e) {
+      throw new IllegalStateException("Failed to generate " + name, e);
+    }
+  }
+
+  private static Map.Entry<String, byte[]> entry(String path, byte[] bytes) {
+    return new AbstractMap.SimpleImmutableEntry<>(path, bytes);
+  }
+}
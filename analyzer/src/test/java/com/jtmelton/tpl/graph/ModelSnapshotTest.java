@@ -0,0 +1,164 @@
+package com.jtmelton.tpl.graph;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+import com.jtmelton.tpl.domain.ClassNode;
+import com.jtmelton.tpl.domain.JarNode;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/*
+ * Writes a class model, loads it back and restores it, and checks the restored model is the one
+ * written, less the dependencies the graph would never get.
+ */
+public class ModelSnapshotTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void roundTrip() throws IOException {
+    List<ClassNode> userClasses = Arrays.asList(classNode("app.Main", true), classNode("app.Util", true));
+    List<ClassNode> externalClasses = Arrays.asList(classNode("lib.A", false), classNode("lib.B", false),
+            classNode("lib.C", false), classNode("lib.\u00e9t\u00e9", false));
+
+    Multimap<String, String> references = HashMultimap.create();
+    references.putAll("app.Main", Arrays.asList("app.Main", "app.Util", "lib.A", "lib.C", "java.lang.String"));
+    references.putAll("app.Util", Arrays.asList("lib.B", "lib.\u00e9t\u00e9"));
+    references.putAll("lib.A", Arrays.asList("lib.A", "lib.B", "lib.C", "java.lang.Object"));
+    references.putAll("lib.C", Arrays.asList("lib.A"));
+
+    // A fat jar holding a jar that holds another, next to a plain jar
+    JarNode innermost = jar("app.jar!/lib/inner.jar!/lib/innermost.jar", null, 0, -1L, externalClasses.get(2));
+    JarNode inner = jar("app.jar!/lib/inner.jar", null, 1234, Long.MIN_VALUE, externalClasses.get(1));
+    inner.addNestedJar(innermost);
+    JarNode app = jar("/jars/app.jar", "0f1e2d", Long.MAX_VALUE, -86400000L, externalClasses.get(0),
+            externalClasses.get(1));
+    app.addPath("/jars/copy/app.jar");
+    app.addNestedJar(inner);
+    JarNode plain = jar("/jars/plain.jar", "a1b2c3", 42, 1500000000000L, externalClasses.get(3));
+
+    File file = new File(folder.getRoot(), "model/snapshot.bin");
+    ModelSnapshot.write(file, userClasses, externalClasses, Arrays.asList(app, plain), references);
+
+    ModelSnapshot snapshot = ModelSnapshot.load(file);
+    assertEquals(6, snapshot.getClassCount());
+    assertEquals(2, snapshot.getUserClassCount());
+    assertEquals(4, snapshot.getJarCount());
+    assertEquals(7, snapshot.getDependencyCount());
+
+    Set<String> customClassNames = new HashSet<>();
+    Collection<ClassNode> restoredUserClasses = new ArrayList<>();
+    Map<String, ClassNode> restoredExternalClasses = new HashMap<>();
+    Multimap<String, String> restoredReferences = HashMultimap.create();
+    Collection<JarNode> restoredJars = new ArrayList<>();
+    snapshot.restore(customClassNames, restoredUserClasses, restoredExternalClasses, restoredReferences,
+            restoredJars);
+
+    assertEquals(new HashSet<>(Arrays.asList("app.Main", "app.Util")), customClassNames);
+    assertEquals(Arrays.asList("app.Main", "app.Util"),
+            restoredUserClasses.stream().map(ClassNode::getName).collect(Collectors.toList()));
+    assertTrue(restoredUserClasses.stream().allMatch(ClassNode::isCustom));
+
+    assertEquals(externalClasses.stream().map(ClassNode::getName).collect(Collectors.toSet()),
+            restoredExternalClasses.keySet());
+    assertFalse(restoredExternalClasses.values().stream().anyMatch(ClassNode::isCustom));
+
+    // Only dependencies on classes found in a jar, and never a class on itself
+    Multimap<String, String> expected = HashMultimap.create();
+    expected.putAll("app.Main", Arrays.asList("lib.A", "lib.C"));
+    expected.putAll("app.Util", Arrays.asList("lib.B", "lib.\u00e9t\u00e9"));
+    expected.putAll("lib.A", Arrays.asList("lib.B", "lib.C"));
+    expected.putAll("lib.C", Arrays.asList("lib.A"));
+    assertEquals(expected, restoredReferences);
+
+    assertEquals(Arrays.asList(describe(app), describe(plain)),
+            restoredJars.stream().map(ModelSnapshotTest::describe).collect(Collectors.toList()));
+
+    // Classes are shared between the jars and the class map, the same as after a scan
+    JarNode restoredApp = restoredJars.iterator().next();
+    assertTrue(restoredApp.getClassNodes().contains(restoredExternalClasses.get("lib.A")));
+    assertTrue(restoredApp.getNestedJars().get(0).getClassNodes().contains(restoredExternalClasses.get("lib.B")));
+  }
+
+  @Test
+  public void emptyModel() throws IOException {
+    File file = new File(folder.getRoot(), "empty.bin");
+    ModelSnapshot.write(file, new ArrayList<>(), new ArrayList<>(), new ArrayList<>(), HashMultimap.create());
+
+    ModelSnapshot snapshot = ModelSnapshot.load(file);
+    assertEquals(0, snapshot.getClassCount());
+    assertEquals(0, snapshot.getJarCount());
+  }
+
+  @Test
+  public void truncatedSnapshotsThrowIOException() throws IOException {
+    List<ClassNode> externalClasses = Arrays.asList(classNode("lib.A", false), classNode("lib.B", false));
+    Multimap<String, String> references = HashMultimap.create();
+    references.put("lib.A", "lib.B");
+
+    File file = new File(folder.getRoot(), "full.bin");
+    ModelSnapshot.write(file, new ArrayList<>(), externalClasses,
+            Arrays.asList(jar("/jars/a.jar", "ff", 10, -1L, externalClasses.get(0), externalClasses.get(1))),
+            references);
+    byte[] bytes = Files.readAllBytes(file.toPath());
+
+    for(int length = 0;length < bytes.length;length++) {
+      File truncated = new File(folder.getRoot(), "truncated.bin");
+      Files.write(truncated.toPath(), Arrays.copyOf(bytes, length));
+
+      try {
+        ModelSnapshot.load(truncated);
+        fail("Loaded a snapshot cut to " + length + " of " + bytes.length + " bytes");
+      } catch(IOException ioe) {
+        // expected
+      }
+    }
+  }
+
+  private static ClassNode classNode(String name, boolean custom) {
+    ClassNode classNode = new ClassNode();
+    classNode.setName(name);
+    classNode.setCustom(custom);
+    return classNode;
+  }
+
+  private static JarNode jar(String name, String hash, long size, long lastModified, ClassNode... classes) {
+    JarNode jarNode = new JarNode();
+    jarNode.setName(name);
+    jarNode.setHash(hash);
+    jarNode.setSize(size);
+    jarNode.setLastModified(lastModified);
+    jarNode.addPath(name);
+    Arrays.stream(classes).forEach(jarNode::addClassFile);
+    return jarNode;
+  }
+
+  // Everything a snapshot keeps about a jar and the jars nested in it
+  private static String describe(JarNode jar) {
+    return jar.getName() + " hash=" + jar.getHash() + " size=" + jar.getSize() + " mtime=" + jar.getLastModified()
+            + " paths=" + jar.getPaths()
+            + " classes=" + jar.getClassNodes().stream().map(ClassNode::getName).collect(Collectors.toCollection(TreeSet::new))
+            + " nested=" + jar.getNestedJars().stream().map(ModelSnapshotTest::describe).collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,84 @@
+package com.jtmelton.tpl.utils;
+
+import com.google.common.io.ByteStreams;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/*
+ * Reads every class of every jar on the test classpath with both readers. Neo4j, Guava, Javassist
+ * and the rest between them cover most of what javac and other compilers put in a constant pool.
+ */
+public class ConstantPoolReaderTest {
+
+  @Test
+  public void readsTheSameReferencesAsJavassist() throws IOException {
+    ClassReferenceReader constantPool = new ConstantPoolReader();
+    ClassReferenceReader javassist = new JavassistReferenceReader();
+    int compared = 0;
+
+    for(String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+      if(!entry.endsWith(".jar")) {
+        continue;
+      }
+
+      try(JarFile jar = new JarFile(entry)) {
+        Enumeration<JarEntry> entries = jar.entries();
+
+        while(entries.hasMoreElements()) {
+          JarEntry classEntry = entries.nextElement();
+
+          // Multi release classes may be newer than Javassist can read
+          if(!classEntry.getName().endsWith(".class") || classEntry.getName().startsWith("META-INF/")) {
+            continue;
+          }
+
+          byte[] bytes;
+          try(InputStream in = jar.getInputStream(classEntry)) {
+            bytes = ByteStreams.toByteArray(in);
+          }
+
+          ClassReferences expected = javassist.read(ByteBuffer.wrap(bytes));
+          ClassReferences actual = constantPool.read(ByteBuffer.wrap(bytes));
+
+          String where = entry + "!/" + classEntry.getName();
+          assertEquals(where, expected.getName(), actual.getName());
+          assertEquals(where, new HashSet<>(expected.getReferencedClasses()),
+                  new HashSet<>(actual.getReferencedClasses()));
+          compared++;
+        }
+      }
+    }
+
+    assertTrue("Only compared " + compared + " classes", compared > 10000);
+  }
+
+  // Class bytes don't always start at the beginning of the buffer they are handed in
+  @Test
+  public void readsFromTheBufferPosition() throws IOException {
+    byte[] bytes;
+    try(InputStream in = ConstantPoolReader.class.getResourceAsStream("ConstantPoolReader.class")) {
+      bytes = ByteStreams.toByteArray(in);
+    }
+
+    byte[] padded = new byte[bytes.length + 16];
+    System.arraycopy(bytes, 0, padded, 8, bytes.length);
+    ByteBuffer buffer = ByteBuffer.wrap(padded, 8, bytes.length);
+
+    ClassReferences expected = new JavassistReferenceReader().read(ByteBuffer.wrap(bytes));
+    ClassReferences actual = new ConstantPoolReader().read(buffer);
+
+    assertEquals(expected.getName(), actual.getName());
+    assertEquals(new HashSet<>(expected.getReferencedClasses()), new HashSet<>(actual.getReferencedClasses()));
+  }
+}
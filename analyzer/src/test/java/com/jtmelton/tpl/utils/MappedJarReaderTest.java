@@ -0,0 +1,210 @@
+package com.jtmelton.tpl.utils;
+
+import com.google.common.io.ByteStreams;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Random;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/*
+ * Checks MappedJarReader hands out the same class entries, in the same order, as JarFile.
+ */
+public class MappedJarReaderTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final Random random = new Random(18);
+
+  @Test
+  public void readsDeflatedEntries() throws IOException {
+    Path jar = write("deflated.jar", jar(200, ZipEntry.DEFLATED));
+
+    assertSameClasses(jar, 200);
+  }
+
+  @Test
+  public void readsStoredEntries() throws IOException {
+    Path jar = write("stored.jar", jar(200, ZipEntry.STORED));
+
+    assertSameClasses(jar, 200);
+  }
+
+  @Test
+  public void readsMixedEntries() throws IOException {
+    Path jar = write("mixed.jar", jar(200, -1));
+
+    assertSameClasses(jar, 200);
+  }
+
+  // More entries than the plain end of central directory record can count
+  @Test
+  public void readsZip64Jars() throws IOException {
+    Path jar = write("zip64.jar", jar(70000, -1));
+
+    assertSameClasses(jar, 70000);
+  }
+
+  // Like a Spring Boot executable jar
+  @Test
+  public void readsJarsWithALaunchScript() throws IOException {
+    byte[] script = "#!/bin/bash\nexec java -jar \"$0\" \"$@\"\n".getBytes(StandardCharsets.UTF_8);
+    Path jar = write("script.jar", concat(script, jar(200, -1)));
+
+    assertSameClasses(jar, 200);
+  }
+
+  @Test
+  public void truncatedJarsThrowIOException() throws IOException {
+    byte[] bytes = jar(20, -1);
+
+    for(int length = 0;length < bytes.length;length++) {
+      assertThrowsIOException(write("truncated.jar", Arrays.copyOf(bytes, length)));
+    }
+  }
+
+  // The directory is still there but the entries it points to were cut out
+  @Test
+  public void jarsMissingEntryDataThrowIOException() throws IOException {
+    byte[] bytes = jar(20, -1);
+    int directory = bytes.length - 22 - centralDirectorySize(bytes);
+
+    for(int cut = 1;cut < directory;cut += 7) {
+      byte[] damaged = concat(Arrays.copyOf(bytes, directory - cut), Arrays.copyOfRange(bytes, directory, bytes.length));
+      assertThrowsIOException(write("damaged.jar", damaged));
+    }
+  }
+
+  private void assertSameClasses(Path jar, int expectedClasses) throws IOException {
+    List<byte[]> expected = new ArrayList<>();
+
+    try(JarFile jarFile = new JarFile(jar.toFile())) {
+      Enumeration<JarEntry> entries = jarFile.entries();
+
+      while(entries.hasMoreElements()) {
+        JarEntry entry = entries.nextElement();
+
+        if(entry.getName().endsWith(".class")) {
+          try(InputStream in = jarFile.getInputStream(entry)) {
+            expected.add(ByteStreams.toByteArray(in));
+          }
+        }
+      }
+    }
+
+    List<byte[]> actual = new ArrayList<>();
+    MappedJarReader.readEntries(jar, classFile -> {
+      byte[] bytes = new byte[classFile.remaining()];
+      classFile.get(bytes);
+      actual.add(bytes);
+    });
+
+    assertEquals(expectedClasses, expected.size());
+    assertEquals(expected.size(), actual.size());
+
+    for(int i = 0;i < expected.size();i++) {
+      assertArrayEquals("Class entry " + i, expected.get(i), actual.get(i));
+    }
+  }
+
+  private static void assertThrowsIOException(Path jar) {
+    try {
+      MappedJarReader.readEntries(jar, classFile -> {
+        // Reading every byte, so a bad slice fails here rather than later
+        while(classFile.hasRemaining()) {
+          classFile.get();
+        }
+      });
+    } catch(IOException ioe) {
+      return;
+    } catch(RuntimeException re) {
+      throw new AssertionError("Unchecked exception reading " + jar, re);
+    }
+
+    fail("Read " + jar);
+  }
+
+  // A jar of classes with random content, half of it compressible. A method of -1 mixes stored
+  // and deflated entries. Every tenth entry is a resource
+  private byte[] jar(int classes, int method) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+    try(JarOutputStream out = new JarOutputStream(bytes)) {
+      for(int i = 0;i < classes;i++) {
+        int entryMethod = method >= 0 ? method : i % 2 == 0 ? ZipEntry.STORED : ZipEntry.DEFLATED;
+        addEntry(out, "com/example/p" + (i % 50) + "/C" + i + ".class", classBytes(i), entryMethod);
+
+        if(i % 10 == 0) {
+          addEntry(out, "com/example/r" + i + ".properties", classBytes(i), ZipEntry.DEFLATED);
+        }
+      }
+    }
+
+    assertTrue(bytes.size() > 0);
+    return bytes.toByteArray();
+  }
+
+  private byte[] classBytes(int i) {
+    byte[] bytes = new byte[random.nextInt(64) + (i % 3 == 0 ? 400 : 0)];
+    random.nextBytes(bytes);
+    Arrays.fill(bytes, 0, bytes.length / 2, (byte) 'x');
+    return bytes;
+  }
+
+  private static void addEntry(JarOutputStream out, String name, byte[] bytes, int method) throws IOException {
+    JarEntry entry = new JarEntry(name);
+    entry.setMethod(method);
+
+    if(method == ZipEntry.STORED) {
+      CRC32 crc = new CRC32();
+      crc.update(bytes);
+      entry.setCrc(crc.getValue());
+      entry.setSize(bytes.length);
+      entry.setCompressedSize(bytes.length);
+    }
+
+    out.putNextEntry(entry);
+    out.write(bytes);
+    out.closeEntry();
+  }
+
+  private static int centralDirectorySize(byte[] jar) {
+    ByteBuffer end = ByteBuffer.wrap(jar, jar.length - 22, 22).slice().order(ByteOrder.LITTLE_ENDIAN);
+    return end.getInt(12);
+  }
+
+  private static byte[] concat(byte[] first, byte[] second) {
+    byte[] bytes = Arrays.copyOf(first, first.length + second.length);
+    System.arraycopy(second, 0, bytes, first.length, second.length);
+    return bytes;
+  }
+
+  private Path write(String name, byte[] bytes) throws IOException {
+    Path jar = folder.getRoot().toPath().resolve(name);
+    Files.write(jar, bytes);
+    return jar;
+  }
+}
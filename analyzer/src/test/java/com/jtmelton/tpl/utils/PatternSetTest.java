@@ -0,0 +1,165 @@
+package com.jtmelton.tpl.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import static org.junit.Assert.assertEquals;
+
+/*
+ * A PatternSet has to match exactly the strings at least one of its regexes matches with
+ * String.matches, whichever shortcut it takes for a regex.
+ */
+public class PatternSetTest {
+
+  private static final List<String> VALUES = Arrays.asList("", "a", "ab", "abc", "junit", "junit-4.10.jar",
+          "org.junit.Test", "guava-18.0-sources.jar", "lib-1.2.jar", "lib-.jar", "mylib-3.jar", "a.b", "aa", "bb",
+          "abab", "xyz", "yz", "abbc", "ABC", "a b", "ab#", "\n", "a\nb", "junit\n", "\njunit", "lib-1\n.jar",
+          "x\u2028y", "ab\r", "\u0085", "a|b", "a.b.c");
+
+  @Test
+  public void literals() {
+    assertSameAsMatches("guava", "ab", "abc");
+    assertSameAsMatches("org\\.junit.*", "a.*", "junit.*");
+    assertSameAsMatches(".*-sources\\.jar", ".*\\.jar", ".*b");
+    assertSameAsMatches(".*junit.*", ".*b.*", ".*\\..*");
+    assertSameAsMatches(".*", "xyz");
+    assertSameAsMatches(".*.*");
+    assertSameAsMatches("", "a");
+    assertSameAsMatches(".*junit.*", "org\\.junit.*", ".*\\.jar", "abc");
+  }
+
+  @Test
+  public void guardedLiterals() {
+    assertSameAsMatches(".*lib-[0-9.]+\\.jar");
+    assertSameAsMatches("a+bc", "x?yz", "ab{2}c", "ab*c");
+    assertSameAsMatches("(ab)+", "a(b|c)", "[ab]bc", "ab?c");
+    assertSameAsMatches(".*lib-[0-9.]+\\.jar", "a.b", "\\x61b", "\\u0061b\\.c");
+    assertSameAsMatches("a\\.b\\..*", "\\p{Alpha}bc", "\\0141b");
+  }
+
+  @Test
+  public void quotedText() {
+    assertSameAsMatches("\\Qa.b\\E", "xyz");
+    assertSameAsMatches("\\Qa|b\\E", "abc");
+    assertSameAsMatches("\\Qa.b", "xyz");
+    assertSameAsMatches("x\\Q.*\\E.*", ".*junit.*", "a.*");
+  }
+
+  @Test
+  public void backReferences() {
+    assertSameAsMatches("(a)\\1", "(b)\\1");
+    assertSameAsMatches("(a)(b)\\2", "(b)\\1", "abc");
+    assertSameAsMatches("(ab)\\1", "a(b)\\1c");
+  }
+
+  @Test
+  public void namedGroups() {
+    assertSameAsMatches("(?<g>a)\\k<g>", "(?<g>b)\\k<g>");
+    assertSameAsMatches("(?<g>a)b", "(?<g>x)yz");
+  }
+
+  @Test
+  public void embeddedFlags() {
+    assertSameAsMatches("(?x) a b # comment", "c");
+    assertSameAsMatches("(?x)a\\ b", "xyz");
+    assertSameAsMatches("(?i)abc", "xyz");
+    assertSameAsMatches("(?s).*junit.*", "a.*");
+    assertSameAsMatches("(?s)a.b", "(?m)ab$");
+    assertSameAsMatches("(?-i)abc", "(?i:a)bc");
+  }
+
+  @Test
+  public void lineTerminators() {
+    assertSameAsMatches(".*junit.*", "junit.*", ".*junit");
+    assertSameAsMatches(".*", ".*.*");
+    assertSameAsMatches("a\nb", "a\\nb", ".*\n.*");
+    assertSameAsMatches("lib-[0-9]\n\\.jar", ".*lib-[0-9.]+\\.jar");
+    assertSameAsMatches("x.y", "ab.");
+  }
+
+  @Test
+  public void invalidRegexesFail() {
+    for(String regex : Arrays.asList("(", "[a", "a{", "\\")) {
+      try {
+        PatternSet.compile(Arrays.asList("abc", regex));
+      } catch(PatternSyntaxException pse) {
+        continue;
+      }
+
+      throw new AssertionError("Compiled " + regex);
+    }
+  }
+
+  @Test
+  public void randomRegexSets() {
+    String[] pieces = { "a", "b", "c", "-", "\\.", ".", ".*", "[ab]", "[^a]", "[.]", "(ab|b)", "(a)", "\\1",
+            "?", "*", "+", "{1,2}", "\\Qa.\\E", "\\Q", "\\E", "(?<g>a)", "\\k<g>", "(?x) ", " ", "#", "(?i)",
+            "(?s)", "\\n", "\n", "|", "\\d", "\\w", "$", "^", "junit", "lib-" };
+    String alphabet = "abcABj.-\n #|";
+
+    long seed = new Random().nextLong();
+    Random random = new Random(seed);
+
+    for(int set = 0;set < 3000;set++) {
+      List<String> regexes = new ArrayList<>();
+
+      while(regexes.size() < 1 + random.nextInt(5)) {
+        StringBuilder regex = new StringBuilder();
+
+        for(int i = random.nextInt(5);i >= 0;i--) {
+          regex.append(pieces[random.nextInt(pieces.length)]);
+        }
+
+        if(compiles(regex.toString())) {
+          regexes.add(regex.toString());
+        }
+      }
+
+      List<String> values = new ArrayList<>(VALUES);
+      for(int i = 0;i < 40;i++) {
+        StringBuilder value = new StringBuilder();
+
+        for(int j = random.nextInt(7);j > 0;j--) {
+          value.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+
+        values.add(value.toString());
+      }
+
+      assertSameAsMatches("seed " + seed + " ", regexes, values);
+    }
+  }
+
+  private static void assertSameAsMatches(String... regexes) {
+    assertSameAsMatches("", Arrays.asList(regexes), VALUES);
+  }
+
+  private static void assertSameAsMatches(String message, List<String> regexes, List<String> values) {
+    PatternSet patterns = PatternSet.compile(regexes);
+
+    for(String value : values) {
+      boolean expected = regexes.stream().anyMatch(value::matches);
+
+      assertEquals(message + regexes + " on " + escape(value), expected, patterns.matches(value));
+    }
+  }
+
+  private static boolean compiles(String regex) {
+    try {
+      Pattern.compile(regex);
+      return true;
+    } catch(PatternSyntaxException pse) {
+      return false;
+    }
+  }
+
+  private static String escape(String value) {
+    return "\"" + value.replace("\n", "\\n").replace("\r", "\\r") + "\"";
+  }
+}
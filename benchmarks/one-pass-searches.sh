@@ -0,0 +1,101 @@
+#!/bin/bash
+# Runs the jar, user class and unused jar searches one at a time and then all in one invocation,
+# on both graph backends, against a generated corpus. Prints the time of every run and fails if
+# the one pass output differs from the separate runs. Build first with `mvn package -DskipTests`.
+#
+# usage: benchmarks/one-pass-searches.sh [classes] [workDirectory]
+
+set -euo pipefail
+
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+CLASSES=${1:-10000}
+WORK=${2:-$ROOT/benchmarks/target/one-pass-searches}
+JAVA=${JAVA:-java}
+ANALYZER=$ROOT/analyzer/target/third-party-lib-analyzer.jar
+BENCHMARKS=$ROOT/benchmarks/target/benchmarks.jar
+
+for jar in "$ANALYZER" "$BENCHMARKS"; do
+  if [ ! -f "$jar" ]; then
+    echo "Missing $jar, run mvn package -DskipTests first" >&2
+    exit 1
+  fi
+done
+
+# Neo4j needs JDK internals opened up on Java 9 and later, same as the jdk9-tests profile
+JAVA_OPTS=()
+if ! "$JAVA" -version 2>&1 | head -1 | grep -q '"1\.'; then
+  for pkg in java.lang java.nio sun.nio.ch java.util java.io; do
+    JAVA_OPTS+=(--add-opens "java.base/$pkg=ALL-UNNAMED")
+  done
+fi
+
+CORPUS=$WORK/corpus
+DB=$WORK/db
+LOGS=$WORK/logs
+
+rm -rf "$WORK"
+mkdir -p "$LOGS"
+
+elapsed() {
+  echo $(( ($(date +%s%N) - $1) / 1000000 ))
+}
+
+# usage: analyze <log name> <args...>, prints the time taken in ms
+analyze() {
+  local log=$1
+  shift
+  local start
+  start=$(date +%s%N)
+  "$JAVA" "${JAVA_OPTS[@]}" -jar "$ANALYZER" -classesDirectory "$CORPUS/classes" -jarsDirectory "$CORPUS/jars" \
+    -dbDirectory "$DB" -searchThreads 1 "$@" > "$LOGS/$log.log" 2>&1
+  elapsed "$start"
+}
+
+echo "Generating a corpus of $CLASSES classes in $CORPUS"
+"$JAVA" -cp "$BENCHMARKS" com.jtmelton.tpl.benchmarks.CorpusGenerator -classesDirectory "$CORPUS/classes" \
+  -jarsDirectory "$CORPUS/jars" -classes "$CLASSES" > "$LOGS/corpus.log" 2>&1
+
+echo "Built the DB in $(analyze build) ms"
+
+# The top layer jar and the first user class, so neither search walks the whole graph. Every jar
+# of a generated corpus is used, so the unused search sweeps to also list the used jars
+JAR=$(find "$CORPUS/jars" -name '*.jar' -printf '%f\n' | sort -V | tail -1)
+USER_CLASS=$(cd "$CORPUS/classes" && find . -name '*.class' | sort | head -1 | sed 's|^\./||; s|\.class$||; s|/|.|g')
+echo "Searching for -jarNames $JAR -userClassNames $USER_CLASS and unused jars"
+echo
+
+FAILED=0
+printf '%-8s %12s %12s %12s %12s %12s\n' backend jarNames userClasses unused separate one-pass
+
+for backend in neo4j memory; do
+  out=$WORK/$backend
+  jars=$(analyze "$backend-jars" -graphBackend "$backend" -outputDir "$out/jars" -searchOnly -jarNames "$JAR")
+  classes=$(analyze "$backend-classes" -graphBackend "$backend" -outputDir "$out/classes" -searchOnly \
+    -userClassNames "$USER_CLASS")
+  unused=$(analyze "$backend-unused" -graphBackend "$backend" -outputDir "$out/unused" -searchUnusedOnly \
+    -unusedSweep)
+  onePass=$(analyze "$backend-one-pass" -graphBackend "$backend" -outputDir "$out/one-pass" -searchOnly \
+    -jarNames "$JAR" -userClassNames "$USER_CLASS" -searchUnusedOnly -unusedSweep)
+
+  printf '%-8s %12s %12s %12s %12s %12s\n' "$backend" "$jars" "$classes" "$unused" \
+    $((jars + classes + unused)) "$onePass"
+
+  # One pass writes the dependency report to dependencies/ and the unused jar lists next to the
+  # affected class reports
+  if ! diff -r -x dependencies -x unusedJars.txt -x usedJars.txt "$out/jars" "$out/one-pass" > /dev/null ||
+     ! diff -r "$out/classes" "$out/one-pass/dependencies" > /dev/null; then
+    echo "$backend: one pass search reports differ from the separate runs" >&2
+    FAILED=1
+  fi
+
+  for list in "$out"/unused/*.txt; do
+    if ! cmp -s "$list" "$out/one-pass/$(basename "$list")"; then
+      echo "$backend: one pass $(basename "$list") differs from the separate run" >&2
+      FAILED=1
+    fi
+  done
+done
+
+echo
+echo "Times are in ms, logs and reports are in $WORK"
+exit $FAILED
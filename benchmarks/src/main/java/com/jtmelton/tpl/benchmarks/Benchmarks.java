@@ -0,0 +1,34 @@
+package com.jtmelton.tpl.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class Benchmarks {
+
+  // Forked benchmark JVMs only log warnings and errors
+  public static final String QUIET_LOGGING = "-Dlogback.configurationFile=logback-benchmarks.xml";
+
+  private Benchmarks() { }
+
+  public static Path tempDirectory(String name) throws IOException {
+    return Files.createTempDirectory("tpla-bench-" + name);
+  }
+
+  public static void delete(Path directory) throws IOException {
+    if(directory == null || !Files.exists(directory)) {
+      return;
+    }
+
+    List<Path> paths = new ArrayList<>();
+    Files.walk(directory).forEach(paths::add);
+    Collections.reverse(paths);
+
+    for(Path path : paths) {
+      Files.delete(path);
+    }
+  }
+}
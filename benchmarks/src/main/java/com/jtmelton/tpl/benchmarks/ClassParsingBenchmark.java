@@ -0,0 +1,52 @@
+package com.jtmelton.tpl.benchmarks;
+
+import com.jtmelton.tpl.utils.ClassReferenceReader;
+import com.jtmelton.tpl.utils.ClassReferences;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/*
+ * Class files parsed per second by each class reader. Every operation parses the next class
+ * file of the corpus, so the larger corpora also show what falls out of the CPU caches.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = Benchmarks.QUIET_LOGGING)
+public class ClassParsingBenchmark {
+
+  @Param({ "1000", "10000", "100000" })
+  public int classes;
+
+  @Param({ ClassReferenceReader.CONSTANT_POOL, ClassReferenceReader.JAVASSIST })
+  public String reader;
+
+  private ClassReferenceReader classReader;
+
+  private List<ByteBuffer> classFiles;
+
+  private int next;
+
+  @Setup
+  public void setup() {
+    classReader = ClassReferenceReader.forType(reader);
+    classFiles = SyntheticCorpus.generate(classes).getClassFiles().stream()
+            .map(ByteBuffer::wrap)
+            .collect(Collectors.toList());
+  }
+
+  @Benchmark
+  public ClassReferences parse() throws IOException {
+    ByteBuffer classFile = classFiles.get(next);
+    next = next + 1 == classFiles.size() ? 0 : next + 1;
+
+    return classReader.read(classFile.duplicate());
+  }
+}
@@ -0,0 +1,144 @@
+package com.jtmelton.tpl.benchmarks;
+
+import com.sampullara.cli.Argument;
+import com.sampullara.cli.Args;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Stream;
+
+/*
+ * Writes a synthetic corpus to disk for load testing the analyzer. The directories can be passed
+ * straight to the analyzer as -classesDirectory and -jarsDirectory.
+ */
+public class CorpusGenerator {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CorpusGenerator.class);
+
+  @Argument(value = "classesDirectory",
+      required = true,
+      description = "Directory to write user class files to. Must be empty or missing")
+  private static String classesDirectory = null;
+
+  @Argument(value = "jarsDirectory",
+      required = true,
+      description = "Directory to write library jars to. Must be empty or missing")
+  private static String jarsDirectory = null;
+
+  @Argument(value = "classes",
+      description = "Number of classes, user and library. Defaults to 10000")
+  private static Integer classes = 10000;
+
+  @Argument(value = "seed",
+      description = "Seed of the generator. The same seed and settings always give the same corpus")
+  private static Long seed = 0x7e1aL;
+
+  @Argument(value = "userPercent",
+      description = "Percent of the classes that are user classes. Defaults to 10")
+  private static Integer userPercent = 10;
+
+  @Argument(value = "classesPerJar",
+      description = "Average number of classes per jar. Defaults to 200")
+  private static Integer classesPerJar = 200;
+
+  @Argument(value = "packageDepth",
+      description = "Most packages nested under the root package of a jar or the user classes. Defaults to 4")
+  private static Integer packageDepth = 4;
+
+  @Argument(value = "fanOut",
+      description = "Average number of classes each class refers to. Defaults to 4")
+  private static Integer fanOut = 4;
+
+  @Argument(value = "maxFanOut",
+      description = "Most classes a single class refers to. Defaults to 40")
+  private static Integer maxFanOut = 40;
+
+  @Argument(value = "chainDepth",
+      description = "Layers of jars, each depending on the one below. Defaults to 6")
+  private static Integer chainDepth = 6;
+
+  @Argument(value = "hubJars",
+      description = "Jars every other jar and the user classes depend on, like a logging library. Defaults to 2")
+  private static Integer hubJars = 2;
+
+  @Argument(value = "hubPercent",
+      description = "Percent of references going to hub jars. Defaults to 15")
+  private static Integer hubPercent = 15;
+
+  @Argument(value = "duplicatePercent",
+      description = "Percent of jars written a second time under a copies directory. Defaults to 5")
+  private static Integer duplicatePercent = 5;
+
+  public static void main(String[] args) {
+    Args.parse(new CorpusGenerator(), args);
+
+    if(classes < 2 || classesPerJar < 1 || chainDepth < 1) {
+      LOG.error("-classes must be at least 2, -classesPerJar and -chainDepth at least 1");
+      return;
+    }
+
+    if(packageDepth < 0 || fanOut < 0 || hubJars < 0 || maxFanOut < fanOut) {
+      LOG.error("-packageDepth, -fanOut and -hubJars can't be negative, -maxFanOut must be at least -fanOut");
+      return;
+    }
+
+    if(!isPercent(userPercent) || !isPercent(hubPercent) || !isPercent(duplicatePercent)) {
+      LOG.error("-userPercent, -hubPercent and -duplicatePercent must be between 0 and 100");
+      return;
+    }
+
+    CorpusOptions options = new CorpusOptions();
+    options.setSeed(seed);
+    options.setClasses(classes);
+    options.setUserPercent(userPercent);
+    options.setClassesPerJar(classesPerJar);
+    options.setPackageDepth(packageDepth);
+    options.setFanOut(fanOut);
+    options.setMaxFanOut(maxFanOut);
+    options.setChainDepth(chainDepth);
+    options.setHubJars(hubJars);
+    options.setHubPercent(hubPercent);
+    options.setDuplicatePercent(duplicatePercent);
+
+    try {
+      Path classesPath = Paths.get(classesDirectory);
+      Path jarsPath = Paths.get(jarsDirectory);
+
+      if(!isEmpty(classesPath) || !isEmpty(jarsPath)) {
+        LOG.error("-classesDirectory and -jarsDirectory must be empty or missing");
+        return;
+      }
+
+      SyntheticCorpus corpus = SyntheticCorpus.generate(options);
+
+      corpus.writeClasses(classesPath);
+      List<Path> jars = corpus.writeJars(jarsPath);
+
+      LOG.info("Wrote {} user classes to {}", corpus.getUserClasses().size(), classesPath);
+      LOG.info("Wrote {} library classes in {} jars, {} of them copies, across {} layers to {}",
+              corpus.getLibraryClasses().size(), jars.size(), corpus.getDuplicateCount(), corpus.getLayerCount(),
+              jarsPath);
+    } catch(IOException ioe) {
+      LOG.error("Failed to write corpus", ioe);
+    }
+  }
+
+  private static boolean isPercent(int value) {
+    return value >= 0 && value <= 100;
+  }
+
+  private static boolean isEmpty(Path directory) throws IOException {
+    if(!Files.exists(directory)) {
+      return true;
+    }
+
+    try(Stream<Path> entries = Files.list(directory)) {
+      return !entries.findAny().isPresent();
+    }
+  }
+}
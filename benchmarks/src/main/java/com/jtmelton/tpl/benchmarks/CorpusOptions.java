@@ -0,0 +1,114 @@
+package com.jtmelton.tpl.benchmarks;
+
+public class CorpusOptions {
+
+  private long seed = 0x7e1a;
+
+  private int classes = 10000;
+
+  private int userPercent = 10;
+
+  private int classesPerJar = 200;
+
+  private int packageDepth = 4;
+
+  private int fanOut = 4;
+
+  private int maxFanOut = 40;
+
+  private int chainDepth = 6;
+
+  private int hubJars = 2;
+
+  private int hubPercent = 15;
+
+  private int duplicatePercent = 5;
+
+  public long getSeed() {
+    return seed;
+  }
+
+  public void setSeed(long seed) {
+    this.seed = seed;
+  }
+
+  public int getClasses() {
+    return classes;
+  }
+
+  public void setClasses(int classes) {
+    this.classes = classes;
+  }
+
+  public int getUserPercent() {
+    return userPercent;
+  }
+
+  public void setUserPercent(int userPercent) {
+    this.userPercent = userPercent;
+  }
+
+  public int getClassesPerJar() {
+    return classesPerJar;
+  }
+
+  public void setClassesPerJar(int classesPerJar) {
+    this.classesPerJar = classesPerJar;
+  }
+
+  public int getPackageDepth() {
+    return packageDepth;
+  }
+
+  public void setPackageDepth(int packageDepth) {
+    this.packageDepth = packageDepth;
+  }
+
+  public int getFanOut() {
+    return fanOut;
+  }
+
+  public void setFanOut(int fanOut) {
+    this.fanOut = fanOut;
+  }
+
+  public int getMaxFanOut() {
+    return maxFanOut;
+  }
+
+  public void setMaxFanOut(int maxFanOut) {
+    this.maxFanOut = maxFanOut;
+  }
+
+  public int getChainDepth() {
+    return chainDepth;
+  }
+
+  public void setChainDepth(int chainDepth) {
+    this.chainDepth = chainDepth;
+  }
+
+  public int getHubJars() {
+    return hubJars;
+  }
+
+  public void setHubJars(int hubJars) {
+    this.hubJars = hubJars;
+  }
+
+  public int getHubPercent() {
+    return hubPercent;
+  }
+
+  public void setHubPercent(int hubPercent) {
+    this.hubPercent = hubPercent;
+  }
+
+  public int getDuplicatePercent() {
+    return duplicatePercent;
+  }
+
+  public void setDuplicatePercent(int duplicatePercent) {
+    this.duplicatePercent = duplicatePercent;
+  }
+}
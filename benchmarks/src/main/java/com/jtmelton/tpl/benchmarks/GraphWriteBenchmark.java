@@ -0,0 +1,142 @@
+package com.jtmelton.tpl.benchmarks;
+
+import com.google.common.collect.Lists;
+import com.jtmelton.tpl.domain.ClassNode;
+import com.jtmelton.tpl.utils.ClassReferenceReader;
+import com.jtmelton.tpl.utils.ClassReferences;
+import com.jtmelton.tpl.utils.QueryUtil;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Writing every class node, then every class dependency relationship, of the corpus in the
+ * batches a graph build uses. Each iteration writes into a new empty DB, the edge benchmark's
+ * nodes are written before it starts.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = Benchmarks.QUIET_LOGGING)
+public class GraphWriteBenchmark {
+
+  private static final int WRITE_BATCH_SIZE = 5000;
+
+  @State(Scope.Benchmark)
+  public static class Corpus {
+
+    @Param({ "1000", "10000", "100000" })
+    public int classes;
+
+    private final List<ClassNode> userClasses = new ArrayList<>();
+
+    private final List<ClassNode> libraryClasses = new ArrayList<>();
+
+    private final List<ClassNode[]> userDependencies = new ArrayList<>();
+
+    private final List<ClassNode[]> libraryDependencies = new ArrayList<>();
+
+    @Setup
+    public void setup() throws IOException {
+      SyntheticCorpus corpus = SyntheticCorpus.generate(classes);
+      Map<String, ClassNode> classNodes = new HashMap<>();
+
+      for(String name : corpus.getUserClasses()) {
+        userClasses.add(classNode(name, true, classNodes));
+      }
+
+      for(String name : corpus.getLibraryClasses()) {
+        libraryClasses.add(classNode(name, false, classNodes));
+      }
+
+      ClassReferenceReader reader = ClassReferenceReader.forType(ClassReferenceReader.CONSTANT_POOL);
+
+      for(byte[] classFile : corpus.getClassFiles()) {
+        ClassReferences references = reader.read(ByteBuffer.wrap(classFile));
+        ClassNode classNode = classNodes.get(references.getName());
+
+        for(String reference : references.getReferencedClasses()) {
+          ClassNode dependency = classNodes.get(reference);
+
+          if(dependency != null && dependency != classNode) {
+            (classNode.isCustom() ? userDependencies : libraryDependencies)
+                    .add(new ClassNode[] { classNode, dependency });
+          }
+        }
+      }
+    }
+
+    private static ClassNode classNode(String name, boolean custom, Map<String, ClassNode> classNodes) {
+      ClassNode classNode = new ClassNode();
+      classNode.setName(name);
+      classNode.setCustom(custom);
+      classNodes.put(name, classNode);
+      return classNode;
+    }
+
+    private void writeNodes(GraphDatabaseService graphDb) {
+      Lists.partition(userClasses, WRITE_BATCH_SIZE).forEach(b -> QueryUtil.writeClassNodes(graphDb, b, true));
+      Lists.partition(libraryClasses, WRITE_BATCH_SIZE).forEach(b -> QueryUtil.writeClassNodes(graphDb, b, false));
+    }
+
+    private void writeEdges(GraphDatabaseService graphDb) {
+      Lists.partition(userDependencies, WRITE_BATCH_SIZE)
+              .forEach(b -> QueryUtil.writeClassToClassRels(graphDb, b, true));
+      Lists.partition(libraryDependencies, WRITE_BATCH_SIZE)
+              .forEach(b -> QueryUtil.writeClassToClassRels(graphDb, b, false));
+    }
+  }
+
+  @State(Scope.Benchmark)
+  public static class EmptyDb {
+
+    private Path directory;
+
+    GraphDatabaseService graphDb;
+
+    @Setup(Level.Iteration)
+    public void setup() throws IOException {
+      directory = Benchmarks.tempDirectory("db");
+      graphDb = new GraphDatabaseFactory().newEmbeddedDatabase(directory.toFile());
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+      graphDb.shutdown();
+      Benchmarks.delete(directory);
+    }
+  }
+
+  // The corpus's class nodes written to an empty DB
+  @State(Scope.Benchmark)
+  public static class ClassesDb {
+
+    GraphDatabaseService graphDb;
+
+    @Setup(Level.Iteration)
+    public void setup(Corpus corpus, EmptyDb db) {
+      graphDb = db.graphDb;
+      corpus.writeNodes(graphDb);
+    }
+  }
+
+  @Benchmark
+  public void writeClassNodes(Corpus corpus, EmptyDb db) {
+    corpus.writeNodes(db.graphDb);
+  }
+
+  @Benchmark
+  public void writeDependencies(Corpus corpus, ClassesDb db) {
+    corpus.writeEdges(db.graphDb);
+  }
+}
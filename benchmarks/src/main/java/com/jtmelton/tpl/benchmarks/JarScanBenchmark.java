@@ -0,0 +1,61 @@
+package com.jtmelton.tpl.benchmarks;
+
+import com.google.common.collect.HashMultimap;
+import com.jtmelton.tpl.domain.JarNode;
+import com.jtmelton.tpl.utils.ClassReferenceReader;
+import com.jtmelton.tpl.utils.JavassistUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Hashing and parsing every jar of the corpus the way a graph build does, through the memory
+ * mapped reader on a scan pool of the given size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = Benchmarks.QUIET_LOGGING)
+public class JarScanBenchmark {
+
+  @Param({ "1000", "10000", "100000" })
+  public int classes;
+
+  @Param({ "1", "4" })
+  public int threads;
+
+  private Path directory;
+
+  private List<Path> jars;
+
+  private ClassReferenceReader reader;
+
+  private ForkJoinPool pool;
+
+  @Setup
+  public void setup() throws IOException {
+    directory = Benchmarks.tempDirectory("jars");
+    jars = SyntheticCorpus.generate(classes).writeJars(directory);
+    reader = ClassReferenceReader.forType(ClassReferenceReader.CONSTANT_POOL);
+    pool = new ForkJoinPool(threads);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    pool.shutdown();
+    Benchmarks.delete(directory);
+  }
+
+  @Benchmark
+  public Collection<JarNode> scanJars() throws IOException {
+    return JavassistUtil.analyzeJarFiles(jars, new ConcurrentHashMap<>(), HashMultimap.create(), reader, pool);
+  }
+}
@@ -0,0 +1,158 @@
+package com.jtmelton.tpl.benchmarks;
+
+import com.jtmelton.tpl.cli.Options;
+import com.jtmelton.tpl.graph.GraphBackend;
+import com.jtmelton.tpl.report.IReporter;
+import com.jtmelton.tpl.report.JsonReporter;
+import com.jtmelton.tpl.report.VisualizationReporter;
+import com.jtmelton.tpl.results.ChainSink;
+import com.jtmelton.tpl.results.ClassChain;
+import com.jtmelton.tpl.results.OwningJarResolver;
+import com.jtmelton.tpl.results.QueryResult;
+import com.jtmelton.tpl.results.ResultsProcessor;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * A search result with one chain per class of the corpus going through the results processor to
+ * a reporter, from resolving the owning jars of every link to the finished report. Owning jars
+ * come from a stub backend, so no DB time is included.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = Benchmarks.QUIET_LOGGING)
+public class ReportingBenchmark {
+
+  private static final long SEED = 0x3e9;
+
+  // Library classes between the matched jar and the user class of each chain
+  private static final int CHAIN_LINKS = 3;
+
+  @Param({ "1000", "10000", "100000" })
+  public int classes;
+
+  @Param({ "json", "visualization" })
+  public String reporter;
+
+  private Path directory;
+
+  private QueryResult results;
+
+  private GraphBackend backend;
+
+  @Setup
+  public void setup() throws IOException {
+    directory = Benchmarks.tempDirectory("report");
+
+    SyntheticCorpus corpus = SyntheticCorpus.generate(classes);
+    List<String> userClasses = corpus.getUserClasses();
+    List<String> libraryClasses = corpus.getLibraryClasses();
+    String jar = corpus.getJarName(0);
+    long jarId = libraryClasses.size() + userClasses.size();
+    Random random = new Random(SEED ^ classes);
+
+    results = new QueryResult(jar);
+    results.addJarName(jar);
+
+    for(int i = 0;i < classes;i++) {
+      long[] ids = new long[CHAIN_LINKS + 2];
+      String[] names = new String[CHAIN_LINKS + 2];
+
+      ids[0] = jarId;
+      names[0] = jar;
+
+      for(int link = 1;link <= CHAIN_LINKS;link++) {
+        int libraryClass = random.nextInt(libraryClasses.size());
+        ids[link] = libraryClass;
+        names[link] = libraryClasses.get(libraryClass);
+      }
+
+      int userClass = random.nextInt(userClasses.size());
+      ids[CHAIN_LINKS + 1] = libraryClasses.size() + userClass;
+      names[CHAIN_LINKS + 1] = userClasses.get(userClass);
+
+      results.addClassChain(new ClassChain(ids, names));
+    }
+
+    backend = new OwningJars(corpus);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    Benchmarks.delete(directory);
+  }
+
+  @Benchmark
+  public void report() throws IOException {
+    String outputDir = directory.toString();
+
+    ResultsProcessor processor = new ResultsProcessor(() -> new OwningJarResolver(backend));
+    processor.registerReporter(reporter(outputDir));
+    processor.process(results);
+    processor.generateReports(outputDir);
+  }
+
+  private IReporter reporter(String outputDir) throws IOException {
+    switch(reporter) {
+      case "json":
+        return new JsonReporter(outputDir);
+      case "visualization":
+        return new VisualizationReporter(outputDir);
+      default:
+        throw new IllegalArgumentException("Unknown reporter " + reporter);
+    }
+  }
+
+  // Library class ids are their index in the corpus, so the owning jar follows from the id
+  private static class OwningJars implements GraphBackend {
+
+    private final SyntheticCorpus corpus;
+
+    private OwningJars(SyntheticCorpus corpus) {
+      this.corpus = corpus;
+    }
+
+    @Override
+    public Map<Long, Set<String>> findOwningJarNames(Collection<Long> ids) {
+      Map<Long, Set<String>> owningJars = new HashMap<>();
+
+      for(long id : ids) {
+        owningJars.put(id, Collections.singleton(corpus.getJarName(corpus.getOwningJar((int) id))));
+      }
+
+      return owningJars;
+    }
+
+    @Override
+    public void findDependencies(ChainSink results, Options options) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void findAffectedUserClasses(ChainSink results, Options options) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<Map<String, Object>> getAllJarPaths() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean isJarUsed(Map<String, Object> jar, Options options) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Map<Long, List<String>> findUsedJars() {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
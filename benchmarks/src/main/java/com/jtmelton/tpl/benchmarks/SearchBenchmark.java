@@ -0,0 +1,144 @@
+package com.jtmelton.tpl.benchmarks;
+
+import com.jtmelton.tpl.ThirdPartyLibraryAnalyzer;
+import com.jtmelton.tpl.cli.Options;
+import com.jtmelton.tpl.report.IReporter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Each search type run end to end against a DB built from the corpus, owning jar lookups
+ * included, with the results handed to a reporter that drops them. The jar searched for is in the
+ * middle layer of the corpus, so its dependents are both library and user classes. The in memory
+ * backend loads the graph during the first warmup iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = Benchmarks.QUIET_LOGGING)
+public class SearchBenchmark {
+
+  @Param({ "1000", "10000", "100000" })
+  public int classes;
+
+  @Param({ "neo4j", "memory" })
+  public String backend;
+
+  private Path directory;
+
+  private ThirdPartyLibraryAnalyzer analyzer;
+
+  private Options options;
+
+  private Options sweepOptions;
+
+  private String jarTerm;
+
+  private String userClassTerm;
+
+  private final Collection<IReporter> reporters = Collections.singleton(new DiscardingReporter());
+
+  @Setup
+  public void setup() throws IOException, InterruptedException {
+    directory = Benchmarks.tempDirectory("search");
+
+    SyntheticCorpus corpus = SyntheticCorpus.generate(classes);
+    corpus.writeClasses(directory.resolve("classes"));
+    corpus.writeJars(directory.resolve("jars"));
+
+    options = options(false);
+    sweepOptions = options(true);
+
+    int jar = 0;
+    while(corpus.getJarLayer(jar) != corpus.getLayerCount() / 2) {
+      jar++;
+    }
+
+    jarTerm = directory.resolve("jars").resolve(corpus.getJarName(jar)).toString();
+    userClassTerm = corpus.getUserClasses().get(0);
+
+    analyzer = new ThirdPartyLibraryAnalyzer(options);
+    analyzer.buildDependencyGraph(options);
+  }
+
+  // Command line defaults, except that terms are matched exactly
+  private Options options(boolean unusedSweep) {
+    Options options = new Options();
+    options.setClassesDirectory(directory.resolve("classes").toString());
+    options.setJarsDirectory(directory.resolve("jars").toString());
+    options.setDbDirectory(directory.resolve("db").toString());
+    options.setOutputDir(directory.resolve("output").toString());
+    options.setGraphBackend(backend);
+    options.setThreads(5);
+    options.setSearchDepth("5");
+    options.setSearchTimeout(60);
+    options.setExactMatch(true);
+    options.setUnusedSweep(unusedSweep);
+    return options;
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    analyzer.shutdown();
+    Benchmarks.delete(directory);
+  }
+
+  @Benchmark
+  public void affectedClasses() throws InterruptedException {
+    analyzer.reportAffectedClasses(Collections.singleton(jarTerm), reporters, options.getOutputDir(), options);
+  }
+
+  @Benchmark
+  public void dependencies() throws InterruptedException {
+    analyzer.reportDependencies(Collections.singleton(userClassTerm), reporters, options.getOutputDir(), options);
+  }
+
+  // One search per jar
+  @Benchmark
+  public void unusedJars() throws InterruptedException {
+    analyzer.reportUnusedJars(options);
+  }
+
+  // One traversal from the user classes
+  @Benchmark
+  public void unusedJarsSweep() throws InterruptedException {
+    analyzer.reportUnusedJars(sweepOptions);
+  }
+
+  private static class DiscardingReporter implements IReporter {
+
+    @Override
+    public void preProcess(String searchTerm, Collection<String> jars) { }
+
+    @Override
+    public void endProcess() { }
+
+    @Override
+    public void streamStart(String searchTerm) { }
+
+    @Override
+    public void streamEnd(Collection<String> jars) { }
+
+    @Override
+    public void chainEntryStart() { }
+
+    @Override
+    public void chainEntryEnd() { }
+
+    @Override
+    public void addChainEntryUserClass(String className) { }
+
+    @Override
+    public void addChainLink(String className, Collection<String> jars) { }
+
+    @Override
+    public void report(String outputFile) { }
+  }
+}
@@ -0,0 +1,381 @@
+package com.jtmelton.tpl.benchmarks;
+
+import javassist.bytecode.AccessFlag;
+import javassist.bytecode.ClassFile;
+import javassist.bytecode.DuplicateMemberException;
+import javassist.bytecode.FieldInfo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/*
+ * Class files and jars generated from a seed and shaped like a real dependency tree, so every run
+ * with the same options scans, writes and searches the same graph, and behaves the way a
+ * production build of that size would.
+ *
+ * Library jars are stacked in as many layers as the chain depth. Library classes refer to classes
+ * in their own jar or the layer below and user classes to the top layer or each other, so chains
+ * from user classes run down through every layer. A few hub jars, like a logging library, take a
+ * share of everyone's references, most of them to their first few classes. Packages nest to a
+ * random depth under each jar's root package, and the number of classes a class refers to falls
+ * off geometrically from one. Some jars are written a second time under copies/, the same content
+ * at another path.
+ *
+ * Class files are only built when asked for, so a corpus of millions of classes holds just names
+ * and reference indexes.
+ */
+public class SyntheticCorpus {
+
+  private static final String[] PACKAGE_WORDS = { "api", "impl", "internal", "util", "spi", "core", "io",
+          "config", "model", "support" };
+
+  private static final String COPIES = "copies";
+
+  private final CorpusOptions options;
+
+  private final Random random;
+
+  private final List<String> userClasses = new ArrayList<>();
+
+  // Numbered jar by jar. References number user classes after them
+  private final List<String> libraryClasses = new ArrayList<>();
+
+  private int[][] references;
+
+  private final List<Jar> jars = new ArrayList<>();
+
+  private final List<List<Jar>> layers = new ArrayList<>();
+
+  private final List<Jar> hubs = new ArrayList<>();
+
+  private final List<Jar> duplicates = new ArrayList<>();
+
+  private SyntheticCorpus(CorpusOptions options) {
+    this.options = options;
+    this.random = new Random(options.getSeed() ^ options.getClasses());
+  }
+
+  public static SyntheticCorpus generate(int classes) {
+    CorpusOptions options = new CorpusOptions();
+    options.setClasses(classes);
+    return generate(options);
+  }
+
+  public static SyntheticCorpus generate(CorpusOptions options) {
+    SyntheticCorpus corpus = new SyntheticCorpus(options);
+
+    int userCount = Math.max(1, options.getClasses() * options.getUserPercent() / 100);
+    int libraryCount = Math.max(0, options.getClasses() - userCount);
+
+    corpus.layOutJars(libraryCount);
+    corpus.nameClasses(userCount);
+    corpus.linkClasses();
+    corpus.pickDuplicates();
+
+    return corpus;
+  }
+
+  public List<String> getUserClasses() {
+    return Collections.unmodifiableList(userClasses);
+  }
+
+  public List<String> getLibraryClasses() {
+    return Collections.unmodifiableList(libraryClasses);
+  }
+
+  // User class files followed by library class files
+  public List<byte[]> getClassFiles() {
+    List<byte[]> classFiles = new ArrayList<>();
+
+    for(int i = 0;i < userClasses.size();i++) {
+      classFiles.add(classFile(libraryClasses.size() + i));
+    }
+
+    for(int i = 0;i < libraryClasses.size();i++) {
+      classFiles.add(classFile(i));
+    }
+
+    return classFiles;
+  }
+
+  public int getJarCount() {
+    return jars.size();
+  }
+
+  public int getDuplicateCount() {
+    return duplicates.size();
+  }
+
+  public int getLayerCount() {
+    return layers.size();
+  }
+
+  // File name of the jar at the given index
+  public String getJarName(int jar) {
+    return jars.get(jar).name;
+  }
+
+  // Layer of the jar at the given index, -1 for hub jars
+  public int getJarLayer(int jar) {
+    return jars.get(jar).layer;
+  }
+
+  // Index of the jar holding the library class at the given index
+  public int getOwningJar(int libraryClass) {
+    int low = 0;
+    int high = jars.size() - 1;
+
+    while(low < high) {
+      int middle = (low + high + 1) >>> 1;
+
+      if(jars.get(middle).start <= libraryClass) {
+        low = middle;
+      } else {
+        high = middle - 1;
+      }
+    }
+
+    return low;
+  }
+
+  public void writeClasses(Path classesDirectory) throws IOException {
+    for(int i = 0;i < userClasses.size();i++) {
+      Path classFile = classesDirectory.resolve(userClasses.get(i).replace('.', '/') + ".class");
+      Files.createDirectories(classFile.getParent());
+      Files.write(classFile, classFile(libraryClasses.size() + i));
+    }
+  }
+
+  // Every path written, copies included
+  public List<Path> writeJars(Path jarsDirectory) throws IOException {
+    Files.createDirectories(jarsDirectory);
+    List<Path> paths = new ArrayList<>();
+
+    for(Jar jar : jars) {
+      Path path = jarsDirectory.resolve(jar.name);
+      paths.add(path);
+
+      try(OutputStream out = Files.newOutputStream(path); JarOutputStream jarOut = new JarOutputStream(out)) {
+        for(int i = jar.start;i < jar.end;i++) {
+          jarOut.putNextEntry(new JarEntry(libraryClasses.get(i).replace('.', '/') + ".class"));
+          jarOut.write(classFile(i));
+          jarOut.closeEntry();
+        }
+      }
+    }
+
+    if(!duplicates.isEmpty()) {
+      Files.createDirectories(jarsDirectory.resolve(COPIES));
+    }
+
+    for(Jar jar : duplicates) {
+      Path copy = jarsDirectory.resolve(COPIES).resolve(jar.name);
+      Files.copy(jarsDirectory.resolve(jar.name), copy);
+      paths.add(copy);
+    }
+
+    return paths;
+  }
+
+  // Jar sizes vary from a quarter of the configured size to nearly twice it. Hubs come first,
+  // every other jar goes to the next layer in turn
+  private void layOutJars(int libraryCount) {
+    List<int[]> bounds = new ArrayList<>();
+
+    for(int start = 0;start < libraryCount;) {
+      int size = Math.max(1, (int) (options.getClassesPerJar() * (0.25 + random.nextDouble() * 1.5)));
+      int end = Math.min(libraryCount, start + size);
+      bounds.add(new int[] { start, end });
+      start = end;
+    }
+
+    // User classes need a layer to refer to, so a single jar is never a hub
+    int hubCount = Math.min(options.getHubJars(), Math.max(0, bounds.size() - 1));
+    int layerCount = Math.min(options.getChainDepth(), bounds.size() - hubCount);
+
+    for(int layer = 0;layer < layerCount;layer++) {
+      layers.add(new ArrayList<>());
+    }
+
+    for(int i = 0;i < bounds.size();i++) {
+      boolean hub = i < hubCount;
+      String artifact = hub ? "hub" + i : "lib" + (i - hubCount);
+      String version = (1 + random.nextInt(5)) + "." + random.nextInt(20) + "." + random.nextInt(10);
+
+      Jar jar = new Jar(artifact, "bench-" + artifact + "-" + version + ".jar", bounds.get(i)[0],
+              bounds.get(i)[1], hub ? -1 : (i - hubCount) % layerCount);
+      jars.add(jar);
+
+      if(hub) {
+        hubs.add(jar);
+      } else {
+        layers.get(jar.layer).add(jar);
+      }
+    }
+  }
+
+  private void nameClasses(int userCount) {
+    for(Jar jar : jars) {
+      for(int i = jar.start;i < jar.end;i++) {
+        libraryClasses.add(packageName("org.bench." + jar.artifact) + ".Lib" + i);
+      }
+    }
+
+    for(int i = 0;i < userCount;i++) {
+      userClasses.add(packageName("com.bench.app") + ".User" + i);
+    }
+  }
+
+  private String packageName(String root) {
+    StringBuilder name = new StringBuilder(root);
+    int depth = random.nextInt(options.getPackageDepth() + 1);
+
+    for(int i = 0;i < depth;i++) {
+      name.append('.').append(PACKAGE_WORDS[random.nextInt(PACKAGE_WORDS.length)]);
+    }
+
+    return name.toString();
+  }
+
+  private void linkClasses() {
+    references = new int[libraryClasses.size() + userClasses.size()][];
+
+    for(Jar jar : jars) {
+      for(int i = jar.start;i < jar.end;i++) {
+        references[i] = new int[fanOut()];
+
+        for(int j = 0;j < references[i].length;j++) {
+          references[i][j] = libraryReference(jar);
+        }
+      }
+    }
+
+    for(int i = libraryClasses.size();i < references.length;i++) {
+      references[i] = new int[fanOut()];
+
+      for(int j = 0;j < references[i].length;j++) {
+        references[i][j] = userReference();
+      }
+    }
+  }
+
+  private int libraryReference(Jar jar) {
+    if(jar.layer >= 0 && !hubs.isEmpty() && random.nextInt(100) < options.getHubPercent()) {
+      return hubClass();
+    }
+
+    if(jar.layer > 0 && random.nextBoolean()) {
+      return anyClass(layers.get(jar.layer - 1));
+    }
+
+    return jar.start + random.nextInt(jar.end - jar.start);
+  }
+
+  // A quarter of the references not going to hubs are to other user classes
+  private int userReference() {
+    int roll = random.nextInt(100);
+
+    if(!hubs.isEmpty() && roll < options.getHubPercent()) {
+      return hubClass();
+    }
+
+    if(layers.isEmpty() || roll < options.getHubPercent() + 25) {
+      return libraryClasses.size() + random.nextInt(userClasses.size());
+    }
+
+    return anyClass(layers.get(layers.size() - 1));
+  }
+
+  // Cubing crowds the picks onto the first classes of the hub, the way most uses of a logging
+  // library go through one or two of its classes
+  private int hubClass() {
+    Jar hub = hubs.get(random.nextInt(hubs.size()));
+    double position = random.nextDouble();
+
+    return hub.start + (int) ((hub.end - hub.start) * position * position * position);
+  }
+
+  private int anyClass(List<Jar> layer) {
+    Jar jar = layer.get(random.nextInt(layer.size()));
+    return jar.start + random.nextInt(jar.end - jar.start);
+  }
+
+  // Geometric from one with the configured mean, so most classes refer to a few others and a few
+  // refer to many
+  private int fanOut() {
+    if(options.getFanOut() <= 1) {
+      return Math.max(0, options.getFanOut());
+    }
+
+    double more = 1 - 1.0 / options.getFanOut();
+    int count = 1 + (int) (Math.log(1 - random.nextDouble()) / Math.log(more));
+
+    return Math.min(count, options.getMaxFanOut());
+  }
+
+  private void pickDuplicates() {
+    List<Jar> shuffled = new ArrayList<>(jars);
+    Collections.shuffle(shuffled, random);
+
+    duplicates.addAll(shuffled.subList(0, jars.size() * options.getDuplicatePercent() / 100));
+  }
+
+  private byte[] classFile(int index) {
+    ClassFile classFile = new ClassFile(false, className(index), null);
+    classFile.setAccessFlags(AccessFlag.PUBLIC);
+
+    try {
+      for(int i = 0;i < references[index].length;i++) {
+        String descriptor = "L" + className(references[index][i]).replace('.', '/') + ";";
+        classFile.addField(new FieldInfo(classFile.getConstPool(), "field" + i, descriptor));
+      }
+
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      classFile.write(new DataOutputStream(bytes));
+      return bytes.toByteArray();
+    } catch(DuplicateMemberException dme) {
+      throw new IllegalStateException(dme);
+    } catch(IOException ioe) {
+      throw new UncheckedIOException(ioe);
+    }
+  }
+
+  private String className(int index) {
+    return index < libraryClasses.size()
+            ? libraryClasses.get(index)
+            : userClasses.get(index - libraryClasses.size());
+  }
+
+  // The library classes from start up to end
+  private static class Jar {
+
+    private final String artifact;
+
+    private final String name;
+
+    private final int start;
+
+    private final int end;
+
+    private final int layer;
+
+    private Jar(String artifact, String name, int start, int end, int layer) {
+      this.artifact = artifact;
+      this.name = name;
+      this.start = start;
+      this.end = end;
+      this.layer = layer;
+    }
+  }
+}